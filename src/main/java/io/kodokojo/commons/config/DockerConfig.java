@@ -37,4 +37,19 @@ public interface DockerConfig extends PropertyConfig {
     @Key("DOCKER_TLS_VERIFY")
     String dockerTlsVerify();
 
+    /**
+     * @return Milliseconds, <code>0</code> to wait indefinitely, as the Docker events stream may stay idle.
+     */
+    @Key(value = "DOCKER_CLIENT_READ_TIMEOUT", defaultValue = "0")
+    int dockerClientReadTimeout();
+
+    @Key(value = "DOCKER_CLIENT_CONNECT_TIMEOUT", defaultValue = "5000")
+    int dockerClientConnectTimeout();
+
+    @Key(value = "DOCKER_CLIENT_MAX_TOTAL_CONNECTIONS", defaultValue = "20")
+    int dockerClientMaxTotalConnections();
+
+    @Key(value = "DOCKER_CLIENT_MAX_PER_ROUTE_CONNECTIONS", defaultValue = "10")
+    int dockerClientMaxPerRouteConnections();
+
 }
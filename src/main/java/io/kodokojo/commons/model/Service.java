@@ -26,8 +26,16 @@ import java.io.Serializable;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
 
+/**
+ * An endpoint of a located service. Two services are equal when their name, host, port and type are.
+ * <p>
+ * {@link #of(String, String, int, ServiceType)} return canonical instances from a bounded pool, so the services a
+ * locator build again on each lookup share their instance and host with the previous ones.
+ */
 public class Service implements Serializable {
 
+    private static final ServicePool POOL = new ServicePool(ServicePool.DEFAULT_MAX_SIZE);
+
     private final String name;
 
     private final String host;
@@ -36,6 +44,8 @@ public class Service implements Serializable {
 
     private final ServiceType type;
 
+    private final int hash;
+
     public Service(String name, String host, int port, ServiceType type) {
         if (isBlank(name)) {
             throw new IllegalArgumentException("name must be defined.");
@@ -50,12 +60,28 @@ public class Service implements Serializable {
         this.host = host;
         this.port = port;
         this.type = type;
+        int result = name.hashCode();
+        result = 31 * result + host.hashCode();
+        result = 31 * result + port;
+        //  Enum hashCode is an identity hash, use the name so the hash survive serialization across JVMs.
+        this.hash = 31 * result + (type != null ? type.name().hashCode() : 0);
     }
 
     public Service(String name, String host, int port) {
         this(name, host, port, ServiceType.UNKNOWN);
     }
 
+    /**
+     * @return The canonical instance equal to <code>new Service(name, host, port, type)</code>.
+     */
+    public static Service of(String name, String host, int port, ServiceType type) {
+        return POOL.intern(new Service(name, host, port, type));
+    }
+
+    public static Service of(String name, String host, int port) {
+        return of(name, host, port, ServiceType.UNKNOWN);
+    }
+
     public String getName() {
         return name;
     }
@@ -72,6 +98,23 @@ public class Service implements Serializable {
         return type;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Service service = (Service) o;
+        return hash == service.hash
+                && port == service.port
+                && name.equals(service.name)
+                && host.equals(service.host)
+                && type == service.type;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
     @Override
     public String toString() {
         return "Service{" +
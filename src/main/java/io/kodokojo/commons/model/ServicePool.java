@@ -0,0 +1,77 @@
+package io.kodokojo.commons.model;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded pool of canonical {@link Service} instances, hosts are interned alongside. Once <code>maxSize</code>
+ * services are pooled, a new generation start empty: instances still in use are pooled again on their next lookup.
+ */
+class ServicePool {
+
+    static final int DEFAULT_MAX_SIZE = 4096;
+
+    private final int maxSize;
+
+    private volatile Generation generation = new Generation();
+
+    ServicePool(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be upper than 0.");
+        }
+        this.maxSize = maxSize;
+    }
+
+    Service intern(Service service) {
+        Generation current = generation;
+        Service res = current.services.get(service);
+        if (res != null) {
+            return res;
+        }
+        if (current.services.size() >= maxSize) {
+            synchronized (this) {
+                if (generation == current) {
+                    generation = new Generation();
+                }
+                current = generation;
+            }
+        }
+        String host = current.hosts.putIfAbsent(service.getHost(), service.getHost());
+        Service candidate = host == null || host == service.getHost() ? service : new Service(service.getName(), host, service.getPort(), service.getType());
+        res = current.services.putIfAbsent(candidate, candidate);
+        return res == null ? candidate : res;
+    }
+
+    int size() {
+        return generation.services.size();
+    }
+
+    private static class Generation {
+
+        private final Map<Service, Service> services = new ConcurrentHashMap<>();
+
+        private final Map<String, String> hosts = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,203 @@
+package io.kodokojo.commons.model;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Immutable set of {@link Service}, held in an array sorted by hash: no entry object per element, and
+ * {@link #contains(Object)} is a binary search.
+ */
+public final class ServiceSet extends AbstractSet<Service> implements Serializable {
+
+    private static final Service[] NO_SERVICE = new Service[0];
+
+    private static final ServiceSet EMPTY = new ServiceSet(NO_SERVICE, new int[0]);
+
+    private static final Comparator<Service> BY_HASH = (first, second) -> Integer.compare(first.hashCode(), second.hashCode());
+
+    private final Service[] services;
+
+    private final int[] hashes;
+
+    private ServiceSet(Service[] services, int[] hashes) {
+        this.services = services;
+        this.hashes = hashes;
+    }
+
+    public static ServiceSet empty() {
+        return EMPTY;
+    }
+
+    public static ServiceSet of(Service... services) {
+        if (services == null) {
+            throw new IllegalArgumentException("services must be defined.");
+        }
+        return build(services.clone(), services.length);
+    }
+
+    /**
+     * @return <code>services</code> itself if it's already a {@link ServiceSet}.
+     */
+    public static ServiceSet copyOf(Collection<? extends Service> services) {
+        if (services == null) {
+            throw new IllegalArgumentException("services must be defined.");
+        }
+        if (services instanceof ServiceSet) {
+            return (ServiceSet) services;
+        }
+        return build(services.toArray(new Service[services.size()]), services.size());
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static ServiceSet build(Service[] services, int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        for (int i = 0; i < size; i++) {
+            if (services[i] == null) {
+                throw new IllegalArgumentException("services must not contain null.");
+            }
+        }
+        Arrays.sort(services, 0, size, BY_HASH);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (!containsInRange(services, distinct, services[i])) {
+                services[distinct++] = services[i];
+            }
+        }
+        Service[] elements = distinct == services.length ? services : Arrays.copyOf(services, distinct);
+        int[] hashes = new int[distinct];
+        for (int i = 0; i < distinct; i++) {
+            hashes[i] = elements[i].hashCode();
+        }
+        return new ServiceSet(elements, hashes);
+    }
+
+    /**
+     * Look backward for <code>service</code> among the sorted elements with the same hash.
+     */
+    private static boolean containsInRange(Service[] sorted, int end, Service service) {
+        for (int i = end - 1; i >= 0 && sorted[i].hashCode() == service.hashCode(); i--) {
+            if (sorted[i].equals(service)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Service)) {
+            return false;
+        }
+        int hash = o.hashCode();
+        int index = Arrays.binarySearch(hashes, hash);
+        if (index < 0) {
+            return false;
+        }
+        while (index > 0 && hashes[index - 1] == hash) {
+            index--;
+        }
+        for (int i = index; i < hashes.length && hashes[i] == hash; i++) {
+            if (services[i].equals(o)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator<Service> iterator() {
+        return new Iterator<Service>() {
+
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < services.length;
+            }
+
+            @Override
+            public Service next() {
+                if (next >= services.length) {
+                    throw new NoSuchElementException();
+                }
+                return services[next++];
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return services.length;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return services.clone();
+    }
+
+    public static class Builder {
+
+        private Service[] services = new Service[8];
+
+        private int size = 0;
+
+        private Builder() {
+            // Use ServiceSet.builder().
+        }
+
+        public Builder add(Service service) {
+            if (service == null) {
+                throw new IllegalArgumentException("service must be defined.");
+            }
+            if (size == services.length) {
+                services = Arrays.copyOf(services, size * 2);
+            }
+            services[size++] = service;
+            return this;
+        }
+
+        public Builder addAll(Collection<? extends Service> services) {
+            if (services != null) {
+                for (Service service : services) {
+                    add(service);
+                }
+            }
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public ServiceSet build() {
+            return ServiceSet.build(Arrays.copyOf(services, size), size);
+        }
+    }
+}
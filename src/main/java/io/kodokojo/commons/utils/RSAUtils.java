@@ -187,6 +187,36 @@ public class RSAUtils {
         }
     }
 
+    public static void writeAesKey(Key aesKey, Writer writer) {
+        if (aesKey == null) {
+            throw new IllegalArgumentException("aesKey must be defined.");
+        }
+        if (writer == null) {
+            throw new IllegalArgumentException("writer must be defined.");
+        }
+        try {
+            writer.write(Base64.getEncoder().encodeToString(aesKey.getEncoded()));
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write an AES key in writer", e);
+        }
+    }
+
+    public static SecretKey readAesKey(Reader reader) {
+        if (reader == null) {
+            throw new IllegalArgumentException("reader must be defined.");
+        }
+        try (BufferedReader bufferedReader = new BufferedReader(reader)) {
+            String encoded = bufferedReader.readLine();
+            if (isBlank(encoded)) {
+                throw new IllegalArgumentException("Unable to read an AES key from an empty content.");
+            }
+            return new SecretKeySpec(Base64.getDecoder().decode(encoded.trim()), AES);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to extract AES Key .", e);
+        }
+    }
+
     public static String encodePublicKey(RSAPublicKey rsaPublicKey, String userEmail) {
         if (rsaPublicKey == null) {
             throw new IllegalArgumentException("rsaPublicKey must be defined.");
@@ -29,6 +29,7 @@ import com.github.dockerjava.api.model.ExposedPort;
 import com.github.dockerjava.api.model.Ports;
 import com.github.dockerjava.core.DockerClientBuilder;
 import com.github.dockerjava.core.DockerClientConfig;
+import com.github.dockerjava.jaxrs.DockerCmdExecFactoryImpl;
 import com.squareup.okhttp.*;
 import io.kodokojo.commons.config.DockerConfig;
 import org.apache.commons.lang.StringUtils;
@@ -36,18 +37,31 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
 
-public class DockerSupport {
+/**
+ * Access to the Docker daemon described by {@link DockerConfig}.
+ * <p>
+ * A single pooled {@link DockerClient}, returned by {@link #getDockerClient()}, is created on first use and shared by
+ * all callers until {@link #close()}.
+ */
+public class DockerSupport implements Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DockerSupport.class);
 
     private final DockerConfig dockerConfig;
 
+    private final Object lock = new Object();
+
+    private volatile DockerClient dockerClient;
+
+    private boolean closed = false;
+
     @Inject
     public DockerSupport(DockerConfig dockerConfig) {
         if (dockerConfig == null) {
@@ -56,6 +70,29 @@ public class DockerSupport {
         this.dockerConfig = dockerConfig;
     }
 
+    /**
+     * @return The shared client, which must not be closed by the caller.
+     */
+    public DockerClient getDockerClient() {
+        DockerClient res = dockerClient;
+        if (res == null) {
+            synchronized (lock) {
+                if (closed) {
+                    throw new IllegalStateException("DockerSupport is closed.");
+                }
+                res = dockerClient;
+                if (res == null) {
+                    res = createDockerClient();
+                    dockerClient = res;
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return A new client, with its own connection pool, to be closed by the caller.
+     */
     public DockerClient createDockerClient() {
         DockerClientConfig config;
         if (StringUtils.isBlank(dockerConfig.dockerServerUrl())) {
@@ -66,7 +103,12 @@ public class DockerSupport {
                     .withUri(dockerConfig.dockerServerUrl())
                     .build();
         }
-        return DockerClientBuilder.getInstance(config).build();
+        DockerCmdExecFactoryImpl dockerCmdExecFactory = new DockerCmdExecFactoryImpl()
+                .withReadTimeout(dockerConfig.dockerClientReadTimeout())
+                .withConnectTimeout(dockerConfig.dockerClientConnectTimeout())
+                .withMaxTotalConnections(dockerConfig.dockerClientMaxTotalConnections())
+                .withMaxPerRouteConnections(dockerConfig.dockerClientMaxPerRouteConnections());
+        return DockerClientBuilder.getInstance(config).withDockerCmdExecFactory(dockerCmdExecFactory).build();
     }
 
     public String getDockerHost() {
@@ -79,14 +121,16 @@ public class DockerSupport {
     }
 
     public int getExposedPort(String containerId, int containerPort) {
-        InspectContainerResponse inspectContainerResponse = createDockerClient().inspectContainerCmd(containerId).exec();
+        InspectContainerResponse inspectContainerResponse = getDockerClient().inspectContainerCmd(containerId).exec();
         Map<ExposedPort, Ports.Binding[]> bindings = inspectContainerResponse.getNetworkSettings().getPorts().getBindings();
         Ports.Binding[] bindingsExposed = bindings.get(ExposedPort.tcp(containerPort));
         if (bindingsExposed == null) {
             return -1;
         }
         return bindingsExposed[0].getHostPort();
-    } public interface ServiceIsUp {
+    }
+
+    public interface ServiceIsUp {
         boolean accept(Response response);
     }
 
@@ -155,4 +199,21 @@ public class DockerSupport {
             }
         }
     }
+
+    @Override
+    public void close() {
+        DockerClient toClose;
+        synchronized (lock) {
+            closed = true;
+            toClose = dockerClient;
+            dockerClient = null;
+        }
+        if (toClose != null) {
+            try {
+                toClose.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close Docker client.", e);
+            }
+        }
+    }
 }
@@ -0,0 +1,70 @@
+package io.kodokojo.commons.utils.properties;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable and versioned view of all keys known by a {@link PropertyResolver}. A key without value is kept with a
+ * <code>null</code> value, which allow to distinguish it from a key unknown when the generation was built.
+ */
+public final class ConfigGeneration {
+
+    private final long version;
+
+    private final Map<String, Object> values;
+
+    ConfigGeneration(long version, Map<String, Object> values) {
+        if (values == null) {
+            throw new IllegalArgumentException("values must be defined.");
+        }
+        this.version = version;
+        this.values = Collections.unmodifiableMap(new HashMap<>(values));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    public Object get(String key) {
+        return values.get(key);
+    }
+
+    public Map<String, Object> getValues() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigGeneration{" +
+                "version=" + version +
+                ", keys=" + values.keySet() +
+                '}';
+    }
+}
@@ -0,0 +1,68 @@
+package io.kodokojo.commons.utils.properties;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+/**
+ * Bind a {@link ConfigGeneration} to the current thread until closed, all proxies of the owning
+ * {@link PropertyResolver} read their values from it. Pins may be nested.
+ * <pre>
+ * try (GenerationPin pin = PropertyResolver.pin(kodokojoConfig)) {
+ *     // kodokojoConfig.projectName() and kodokojoConfig.stackName() come from the same generation.
+ * }
+ * </pre>
+ */
+public final class GenerationPin implements AutoCloseable {
+
+    static final GenerationPin NONE = new GenerationPin(null, null, null);
+
+    private final ThreadLocal<ConfigGeneration> pinnedGenerations;
+
+    private final ConfigGeneration generation;
+
+    private final ConfigGeneration previous;
+
+    GenerationPin(ThreadLocal<ConfigGeneration> pinnedGenerations, ConfigGeneration generation, ConfigGeneration previous) {
+        this.pinnedGenerations = pinnedGenerations;
+        this.generation = generation;
+        this.previous = previous;
+    }
+
+    /**
+     * @return The pinned generation, <code>null</code> if nothing was pinned.
+     */
+    public ConfigGeneration getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public void close() {
+        if (pinnedGenerations == null) {
+            return;
+        }
+        if (previous == null) {
+            pinnedGenerations.remove();
+        } else {
+            pinnedGenerations.set(previous);
+        }
+    }
+}
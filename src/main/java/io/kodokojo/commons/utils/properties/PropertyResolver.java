@@ -29,39 +29,328 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 
+/**
+ * Create {@link PropertyConfig} proxies which read their {@link Key} from a {@link PropertyValueProvider}.
+ * <p>
+ * Until {@link #refresh()} is called, each call on a proxy is resolved by the provider. Once refreshed, proxies read
+ * the current {@link ConfigGeneration}, an immutable snapshot of all keys of proxies created by this resolver which is
+ * replaced atomically by each call to {@link #refresh()}. Readers never lock, {@link #pin()} allow a thread to read
+ * several keys from the same generation, for instance during a whole request.
+ * <p>
+ * {@link #explain(String)} return the full resolution path of a key, and {@link #enableSampling(double, int)} keep a
+ * fraction of proxy lookups as {@link PropertyTrace} which may be dumped with {@link #dumpSampledTraces()}.
+ * <p>
+ * Keys, types and default values of an interface are computed once per prefix given to
+ * {@link #createProxy(Class, String)} and shared by all proxies of this scope.
+ */
 public class PropertyResolver {
 
     private final PropertyValueProvider propertyValueProvider;
 
-    private final InternalInvoker internalInvoker;
+    private final Map<ProxyScope, Map<Method, KeyMetadata>> scopes;
+
+    private final Map<String, KeyMetadata> registeredKeys;
+
+    private final ThreadLocal<ConfigGeneration> pinnedGenerations;
+
+    private volatile ConfigGeneration generation;
+
+    private volatile PropertyTraceSampler traceSampler;
 
     public PropertyResolver(PropertyValueProvider propertyValueProvider) {
         if (propertyValueProvider == null) {
             throw new IllegalArgumentException("propertyValueProvider must be defined.");
         }
         this.propertyValueProvider = propertyValueProvider;
-        this.internalInvoker = new InternalInvoker();
+        this.scopes = new ConcurrentHashMap<>();
+        this.registeredKeys = new ConcurrentHashMap<>();
+        this.pinnedGenerations = new ThreadLocal<>();
     }
 
     public <T extends PropertyConfig> T createProxy(Class<T> propertyConfig) {
-        return (T) Proxy.newProxyInstance(PropertyResolver.class.getClassLoader(), new Class[]{propertyConfig}, internalInvoker);
+        return createProxy(propertyConfig, null);
+    }
+
+    /**
+     * Create a proxy which prefix each of its keys, <code>@Key("host")</code> being read as <code>registry.host</code>
+     * for the prefix <code>registry</code>. The proxy share generations, traces and metadata of this resolver.
+     *
+     * @param propertyConfig The interface to implement.
+     * @param prefix         The prefix of each key, no prefix if blank.
+     */
+    public <T extends PropertyConfig> T createProxy(Class<T> propertyConfig, String prefix) {
+        if (propertyConfig == null) {
+            throw new IllegalArgumentException("propertyConfig must be defined.");
+        }
+        ProxyScope scope = new ProxyScope(propertyConfig, StringUtils.isBlank(prefix) ? "" : prefix);
+        Map<Method, KeyMetadata> keyMetadatas = scopes.computeIfAbsent(scope, this::computeKeyMetadatas);
+        return (T) Proxy.newProxyInstance(PropertyResolver.class.getClassLoader(), new Class[]{propertyConfig}, new InternalInvoker(scope, keyMetadatas));
+    }
+
+    private Map<Method, KeyMetadata> computeKeyMetadatas(ProxyScope scope) {
+        Map<Method, KeyMetadata> res = new HashMap<>();
+        for (Method method : scope.propertyConfig.getMethods()) {
+            Key keyAnnotation = method.getAnnotation(Key.class);
+            if (keyAnnotation != null) {
+                String key = scope.prefix.isEmpty() || scope.prefix.endsWith(".") ? scope.prefix + keyAnnotation.value() : scope.prefix + "." + keyAnnotation.value();
+                KeyMetadata keyMetadata = new KeyMetadata(key, method.getReturnType(), keyAnnotation.defaultValue(), true);
+                KeyMetadata registered = registeredKeys.putIfAbsent(key, keyMetadata);
+                if (registered != null && registered.type != keyMetadata.type) {
+                    //  Generations hold values of the first registered type, always read this one from the provider.
+                    keyMetadata = new KeyMetadata(key, method.getReturnType(), keyAnnotation.defaultValue(), false);
+                }
+                res.put(method, keyMetadata);
+            }
+        }
+        return Collections.unmodifiableMap(res);
+    }
+
+    /**
+     * Read all keys of created proxies and publish them as the new current generation.
+     *
+     * @return The published generation.
+     */
+    public synchronized ConfigGeneration refresh() {
+        ConfigGeneration current = generation;
+        ConfigGeneration next = buildGeneration(current == null ? 1 : current.getVersion() + 1);
+        generation = next;
+        return next;
+    }
+
+    /**
+     * @return The current generation, <code>null</code> if {@link #refresh()} was never called.
+     */
+    public ConfigGeneration currentGeneration() {
+        return generation;
+    }
+
+    /**
+     * Pin the current generation on the current thread until the returned {@link GenerationPin} is closed. A pin
+     * taken inside another one keep the outer generation.
+     *
+     * @return A pin which do nothing if {@link #refresh()} was never called, values are then read from the provider.
+     */
+    public GenerationPin pin() {
+        ConfigGeneration previous = pinnedGenerations.get();
+        ConfigGeneration pinned = previous != null ? previous : generation;
+        if (pinned == null) {
+            return GenerationPin.NONE;
+        }
+        pinnedGenerations.set(pinned);
+        return new GenerationPin(pinnedGenerations, pinned, previous);
+    }
+
+    /**
+     * Pin the current generation of the {@link PropertyResolver} which created the given proxy.
+     *
+     * @return A pin which do nothing if <code>propertyConfig</code> wasn't created by a {@link PropertyResolver}.
+     */
+    public static GenerationPin pin(PropertyConfig propertyConfig) {
+        if (propertyConfig != null && Proxy.isProxyClass(propertyConfig.getClass())) {
+            InvocationHandler invocationHandler = Proxy.getInvocationHandler(propertyConfig);
+            if (invocationHandler instanceof InternalInvoker) {
+                return ((InternalInvoker) invocationHandler).resolver().pin();
+            }
+        }
+        return GenerationPin.NONE;
+    }
+
+    /**
+     * Resolve a key through the provider chain, ignoring the current generation, and report each provider consulted,
+     * conversion applied and time spent.
+     *
+     * @param key A key, resolved as a <code>String</code> if no proxy created by this resolver declare it.
+     * @return The trace of the resolution, which contain the resolved value.
+     */
+    public PropertyTrace explain(String key) {
+        if (StringUtils.isBlank(key)) {
+            throw new IllegalArgumentException("key must be defined.");
+        }
+        KeyMetadata keyMetadata = registeredKeys.get(key);
+        if (keyMetadata == null) {
+            keyMetadata = new KeyMetadata(key, String.class, null, false);
+        }
+        PropertyTrace trace = PropertyTrace.start(key, true);
+        Object value = null;
+        try {
+            value = resolve(keyMetadata, false, trace);
+            ConfigGeneration current = generation;
+            if (current != null) {
+                boolean contains = current.contains(key);
+                boolean same = contains && Objects.equals(current.get(key), value);
+                trace.record("ConfigGeneration", PropertyTrace.Outcome.GENERATION,
+                        "version " + current.getVersion() + (contains ? (same ? " hold the same value" : " hold another value") : " doesn't contain this key"), 0);
+            }
+        } finally {
+            trace.finish(value);
+        }
+        return trace;
+    }
+
+    /**
+     * Trace a fraction of lookups made by proxies of this resolver.
+     *
+     * @param rate     Fraction of lookups to trace, between 0 and 1.
+     * @param capacity Number of most recent traces kept.
+     */
+    public void enableSampling(double rate, int capacity) {
+        traceSampler = new PropertyTraceSampler(rate, capacity);
+    }
+
+    public void disableSampling() {
+        traceSampler = null;
+    }
+
+    /**
+     * @return Sampled traces, from the oldest to the most recent. Values are not kept in sampled traces.
+     */
+    public List<PropertyTrace> dumpSampledTraces() {
+        PropertyTraceSampler sampler = traceSampler;
+        return sampler == null ? Collections.emptyList() : sampler.dump();
+    }
+
+    private Object resolve(KeyMetadata keyMetadata, boolean useGeneration, PropertyTrace trace) {
+        String key = keyMetadata.key;
+        Object value;
+        ConfigGeneration readGeneration = null;
+        if (useGeneration && keyMetadata.inGeneration) {
+            readGeneration = pinnedGenerations.get();
+            if (readGeneration == null) {
+                readGeneration = generation;
+            }
+        }
+        if (readGeneration != null && readGeneration.contains(key)) {
+            value = readGeneration.get(key);
+            if (trace != null) {
+                trace.record("ConfigGeneration", PropertyTrace.Outcome.GENERATION, "version " + readGeneration.getVersion(), 0);
+            }
+        } else {
+            long start = trace == null ? 0L : System.nanoTime();
+            value = propertyValueProvider.providePropertyValue(keyMetadata.type, key);
+            if (trace != null) {
+                trace.record(propertyValueProvider, value == null ? PropertyTrace.Outcome.MISS : PropertyTrace.Outcome.HIT, null, System.nanoTime() - start);
+            }
+        }
+        if (value == null && keyMetadata.defaultValue != null) {
+            value = keyMetadata.defaultValue;
+            if (trace != null) {
+                trace.record("Key", PropertyTrace.Outcome.DEFAULT_VALUE, String.valueOf(keyMetadata.defaultValue), 0);
+            }
+        }
+        return value;
+    }
+
+    private ConfigGeneration buildGeneration(long version) {
+        Map<Class<?>, List<String>> keysByType = new HashMap<>();
+        for (KeyMetadata keyMetadata : registeredKeys.values()) {
+            keysByType.computeIfAbsent(keyMetadata.type, type -> new ArrayList<>()).add(keyMetadata.key);
+        }
+        Map<String, Object> values = new HashMap<>(registeredKeys.size());
+        for (Map.Entry<Class<?>, List<String>> entry : keysByType.entrySet()) {
+            Map<String, ?> found = propertyValueProvider.providePropertyValues(entry.getKey(), entry.getValue());
+            for (String key : entry.getValue()) {
+                values.put(key, found.get(key));
+            }
+        }
+        return new ConfigGeneration(version, values);
     }
 
     private class InternalInvoker implements InvocationHandler {
+
+        private final ProxyScope scope;
+
+        private final Map<Method, KeyMetadata> keyMetadatas;
+
+        private InternalInvoker(ProxyScope scope, Map<Method, KeyMetadata> keyMetadatas) {
+            this.scope = scope;
+            this.keyMetadatas = keyMetadatas;
+        }
+
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            Key keyAnnotation = method.getAnnotation(Key.class);
-            if (keyAnnotation == null) {
+            KeyMetadata keyMetadata = keyMetadatas.get(method);
+            if (keyMetadata == null) {
+                if (method.getDeclaringClass() == Object.class) {
+                    return invokeObjectMethod(proxy, method, args);
+                }
                 return method.invoke(proxy, args);
             }
-            Object value = propertyValueProvider.providePropertyValue(method.getReturnType(), keyAnnotation.value());
-            if (isNotBlank(keyAnnotation.defaultValue()) && value == null) {
-                value = getDefaultValue(method.getReturnType(), keyAnnotation.defaultValue());
+            PropertyTraceSampler sampler = traceSampler;
+            if (sampler == null || !sampler.shouldSample()) {
+                return resolve(keyMetadata, true, null);
+            }
+            PropertyTrace trace = PropertyTrace.start(keyMetadata.key, false);
+            Object value = null;
+            try {
+                value = resolve(keyMetadata, true, trace);
+                return value;
+            } finally {
+                sampler.record(trace.finish(value));
             }
-            return value;
+        }
+
+        private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return scope.propertyConfig.getSimpleName() + (scope.prefix.isEmpty() ? "" : "[" + scope.prefix + "]");
+            }
+        }
+
+        private PropertyResolver resolver() {
+            return PropertyResolver.this;
+        }
+    }
+
+    private static class ProxyScope {
+
+        private final Class<?> propertyConfig;
+
+        private final String prefix;
+
+        private ProxyScope(Class<?> propertyConfig, String prefix) {
+            this.propertyConfig = propertyConfig;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ProxyScope that = (ProxyScope) o;
+            return propertyConfig.equals(that.propertyConfig) && prefix.equals(that.prefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * propertyConfig.hashCode() + prefix.hashCode();
+        }
+    }
+
+    private static class KeyMetadata {
+
+        private final String key;
+
+        private final Class<?> type;
+
+        //  Already converted to type, null if no default value.
+        private final Object defaultValue;
+
+        private final boolean inGeneration;
+
+        private KeyMetadata(String key, Class<?> type, String defaultValue, boolean inGeneration) {
+            this.key = key;
+            this.type = type;
+            this.defaultValue = isNotBlank(defaultValue) ? getDefaultValue(type, defaultValue) : null;
+            this.inGeneration = inGeneration;
         }
     }
 
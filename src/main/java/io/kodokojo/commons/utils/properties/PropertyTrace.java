@@ -0,0 +1,183 @@
+package io.kodokojo.commons.utils.properties;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resolution path of a single key: each provider consulted, conversion applied and time spent, in completion order.
+ * <p>
+ * A trace is bound to the resolving thread only while a traced lookup run, so providers check
+ * {@link #current()} and record their step only when it isn't <code>null</code>.
+ */
+public final class PropertyTrace {
+
+    private static final ThreadLocal<PropertyTrace> CURRENT = new ThreadLocal<>();
+
+    public enum Outcome {
+        HIT,
+        MISS,
+        CONVERSION,
+        DEFAULT_VALUE,
+        GENERATION
+    }
+
+    private final String key;
+
+    private final long startTime;
+
+    private final long startNanos;
+
+    private final boolean keepValue;
+
+    private final PropertyTrace previous;
+
+    private List<Step> steps;
+
+    private long durationNanos = -1;
+
+    private Object value;
+
+    private PropertyTrace(String key, boolean keepValue, PropertyTrace previous) {
+        this.key = key;
+        this.keepValue = keepValue;
+        this.previous = previous;
+        this.steps = new ArrayList<>();
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return The trace of the lookup running on the current thread, <code>null</code> if this lookup isn't traced.
+     */
+    public static PropertyTrace current() {
+        return CURRENT.get();
+    }
+
+    static PropertyTrace start(String key, boolean keepValue) {
+        PropertyTrace trace = new PropertyTrace(key, keepValue, CURRENT.get());
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    public static String nameOf(Object source) {
+        String name = source.getClass().getSimpleName();
+        return name.isEmpty() ? source.getClass().getName() : name;
+    }
+
+    public void record(Object source, Outcome outcome, String detail, long nanos) {
+        if (durationNanos >= 0) {
+            throw new IllegalStateException("Trace of key '" + key + "' is already finished.");
+        }
+        steps.add(new Step(source instanceof String ? (String) source : nameOf(source), outcome, detail, nanos));
+    }
+
+    PropertyTrace finish(Object resolvedValue) {
+        durationNanos = System.nanoTime() - startNanos;
+        value = keepValue ? resolvedValue : null;
+        steps = Collections.unmodifiableList(steps);
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+        return this;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return The resolved value, always <code>null</code> for sampled traces to avoid keeping secrets in memory.
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("PropertyTrace{key='").append(key).append("', durationNanos=").append(durationNanos);
+        if (keepValue) {
+            sb.append(", value=").append(value);
+        }
+        sb.append(", steps=[");
+        for (int i = 0; i < steps.size(); i++) {
+            sb.append(i == 0 ? "" : ", ").append(steps.get(i));
+        }
+        return sb.append("]}").toString();
+    }
+
+    public static final class Step {
+
+        private final String source;
+
+        private final Outcome outcome;
+
+        private final String detail;
+
+        private final long nanos;
+
+        private Step(String source, Outcome outcome, String detail, long nanos) {
+            this.source = source;
+            this.outcome = outcome;
+            this.detail = detail;
+            this.nanos = nanos;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return source + " " + outcome + (detail == null ? "" : " (" + detail + ")") + " " + nanos + "ns";
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io.kodokojo.commons.utils.properties;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keep a fraction of {@link PropertyTrace} in a lock-free ring buffer, the oldest traces being overwritten.
+ */
+public class PropertyTraceSampler {
+
+    private final double rate;
+
+    private final int mask;
+
+    private final AtomicReferenceArray<PropertyTrace> traces;
+
+    private final AtomicLong cursor;
+
+    /**
+     * @param rate     Fraction of lookups to trace, between 0 and 1.
+     * @param capacity Number of traces kept, rounded up to the next power of two.
+     */
+    public PropertyTraceSampler(double rate, int capacity) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("rate must be between 0 and 1.");
+        }
+        if (capacity <= 0 || capacity > (1 << 20)) {
+            throw new IllegalArgumentException("capacity must be between 1 and " + (1 << 20) + ".");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.rate = rate;
+        this.mask = size - 1;
+        this.traces = new AtomicReferenceArray<>(size);
+        this.cursor = new AtomicLong();
+    }
+
+    public boolean shouldSample() {
+        return rate > 0 && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    public void record(PropertyTrace trace) {
+        if (trace == null) {
+            throw new IllegalArgumentException("trace must be defined.");
+        }
+        traces.lazySet((int) (cursor.getAndIncrement() & mask), trace);
+    }
+
+    /**
+     * @return Kept traces, from the oldest to the most recent.
+     */
+    public List<PropertyTrace> dump() {
+        long end = cursor.get();
+        long start = Math.max(0, end - traces.length());
+        List<PropertyTrace> res = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            PropertyTrace trace = traces.get((int) (i & mask));
+            if (trace != null) {
+                res.add(trace);
+            }
+        }
+        return res;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+}
@@ -23,6 +23,8 @@ package io.kodokojo.commons.utils.properties.provider;
  */
 
 
+import io.kodokojo.commons.utils.properties.PropertyTrace;
+
 import java.math.BigDecimal;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
@@ -43,7 +45,12 @@ public abstract class AbstarctStringPropertyValueProvider implements PropertyVal
         if (value != null) {
             if (classType.equals(String.class)) {
                 return (T) value;
-            } else if (classType.equals(Integer.class) || int.class.isAssignableFrom(classType)) {
+            }
+            PropertyTrace trace = PropertyTrace.current();
+            if (trace != null) {
+                trace.record(this, PropertyTrace.Outcome.CONVERSION, "String to " + classType.getSimpleName(), 0);
+            }
+            if (classType.equals(Integer.class) || int.class.isAssignableFrom(classType)) {
                 return (T) Integer.valueOf(value);
             } else if (classType.equals(Long.class)|| long.class.isAssignableFrom(classType)) {
                 return (T) Long.valueOf(value);
@@ -0,0 +1,170 @@
+package io.kodokojo.commons.utils.properties.provider;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.utils.properties.PropertyTrace;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * Decorate a {@link PropertyValueProvider} to decrypt values written as <code>ENC(base64 AES ciphertext)</code>.
+ * Decrypted values are kept in memory, keyed by ciphertext, during a limited time to avoid running the cipher on each
+ * lookup. The AES key is usually loaded with {@link io.kodokojo.commons.utils.RSAUtils#readAesKey(java.io.Reader)}.
+ */
+public class DecryptingValueProvider extends AbstarctStringPropertyValueProvider {
+
+    public static final String ENCRYPTED_PREFIX = "ENC(";
+
+    public static final String ENCRYPTED_SUFFIX = ")";
+
+    private static final String AES = "AES";
+
+    private static final long DEFAULT_CACHE_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int PURGE_THRESHOLD = 512;
+
+    private final PropertyValueProvider delegate;
+
+    private final Key aesKey;
+
+    private final long cacheTtl;
+
+    private final Map<String, DecryptedValue> cache;
+
+    private final ThreadLocal<Cipher> cipherThreadLocal = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            return createCipher();
+        }
+    };
+
+    public DecryptingValueProvider(PropertyValueProvider delegate, Key aesKey, long cacheTtl) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate must be defined.");
+        }
+        if (aesKey == null) {
+            throw new IllegalArgumentException("aesKey must be defined.");
+        }
+        if (!AES.equals(aesKey.getAlgorithm())) {
+            throw new IllegalArgumentException("aesKey must be an AES key instead of " + aesKey.getAlgorithm() + ".");
+        }
+        if (cacheTtl < 0) {
+            throw new IllegalArgumentException("cacheTtl must be positive.");
+        }
+        this.delegate = delegate;
+        this.aesKey = aesKey;
+        this.cacheTtl = cacheTtl;
+        this.cache = new ConcurrentHashMap<>();
+    }
+
+    public DecryptingValueProvider(PropertyValueProvider delegate, Key aesKey) {
+        this(delegate, aesKey, DEFAULT_CACHE_TTL);
+    }
+
+    public static boolean isEncrypted(String value) {
+        return value != null && value.startsWith(ENCRYPTED_PREFIX) && value.endsWith(ENCRYPTED_SUFFIX);
+    }
+
+    @Override
+    protected String provideValue(String key) {
+        if (isBlank(key)) {
+            throw new IllegalArgumentException("key must be defined.");
+        }
+        String value = delegate.providePropertyValue(String.class, key);
+        if (!isEncrypted(value)) {
+            return value;
+        }
+        long now = System.currentTimeMillis();
+        PropertyTrace trace = PropertyTrace.current();
+        long start = trace == null ? 0L : System.nanoTime();
+        DecryptedValue decryptedValue = cache.get(value);
+        boolean cached = decryptedValue != null && decryptedValue.expireAt >= now;
+        if (!cached) {
+            String cipherText = value.substring(ENCRYPTED_PREFIX.length(), value.length() - ENCRYPTED_SUFFIX.length());
+            decryptedValue = new DecryptedValue(decrypt(key, cipherText), now + cacheTtl);
+            if (cache.size() >= PURGE_THRESHOLD) {
+                purgeExpired(now);
+            }
+            cache.put(value, decryptedValue);
+        }
+        if (trace != null) {
+            trace.record(this, PropertyTrace.Outcome.CONVERSION, cached ? "decrypt from cache" : "decrypt", System.nanoTime() - start);
+        }
+        return decryptedValue.value;
+    }
+
+    private String decrypt(String key, String cipherText) {
+        Cipher cipher = cipherThreadLocal.get();
+        try {
+            return new String(cipher.doFinal(Base64.getDecoder().decode(cipherText)));
+        } catch (IllegalBlockSizeException | BadPaddingException | IllegalArgumentException e) {
+            //  doFinal may leave the Cipher in an inconsistent state, start again from a fresh one next time.
+            cipherThreadLocal.remove();
+            throw new IllegalStateException("Unable to decrypt value of property '" + key + "'.", e);
+        }
+    }
+
+    private Cipher createCipher() {
+        try {
+            Cipher cipher = Cipher.getInstance(AES);
+            cipher.init(Cipher.DECRYPT_MODE, aesKey);
+            return cipher;
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException e) {
+            throw new IllegalStateException("Unable to create an AES Cipher.", e);
+        }
+    }
+
+    private void purgeExpired(long now) {
+        Iterator<DecryptedValue> iterator = cache.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expireAt < now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class DecryptedValue {
+
+        private final String value;
+
+        private final long expireAt;
+
+        private DecryptedValue(String value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -22,6 +22,7 @@ package io.kodokojo.commons.utils.properties.provider;
  * #L%
  */
 
+import io.kodokojo.commons.utils.properties.PropertyTrace;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
 
@@ -45,6 +46,10 @@ public class DockerConfigValueProvider implements PropertyValueProvider {
         T value = delegate.providePropertyValue(classType, key);
 
         if ("DOCKER_HOST".equals(key) && classType.isAssignableFrom(String.class) && value != null) {
+            PropertyTrace trace = PropertyTrace.current();
+            if (trace != null) {
+                trace.record(this, PropertyTrace.Outcome.CONVERSION, "tcp:// to https://", 0);
+            }
             return (T) value.toString().replaceAll("tcp://", "https://");
         } else {
             return value;
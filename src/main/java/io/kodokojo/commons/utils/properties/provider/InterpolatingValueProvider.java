@@ -0,0 +1,206 @@
+package io.kodokojo.commons.utils.properties.provider;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.utils.properties.PropertyTrace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * Decorate a {@link PropertyValueProvider} to replace <code>${other.key}</code> references by the value of
+ * <code>other.key</code>, which may itself reference other keys.
+ * <p>
+ * Each distinct raw value is parsed once into a {@link Template}. Referenced keys are fetched through
+ * {@link PropertyValueProvider#providePropertyValues(Class, Collection)} and the rendered value is kept until the raw
+ * value or one of the referenced values change. A reference cycle raise an {@link IllegalStateException}, an unknown
+ * reference is kept as is.
+ */
+public class InterpolatingValueProvider extends AbstarctStringPropertyValueProvider {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InterpolatingValueProvider.class);
+
+    static final String PLACEHOLDER_PREFIX = "${";
+
+    static final String PLACEHOLDER_SUFFIX = "}";
+
+    private final PropertyValueProvider delegate;
+
+    private final Map<String, Template> templates;
+
+    private final Map<String, Resolved> resolved;
+
+    public InterpolatingValueProvider(PropertyValueProvider delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate must be defined.");
+        }
+        this.delegate = delegate;
+        this.templates = new ConcurrentHashMap<>();
+        this.resolved = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    protected String provideValue(String key) {
+        if (isBlank(key)) {
+            throw new IllegalArgumentException("key must be defined.");
+        }
+        return resolve(key, delegate.providePropertyValue(String.class, key), new ArrayDeque<>());
+    }
+
+    private String resolve(String key, String rawValue, Deque<String> resolutionPath) {
+        if (rawValue == null || !rawValue.contains(PLACEHOLDER_PREFIX)) {
+            return rawValue;
+        }
+        if (resolutionPath.contains(key)) {
+            StringBuilder cycle = new StringBuilder();
+            Iterator<String> iterator = resolutionPath.descendingIterator();
+            while (iterator.hasNext()) {
+                cycle.append(iterator.next()).append(" -> ");
+            }
+            throw new IllegalStateException("Reference cycle detected while resolving property '" + key + "': " + cycle.append(key));
+        }
+        Template template = templates.computeIfAbsent(rawValue, Template::compile);
+        String[] references = template.references;
+
+        resolutionPath.push(key);
+        String[] values = new String[references.length];
+        try {
+            Map<String, String> rawReferenceValues = delegate.providePropertyValues(String.class, Arrays.asList(references));
+            for (int i = 0; i < references.length; i++) {
+                values[i] = resolve(references[i], rawReferenceValues.get(references[i]), resolutionPath);
+                if (values[i] == null && LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Property '{}' reference unknown property '{}'.", key, references[i]);
+                }
+            }
+        } finally {
+            resolutionPath.pop();
+        }
+
+        PropertyTrace trace = PropertyTrace.current();
+        Resolved previous = resolved.get(key);
+        if (previous != null && previous.template == template && Arrays.equals(previous.referenceValues, values)) {
+            if (trace != null) {
+                trace.record(this, PropertyTrace.Outcome.CONVERSION, "interpolate " + key + " from cache", 0);
+            }
+            return previous.value;
+        }
+        long start = trace == null ? 0L : System.nanoTime();
+        Resolved current = new Resolved(template, values, template.render(values));
+        resolved.put(key, current);
+        if (trace != null) {
+            trace.record(this, PropertyTrace.Outcome.CONVERSION, "interpolate " + key + " with " + Arrays.toString(references), System.nanoTime() - start);
+        }
+        return current.value;
+    }
+
+    /**
+     * A raw value split between literal parts and references to other keys.
+     */
+    static class Template {
+
+        //  literals.length == referenceIndexes.length + 1
+        private final String[] literals;
+
+        private final int[] referenceIndexes;
+
+        //  Distinct referenced keys, in order of appearance.
+        private final String[] references;
+
+        private Template(String[] literals, int[] referenceIndexes, String[] references) {
+            this.literals = literals;
+            this.referenceIndexes = referenceIndexes;
+            this.references = references;
+        }
+
+        static Template compile(String rawValue) {
+            List<String> literals = new ArrayList<>();
+            List<String> references = new ArrayList<>();
+            List<Integer> referenceIndexes = new ArrayList<>();
+            int position = 0;
+            int start = rawValue.indexOf(PLACEHOLDER_PREFIX);
+            while (start >= 0) {
+                int end = rawValue.indexOf(PLACEHOLDER_SUFFIX, start + PLACEHOLDER_PREFIX.length());
+                if (end < 0) {
+                    break;
+                }
+                String reference = rawValue.substring(start + PLACEHOLDER_PREFIX.length(), end).trim();
+                if (reference.isEmpty()) {
+                    throw new IllegalArgumentException("Empty reference in value '" + rawValue + "'.");
+                }
+                literals.add(rawValue.substring(position, start));
+                int index = references.indexOf(reference);
+                if (index < 0) {
+                    index = references.size();
+                    references.add(reference);
+                }
+                referenceIndexes.add(index);
+                position = end + PLACEHOLDER_SUFFIX.length();
+                start = rawValue.indexOf(PLACEHOLDER_PREFIX, position);
+            }
+            literals.add(rawValue.substring(position));
+
+            int[] indexes = new int[referenceIndexes.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = referenceIndexes.get(i);
+            }
+            return new Template(literals.toArray(new String[literals.size()]), indexes, references.toArray(new String[references.size()]));
+        }
+
+        String[] references() {
+            return references.clone();
+        }
+
+        String render(String[] values) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < referenceIndexes.length; i++) {
+                sb.append(literals[i]);
+                String value = values[referenceIndexes[i]];
+                if (value == null) {
+                    sb.append(PLACEHOLDER_PREFIX).append(references[referenceIndexes[i]]).append(PLACEHOLDER_SUFFIX);
+                } else {
+                    sb.append(value);
+                }
+            }
+            return sb.append(literals[literals.length - 1]).toString();
+        }
+    }
+
+    private static class Resolved {
+
+        private final Template template;
+
+        private final String[] referenceValues;
+
+        private final String value;
+
+        private Resolved(Template template, String[] referenceValues, String value) {
+            this.template = template;
+            this.referenceValues = referenceValues;
+            this.value = value;
+        }
+    }
+}
@@ -23,9 +23,9 @@ package io.kodokojo.commons.utils.properties.provider;
  */
 
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import io.kodokojo.commons.utils.properties.PropertyTrace;
+
+import java.util.*;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
 
@@ -50,10 +50,42 @@ public class OrderedMergedValueProvider implements PropertyValueProvider {
             throw new IllegalArgumentException("key must be defined.");
         }
         T res = null;
+        PropertyTrace trace = PropertyTrace.current();
         Iterator<? extends PropertyValueProvider> iterator = propertyValueProviders.iterator();
         while (res == null && iterator.hasNext()) {
             PropertyValueProvider valueProvider = iterator.next();
+            long start = trace == null ? 0L : System.nanoTime();
             res = valueProvider.providePropertyValue(classType, key);
+            if (trace != null) {
+                trace.record(valueProvider, res == null ? PropertyTrace.Outcome.MISS : PropertyTrace.Outcome.HIT,
+                        key.equals(trace.getKey()) ? null : "key " + key, System.nanoTime() - start);
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public <T> Map<String, T> providePropertyValues(Class<T> classType, Collection<String> keys) {
+        if (classType == null) {
+            throw new IllegalArgumentException("classType must be defined.");
+        }
+        if (keys == null) {
+            throw new IllegalArgumentException("keys must be defined.");
+        }
+        Map<String, T> res = new HashMap<>(keys.size());
+        Set<String> missingKeys = new LinkedHashSet<>(keys);
+        PropertyTrace trace = PropertyTrace.current();
+        Iterator<? extends PropertyValueProvider> iterator = propertyValueProviders.iterator();
+        while (!missingKeys.isEmpty() && iterator.hasNext()) {
+            PropertyValueProvider valueProvider = iterator.next();
+            long start = trace == null ? 0L : System.nanoTime();
+            Map<String, T> values = valueProvider.providePropertyValues(classType, missingKeys);
+            if (trace != null) {
+                trace.record(valueProvider, values.isEmpty() ? PropertyTrace.Outcome.MISS : PropertyTrace.Outcome.HIT,
+                        "batch " + values.keySet() + " of " + missingKeys, System.nanoTime() - start);
+            }
+            res.putAll(values);
+            missingKeys.removeAll(values.keySet());
         }
         return res;
     }
@@ -22,10 +22,34 @@ package io.kodokojo.commons.utils.properties.provider;
  * #L%
  */
 
-
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 public interface PropertyValueProvider {
 
     <T> T providePropertyValue(Class<T> classType, String key);
 
+    /**
+     * Provide values of several keys in one call. Implementations backed by a remote store may override it to fetch
+     * all keys at once.
+     *
+     * @param classType The expected type of values.
+     * @param keys      The keys to lookup.
+     * @return A map which contain only keys which have a value.
+     */
+    default <T> Map<String, T> providePropertyValues(Class<T> classType, Collection<String> keys) {
+        if (keys == null) {
+            throw new IllegalArgumentException("keys must be defined.");
+        }
+        Map<String, T> res = new HashMap<>(keys.size());
+        for (String key : keys) {
+            T value = providePropertyValue(classType, key);
+            if (value != null) {
+                res.put(key, value);
+            }
+        }
+        return res;
+    }
+
 }
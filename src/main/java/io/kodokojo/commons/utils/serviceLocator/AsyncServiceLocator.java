@@ -0,0 +1,56 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non blocking variant of {@link ServiceLocator}: lookups return immediately, the future complete once the backend
+ * answered, exceptionally if it failed. Same results as the blocking lookups.
+ *
+ * @see BlockingServiceLocatorAdapter to run a blocking {@link ServiceLocator} on an executor.
+ */
+public interface AsyncServiceLocator {
+
+    /**
+     * @return A future completed with <code>null</code> if no service found.
+     * @see ServiceLocator#getService(String, String)
+     */
+    CompletableFuture<Set<Service>> getServiceAsync(String type, String name);
+
+    /**
+     * @return A future completed with an empty collection if no service found.
+     * @see ServiceLocator#getServiceByType(String)
+     */
+    CompletableFuture<Set<Service>> getServiceByTypeAsync(String type);
+
+    /**
+     * @return A future completed with an empty collection if no service found.
+     * @see ServiceLocator#getServiceByName(String)
+     */
+    CompletableFuture<Set<Service>> getServiceByNameAsync(String name);
+
+}
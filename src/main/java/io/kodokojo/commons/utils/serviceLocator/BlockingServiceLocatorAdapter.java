@@ -0,0 +1,125 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Expose a blocking {@link ServiceLocator} as an {@link AsyncServiceLocator}: each lookup run on the given executor,
+ * which stay owned by the caller. Cancelling a returned future interrupt its lookup.
+ */
+public class BlockingServiceLocatorAdapter implements ServiceLocator, AsyncServiceLocator {
+
+    private final ServiceLocator delegate;
+
+    private final ExecutorService executor;
+
+    public BlockingServiceLocatorAdapter(ServiceLocator delegate, ExecutorService executor) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate must be defined.");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must be defined.");
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public Set<Service> getService(String type, String name) {
+        return delegate.getService(type, name);
+    }
+
+    @Override
+    public Set<Service> getServiceByType(String type) {
+        return delegate.getServiceByType(type);
+    }
+
+    @Override
+    public Set<Service> getServiceByName(String name) {
+        return delegate.getServiceByName(name);
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceAsync(String type, String name) {
+        return submit(ServiceQuery.byTypeAndName(type, name));
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByTypeAsync(String type) {
+        return submit(ServiceQuery.byType(type));
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByNameAsync(String name) {
+        return submit(ServiceQuery.byName(name));
+    }
+
+    public ServiceLocator getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @throws java.util.concurrent.RejectedExecutionException If the executor doesn't accept the lookup.
+     */
+    private CompletableFuture<Set<Service>> submit(ServiceQuery query) {
+        InterruptibleFuture res = new InterruptibleFuture();
+        res.task = executor.submit(() -> {
+            if (res.isDone()) {
+                //  Cancelled while queued.
+                return;
+            }
+            try {
+                res.complete(query.execute(delegate));
+            } catch (Throwable e) {
+                //  Errors included, the future must not stay pending.
+                res.completeExceptionally(e);
+            }
+        });
+        if (res.isCancelled()) {
+            //  Cancelled before the task was known, cancel did not interrupt it.
+            res.task.cancel(true);
+        }
+        return res;
+    }
+
+    private static class InterruptibleFuture extends CompletableFuture<Set<Service>> {
+
+        private volatile Future<?> task;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean res = super.cancel(mayInterruptIfRunning);
+            Future<?> current = task;
+            if (res && current != null) {
+                current.cancel(true);
+            }
+            return res;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.metrics.DataAgeAware;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decorate a {@link ServiceLocator} to keep results in a bounded LRU cache.
+ * <p>
+ * Non empty results live <code>ttl</code> milliseconds and are reloaded in background once
+ * {@link #REFRESH_AHEAD_RATIO} of their ttl elapsed, so callers of a frequently used query never wait for the delegate.
+ * A refresh which fails, or answers nothing, is retried once the rest of the ttl, <code>ttl</code> minus the refresh
+ * ahead delay, elapsed again, so a failing delegate is called at most once per such interval and entry.
+ * Empty or <code>null</code> results live <code>negativeTtl</code> milliseconds, which should be shorter, and never
+ * replace a non empty entry before it expire.
+ * <p>
+ * Loads go through a {@link CoalescingServiceLocator}: concurrent misses of the same query, or a miss during its
+ * background refresh, share a single call to the delegate.
+ * <p>
+ * Built with a {@link ServiceSnapshotFile}, non empty results are written to it every <code>snapshotInterval</code>
+ * milliseconds and on {@link #close()}. On start, the snapshot entries younger than <code>maxStale</code> are loaded
+ * as {@link #isStale(ServiceQuery) stale} entries: they are served, and reloaded in background on their first lookup.
+ * A stale entry is kept until a reload succeed or <code>maxStale</code> elapsed, so lookups keep working while
+ * registries are unreachable at startup.
+ */
+public class CachingServiceLocator implements ServiceLocator, DataAgeAware, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingServiceLocator.class);
+
+    public static final long DEFAULT_TTL = TimeUnit.SECONDS.toMillis(30);
+
+    public static final long DEFAULT_NEGATIVE_TTL = TimeUnit.SECONDS.toMillis(5);
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    public static final double REFRESH_AHEAD_RATIO = 0.8;
+
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    public static final long DEFAULT_MAX_STALE = TimeUnit.HOURS.toMillis(1);
+
+    private final ServiceLocator delegate;
+
+    private final long ttl;
+
+    private final long negativeTtl;
+
+    private final long refreshRetryDelay;
+
+    private final Map<ServiceQuery, CacheEntry> entries;
+
+    private final ExecutorService refreshExecutor;
+
+    private final ServiceSnapshotFile snapshotFile;
+
+    private final ScheduledExecutorService snapshotScheduler;
+
+    public CachingServiceLocator(ServiceLocator delegate, long ttl, long negativeTtl, int maxEntries) {
+        this(delegate, ttl, negativeTtl, maxEntries, null, 0, 0);
+    }
+
+    /**
+     * @param snapshotFile     Where results are persisted, may be <code>null</code> to keep them only in memory.
+     * @param snapshotInterval Time in milliseconds between two snapshot writes.
+     * @param maxStale         Time in milliseconds a snapshot entry may be served, from its last load.
+     */
+    public CachingServiceLocator(ServiceLocator delegate, long ttl, long negativeTtl, int maxEntries, ServiceSnapshotFile snapshotFile, long snapshotInterval, long maxStale) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate must be defined.");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be upper than 0.");
+        }
+        if (negativeTtl < 0) {
+            throw new IllegalArgumentException("negativeTtl must be positive.");
+        }
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be upper than 0.");
+        }
+        this.delegate = delegate instanceof CoalescingServiceLocator ? delegate : CoalescingServiceLocator.coalesce(delegate);
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.refreshRetryDelay = Math.max(1, ttl - (long) (ttl * REFRESH_AHEAD_RATIO));
+        this.entries = new LinkedHashMap<ServiceQuery, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ServiceQuery, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (snapshotFile != null && snapshotInterval <= 0) {
+            throw new IllegalArgumentException("snapshotInterval must be upper than 0.");
+        }
+        if (snapshotFile != null && maxStale <= 0) {
+            throw new IllegalArgumentException("maxStale must be upper than 0.");
+        }
+        this.refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "service-locator-cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.snapshotFile = snapshotFile;
+        if (snapshotFile == null) {
+            this.snapshotScheduler = null;
+        } else {
+            seed(snapshotFile.read(), maxStale);
+            this.snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "service-locator-cache-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotScheduler.scheduleWithFixedDelay(this::safeWriteSnapshot, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public CachingServiceLocator(ServiceLocator delegate) {
+        this(delegate, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_MAX_ENTRIES);
+    }
+
+    public CachingServiceLocator(ServiceLocator delegate, ServiceSnapshotFile snapshotFile) {
+        this(delegate, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_MAX_ENTRIES, snapshotFile, DEFAULT_SNAPSHOT_INTERVAL, DEFAULT_MAX_STALE);
+    }
+
+    @Override
+    public Set<Service> getService(String type, String name) {
+        return lookup(ServiceQuery.byTypeAndName(type, name));
+    }
+
+    @Override
+    public Set<Service> getServiceByType(String type) {
+        return lookup(ServiceQuery.byType(type));
+    }
+
+    @Override
+    public Set<Service> getServiceByName(String name) {
+        return lookup(ServiceQuery.byName(name));
+    }
+
+    public void invalidate(ServiceQuery query) {
+        synchronized (entries) {
+            entries.remove(query);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return Time elapsed since the entry of <code>query</code> was loaded from the registries, possibly before a
+     * restart for snapshot entries, <code>-1</code> if not cached.
+     */
+    @Override
+    public long getDataAge(ServiceQuery query) {
+        CacheEntry entry;
+        synchronized (entries) {
+            entry = entries.get(query);
+        }
+        return entry == null ? -1 : System.currentTimeMillis() - entry.loadedAt;
+    }
+
+    /**
+     * @return <code>true</code> if <code>query</code> is answered from the snapshot loaded on start, not reloaded yet.
+     */
+    public boolean isStale(ServiceQuery query) {
+        CacheEntry entry;
+        synchronized (entries) {
+            entry = entries.get(query);
+        }
+        return entry != null && entry.stale;
+    }
+
+    /**
+     * Write the non empty results to the snapshot file now.
+     */
+    public void writeSnapshot() throws IOException {
+        if (snapshotFile == null) {
+            throw new IllegalStateException("No snapshot file defined.");
+        }
+        long now = System.currentTimeMillis();
+        Map<ServiceQuery, Set<Service>> services = new LinkedHashMap<>();
+        Map<ServiceQuery, Long> loadedAt = new HashMap<>();
+        synchronized (entries) {
+            for (Map.Entry<ServiceQuery, CacheEntry> entry : entries.entrySet()) {
+                CacheEntry cacheEntry = entry.getValue();
+                if (cacheEntry.services != null && !cacheEntry.services.isEmpty() && now < cacheEntry.expireAt) {
+                    services.put(entry.getKey(), cacheEntry.services);
+                    //  Stale entries keep the load time read from the snapshot, writing them again doesn't refresh them.
+                    loadedAt.put(entry.getKey(), cacheEntry.loadedAt);
+                }
+            }
+        }
+        snapshotFile.write(services, loadedAt, now);
+    }
+
+    private void safeWriteSnapshot() {
+        try {
+            writeSnapshot();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to write snapshot {}.", snapshotFile.getPath(), e);
+        }
+    }
+
+    private void seed(ServiceSnapshotFile.Snapshot snapshot, long maxStale) {
+        if (snapshot == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int seeded = 0;
+        synchronized (entries) {
+            for (Map.Entry<ServiceQuery, Set<Service>> entry : snapshot.getServices().entrySet()) {
+                long loadedAt = snapshot.getLoadedAt(entry.getKey());
+                long expireAt = loadedAt + maxStale;
+                if (expireAt > now && !entries.containsKey(entry.getKey())) {
+                    //  Reloaded on first lookup.
+                    entries.put(entry.getKey(), new CacheEntry(entry.getValue(), loadedAt, expireAt, now, true));
+                    seeded++;
+                }
+            }
+        }
+        LOGGER.info("{} stale entries loaded from snapshot {}, {} older than {}ms ignored.", seeded, snapshotFile.getPath(), snapshot.getServices().size() - seeded, maxStale);
+    }
+
+    private Set<Service> lookup(ServiceQuery query) {
+        long now = System.currentTimeMillis();
+        CacheEntry entry;
+        synchronized (entries) {
+            entry = entries.get(query);
+        }
+        if (entry != null && now < entry.expireAt) {
+            if (now >= entry.refreshAt && entry.refreshing.compareAndSet(false, true)) {
+                scheduleRefresh(query, entry);
+            }
+            return entry.services;
+        }
+        return load(query).services;
+    }
+
+    private CacheEntry load(ServiceQuery query) {
+        Set<Service> services = query.execute(delegate);
+        long now = System.currentTimeMillis();
+        CacheEntry entry;
+        if (services == null || services.isEmpty()) {
+            entry = new CacheEntry(services, now, now + negativeTtl, now + negativeTtl, false);
+        } else {
+            entry = new CacheEntry(Collections.unmodifiableSet(services), now, now + ttl, now + (long) (ttl * REFRESH_AHEAD_RATIO), false);
+        }
+        synchronized (entries) {
+            CacheEntry current = entries.get(query);
+            if (entry.services == null || entry.services.isEmpty()) {
+                if (current != null && current.services != null && !current.services.isEmpty() && now < current.expireAt) {
+                    //  A registry answering nothing while reloading mustn't hide services still valid or stale.
+                    postponeRefresh(current);
+                    return current;
+                }
+            }
+            entries.put(query, entry);
+        }
+        return entry;
+    }
+
+    private void scheduleRefresh(ServiceQuery query, CacheEntry entry) {
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    load(query);
+                } catch (RuntimeException e) {
+                    //  Keep serving the current entry until it expire.
+                    postponeRefresh(entry);
+                    LOGGER.warn("Unable to refresh {}.", query, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+            LOGGER.debug("Refresh of {} rejected, cache is closed.", query);
+        }
+    }
+
+    private void postponeRefresh(CacheEntry entry) {
+        entry.refreshAt = System.currentTimeMillis() + refreshRetryDelay;
+        entry.refreshing.set(false);
+    }
+
+    @Override
+    public void close() {
+        refreshExecutor.shutdownNow();
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+            safeWriteSnapshot();
+        }
+    }
+
+    private static class CacheEntry {
+
+        private final Set<Service> services;
+
+        private final long loadedAt;
+
+        private final long expireAt;
+
+        private volatile long refreshAt;
+
+        private final boolean stale;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        private CacheEntry(Set<Service> services, long loadedAt, long expireAt, long refreshAt, boolean stale) {
+            this.services = services;
+            this.loadedAt = loadedAt;
+            this.expireAt = expireAt;
+            this.refreshAt = refreshAt;
+            this.stale = stale;
+        }
+    }
+}
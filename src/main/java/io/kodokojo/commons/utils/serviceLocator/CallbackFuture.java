@@ -0,0 +1,45 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import retrofit.Callback;
+import retrofit.RetrofitError;
+import retrofit.client.Response;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Retrofit {@link Callback} completing a {@link CompletableFuture}, to expose asynchronous Retrofit calls as futures.
+ */
+public class CallbackFuture<T> extends CompletableFuture<T> implements Callback<T> {
+
+    @Override
+    public void success(T body, Response response) {
+        complete(body);
+    }
+
+    @Override
+    public void failure(RetrofitError error) {
+        completeExceptionally(error);
+    }
+}
@@ -0,0 +1,93 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * {@link CoalescingServiceLocator} of a delegate which is also an {@link AsyncServiceLocator}: asynchronous lookups
+ * use the delegate asynchronous API and share the in flight lookups with blocking ones.
+ */
+public class CoalescingAsyncServiceLocator extends CoalescingServiceLocator implements AsyncServiceLocator {
+
+    private final AsyncServiceLocator asyncDelegate;
+
+    public CoalescingAsyncServiceLocator(ServiceLocator delegate) {
+        super(delegate);
+        if (!(delegate instanceof AsyncServiceLocator)) {
+            throw new IllegalArgumentException("delegate must be an AsyncServiceLocator.");
+        }
+        this.asyncDelegate = (AsyncServiceLocator) delegate;
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceAsync(String type, String name) {
+        return lookupAsync(ServiceQuery.byTypeAndName(type, name));
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByTypeAsync(String type) {
+        return lookupAsync(ServiceQuery.byType(type));
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByNameAsync(String name) {
+        return lookupAsync(ServiceQuery.byName(name));
+    }
+
+    /**
+     * Asynchronous {@link #lookup(ServiceQuery)}, sharing the future of the same query already in flight.
+     */
+    public CompletableFuture<Set<Service>> lookupAsync(ServiceQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query must be defined.");
+        }
+        CompletableFuture<Set<Service>> flight = new CompletableFuture<>();
+        CompletableFuture<Set<Service>> current = inFlight.putIfAbsent(query, flight);
+        if (current != null) {
+            //  A dependent future, so a caller cancelling its lookup doesn't cancel the others.
+            return current.thenApply(services -> services);
+        }
+        CompletableFuture<Set<Service>> lookup;
+        try {
+            lookup = query.executeAsync(asyncDelegate);
+        } catch (RuntimeException e) {
+            inFlight.remove(query, flight);
+            flight.completeExceptionally(e);
+            return flight;
+        }
+        lookup.whenComplete((services, error) -> {
+            inFlight.remove(query, flight);
+            if (error == null) {
+                flight.complete(services);
+            } else {
+                flight.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+        });
+        return flight.thenApply(services -> services);
+    }
+}
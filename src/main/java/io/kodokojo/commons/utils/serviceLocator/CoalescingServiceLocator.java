@@ -0,0 +1,124 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Decorate a {@link ServiceLocator} so that at most one lookup per {@link ServiceQuery} run at a time: callers asking
+ * a query already in flight wait for it and share its result, or its failure, instead of calling the backend again.
+ * <p>
+ * Nothing is kept once the lookup is over, put a {@link CachingServiceLocator} in front to reuse results. Use
+ * {@link #coalesce(ServiceLocator)} to keep the asynchronous API of a delegate which has one, this class only expose
+ * the blocking one.
+ */
+public class CoalescingServiceLocator implements ServiceLocator {
+
+    private final ServiceLocator delegate;
+
+    final Map<ServiceQuery, CompletableFuture<Set<Service>>> inFlight = new ConcurrentHashMap<>();
+
+    public CoalescingServiceLocator(ServiceLocator delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate must be defined.");
+        }
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return A {@link CoalescingAsyncServiceLocator} if <code>delegate</code> is an {@link AsyncServiceLocator}, a
+     * {@link CoalescingServiceLocator} otherwise.
+     */
+    public static CoalescingServiceLocator coalesce(ServiceLocator delegate) {
+        return delegate instanceof AsyncServiceLocator ? new CoalescingAsyncServiceLocator(delegate) : new CoalescingServiceLocator(delegate);
+    }
+
+    @Override
+    public Set<Service> getService(String type, String name) {
+        return lookup(ServiceQuery.byTypeAndName(type, name));
+    }
+
+    @Override
+    public Set<Service> getServiceByType(String type) {
+        return lookup(ServiceQuery.byType(type));
+    }
+
+    @Override
+    public Set<Service> getServiceByName(String name) {
+        return lookup(ServiceQuery.byName(name));
+    }
+
+    /**
+     * @return Number of queries which have a lookup in flight.
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Run <code>query</code> against the delegate, or wait for the lookup of the same query already running.
+     */
+    public Set<Service> lookup(ServiceQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query must be defined.");
+        }
+        CompletableFuture<Set<Service>> flight = new CompletableFuture<>();
+        CompletableFuture<Set<Service>> current = inFlight.putIfAbsent(query, flight);
+        if (current != null) {
+            return await(query, current);
+        }
+        Set<Service> res;
+        try {
+            res = query.execute(delegate);
+        } catch (Throwable e) {
+            //  Errors too, waiting callers would never be released otherwise.
+            inFlight.remove(query, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        inFlight.remove(query, flight);
+        flight.complete(res);
+        return res;
+    }
+
+    private static Set<Service> await(ServiceQuery query, CompletableFuture<Set<Service>> flight) {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for lookup " + query + ".", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Lookup " + query + " failed.", cause);
+        }
+    }
+}
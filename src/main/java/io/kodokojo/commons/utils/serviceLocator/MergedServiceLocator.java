@@ -23,64 +23,350 @@ package io.kodokojo.commons.utils.servicelocator;
  */
 
 import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.model.ServiceSet;
 import org.apache.commons.collections4.CollectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.HashSet;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.apache.commons.lang.StringUtils.isBlank;
+/**
+ * Merge services found by several {@link ServiceLocator}.
+ * <p>
+ * By default locators are called one after the other. When built with an executor and a deadline, all locators are
+ * queried in parallel and the lookup returns what arrived before the deadline; locators which failed or were too slow
+ * are reported by {@link #lookup(ServiceQuery)}.
+ * <p>
+ * In parallel mode, locators which are also {@link AsyncServiceLocator} are called through their asynchronous API,
+ * which decide which thread wait for the backend (the Consul and Marathon ones use a bounded Retrofit pool), blocking
+ * ones run on the executor. Lookups still running at the deadline are cancelled, which doesn't abort the HTTP call of
+ * every backend. {@link #lookupAsync(ServiceQuery)} doesn't block the caller: its future complete when the last locator
+ * answered or at the deadline.
+ * <p>
+ * The {@link ServiceLocator} methods return <code>null</code> when no service was found, and throw an
+ * {@link IllegalStateException} when no service was found while some locators failed or timed out, since the service
+ * may be registered in one of them.
+ */
+public class MergedServiceLocator implements ServiceLocator, AsyncServiceLocator, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MergedServiceLocator.class);
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private static final ScheduledExecutorService DEADLINE_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "merged-service-locator-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<ServiceLocator> serviceLocators;
+
+    private final AsyncServiceLocator[] asyncServiceLocators;
 
-public class MergedServiceLocator implements ServiceLocator {
+    private final ExecutorService executor;
 
-    private final LinkedList<ServiceLocator> serviceLocators;
+    private final long deadline;
+
+    private final boolean ownExecutor;
 
     public MergedServiceLocator(LinkedList<ServiceLocator> serviceLocators) {
+        this(serviceLocators, null, 0, false);
+    }
+
+    /**
+     * Query locators in parallel, blocking ones on the given executor which stay owned by the caller.
+     *
+     * @param deadline Time in milliseconds given to each lookup.
+     */
+    public MergedServiceLocator(List<ServiceLocator> serviceLocators, ExecutorService executor, long deadline) {
+        this(serviceLocators, executor, deadline, false);
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must be defined.");
+        }
+    }
+
+    /**
+     * Query locators in parallel, blocking ones on a bounded pool of daemon threads released by {@link #close()}.
+     *
+     * @param deadline Time in milliseconds given to each lookup.
+     */
+    public MergedServiceLocator(List<ServiceLocator> serviceLocators, long deadline) {
+        this(serviceLocators, createExecutor(serviceLocators), deadline, true);
+    }
+
+    private MergedServiceLocator(List<ServiceLocator> serviceLocators, ExecutorService executor, long deadline, boolean ownExecutor) {
         if (serviceLocators == null) {
             throw new IllegalArgumentException("serviceLocators must be defined.");
         }
+        if (executor != null && deadline <= 0) {
+            throw new IllegalArgumentException("deadline must be upper than 0.");
+        }
         this.serviceLocators = serviceLocators;
+        this.executor = executor;
+        this.deadline = deadline;
+        this.ownExecutor = ownExecutor;
+        this.asyncServiceLocators = new AsyncServiceLocator[serviceLocators.size()];
+        if (executor != null) {
+            for (int i = 0; i < asyncServiceLocators.length; i++) {
+                ServiceLocator serviceLocator = serviceLocators.get(i);
+                asyncServiceLocators[i] = serviceLocator instanceof AsyncServiceLocator ?
+                        (AsyncServiceLocator) serviceLocator : new BlockingServiceLocatorAdapter(serviceLocator, executor);
+            }
+        }
     }
 
     @Override
     public Set<Service> getService(String type, String name) {
-        if (isBlank(type)) {
-            throw new IllegalArgumentException("type must be defined.");
-        }
-        if (isBlank(name)) {
-            throw new IllegalArgumentException("name must be defined.");
-        }
-        return callAllServiceLocators((serviceLocator) -> serviceLocator.getService(type, name));
+        ServiceQuery query = ServiceQuery.byTypeAndName(type, name);
+        return servicesOf(query, lookup(query));
     }
 
     @Override
     public Set<Service> getServiceByType(String type) {
-        if (isBlank(type)) {
-            throw new IllegalArgumentException("type must be defined.");
-        }
-        return callAllServiceLocators((serviceLocator) -> serviceLocator.getServiceByType(type));
+        ServiceQuery query = ServiceQuery.byType(type);
+        return servicesOf(query, lookup(query));
     }
 
     @Override
     public Set<Service> getServiceByName(String name) {
-        if (isBlank(name)) {
-            throw new IllegalArgumentException("name must be defined.");
+        ServiceQuery query = ServiceQuery.byName(name);
+        return servicesOf(query, lookup(query));
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceAsync(String type, String name) {
+        ServiceQuery query = ServiceQuery.byTypeAndName(type, name);
+        return lookupAsync(query).thenApply(result -> servicesOf(query, result));
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByTypeAsync(String type) {
+        ServiceQuery query = ServiceQuery.byType(type);
+        return lookupAsync(query).thenApply(result -> servicesOf(query, result));
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByNameAsync(String name) {
+        ServiceQuery query = ServiceQuery.byName(name);
+        return lookupAsync(query).thenApply(result -> servicesOf(query, result));
+    }
+
+    /**
+     * Run the query against all locators.
+     *
+     * @return Merged services with the locators which failed or timed out, never <code>null</code>.
+     */
+    public ServiceLookupResult lookup(ServiceQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query must be defined.");
+        }
+        if (executor == null) {
+            return logged(query, callAllServiceLocators(query));
+        }
+        Lookup lookup = fanOut(query);
+        try {
+            return lookup.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lookup.expire();
+            return lookup.result.join();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unexpected failure of lookup " + query + ".", e.getCause());
+        }
+    }
+
+    /**
+     * Run the query against all locators without blocking. Locators are called in the caller thread if this instance
+     * was built without executor.
+     *
+     * @return A future of merged services with the locators which failed or timed out, never completed exceptionally.
+     */
+    public CompletableFuture<ServiceLookupResult> lookupAsync(ServiceQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query must be defined.");
+        }
+        if (executor == null) {
+            return CompletableFuture.completedFuture(logged(query, callAllServiceLocators(query)));
+        }
+        return fanOut(query).result;
+    }
+
+    private ServiceLookupResult callAllServiceLocators(ServiceQuery query) {
+        ServiceSet.Builder res = ServiceSet.builder();
+        Map<ServiceLocator, Throwable> failures = new IdentityHashMap<>();
+        for (ServiceLocator serviceLocator : serviceLocators) {
+            try {
+                addAll(res, query.execute(serviceLocator));
+            } catch (RuntimeException e) {
+                failures.put(serviceLocator, e);
+            }
+        }
+        return new ServiceLookupResult(res.build(), failures, new ArrayList<>());
+    }
+
+    private Lookup fanOut(ServiceQuery query) {
+        Lookup lookup = new Lookup(query);
+        for (AsyncServiceLocator asyncServiceLocator : asyncServiceLocators) {
+            try {
+                lookup.futures.add(query.executeAsync(asyncServiceLocator));
+            } catch (RuntimeException e) {
+                //  Includes executor rejections.
+                CompletableFuture<Set<Service>> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                lookup.futures.add(failed);
+            }
+        }
+        for (int i = 0; i < lookup.futures.size(); i++) {
+            int index = i;
+            lookup.futures.get(i).whenComplete((services, error) -> lookup.answered(index, services, error));
+        }
+        if (!lookup.result.isDone()) {
+            ScheduledFuture<?> expiration = DEADLINE_SCHEDULER.schedule(lookup::expire, deadline, TimeUnit.MILLISECONDS);
+            lookup.result.whenComplete((result, error) -> expiration.cancel(false));
+        }
+        return lookup;
+    }
+
+    private static ServiceLookupResult logged(ServiceQuery query, ServiceLookupResult result) {
+        if (!result.isComplete()) {
+            LOGGER.warn("Partial result for {}: failed {}, timed out {}.", query, result.getFailures().keySet(), result.getTimedOut());
+        }
+        return result;
+    }
+
+    private static void addAll(ServiceSet.Builder res, Set<Service> services) {
+        if (CollectionUtils.isNotEmpty(services)) {
+            res.addAll(services);
+        }
+    }
+
+    private static Set<Service> servicesOf(ServiceQuery query, ServiceLookupResult result) {
+        if (!result.getServices().isEmpty()) {
+            return result.getServices();
+        }
+        if (result.isComplete()) {
+            return null;
         }
-        return callAllServiceLocators((serviceLocator) -> serviceLocator.getServiceByName(name));
+        IllegalStateException e = new IllegalStateException("Unable to lookup " + query + ", failed " + result.getFailures().keySet() + ", timed out " + result.getTimedOut() + ".");
+        for (Throwable failure : result.getFailures().values()) {
+            e.addSuppressed(failure);
+        }
+        throw e;
     }
 
-    private Set<Service> callAllServiceLocators(Callback callback) {
-        Set<Service> res = new HashSet<>();
+    private static ExecutorService createExecutor(List<ServiceLocator> serviceLocators) {
+        if (serviceLocators == null) {
+            throw new IllegalArgumentException("serviceLocators must be defined.");
+        }
+        int blocking = 0;
         for (ServiceLocator serviceLocator : serviceLocators) {
-            Set<Service> service = callback.execute(serviceLocator);
-            if (CollectionUtils.isNotEmpty(service)) {
-                res.addAll(service);
+            if (!(serviceLocator instanceof AsyncServiceLocator)) {
+                blocking++;
             }
         }
-        return res.size() == 0 ? null : res;
+        int threads = Math.max(1, Math.min(blocking, 8));
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads * 64), runnable -> {
+            Thread thread = new Thread(runnable, "merged-service-locator-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void close() {
+        if (ownExecutor) {
+            executor.shutdownNow();
+        }
     }
 
-    interface Callback {
-        Set<Service> execute(ServiceLocator serviceLocator);
+    /**
+     * Answers of the locators to a query, completed by the last answer or by the deadline, whichever come first.
+     */
+    private class Lookup {
+
+        private final ServiceQuery query;
+
+        private final List<CompletableFuture<Set<Service>>> futures;
+
+        private final boolean[] answered;
+
+        private final ServiceSet.Builder services = ServiceSet.builder();
+
+        private final Map<ServiceLocator, Throwable> failures = new IdentityHashMap<>();
+
+        private final CompletableFuture<ServiceLookupResult> result = new CompletableFuture<>();
+
+        private int pending;
+
+        private boolean expired;
+
+        private Lookup(ServiceQuery query) {
+            this.query = query;
+            this.futures = new ArrayList<>(asyncServiceLocators.length);
+            this.answered = new boolean[asyncServiceLocators.length];
+            this.pending = asyncServiceLocators.length;
+            if (pending == 0) {
+                finish(new ArrayList<>());
+            }
+        }
+
+        private synchronized void answered(int index, Set<Service> answer, Throwable error) {
+            if (expired || result.isDone() || answered[index]) {
+                return;
+            }
+            answered[index] = true;
+            if (error == null) {
+                addAll(services, answer);
+            } else {
+                failures.put(serviceLocators.get(index), error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+            if (--pending == 0) {
+                finish(new ArrayList<>());
+            }
+        }
+
+        private void expire() {
+            List<CompletableFuture<Set<Service>>> late = new ArrayList<>();
+            List<ServiceLocator> timedOut = new ArrayList<>();
+            synchronized (this) {
+                if (expired || result.isDone()) {
+                    return;
+                }
+                //  Answers are ignored from now on, the cancelled futures below must not count as failures.
+                expired = true;
+                for (int i = 0; i < answered.length; i++) {
+                    if (!answered[i]) {
+                        timedOut.add(serviceLocators.get(i));
+                        late.add(futures.get(i));
+                    }
+                }
+            }
+            //  Cancelled before completing, a caller woken up by the result sees the late lookups already cancelled.
+            for (CompletableFuture<Set<Service>> future : late) {
+                future.cancel(true);
+            }
+            finish(timedOut);
+        }
+
+        private void finish(List<ServiceLocator> timedOut) {
+            result.complete(logged(query, new ServiceLookupResult(services.build(), failures, timedOut)));
+        }
     }
 }
@@ -0,0 +1,75 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for asynchronous Retrofit calls. Retrofit 1.9 run each {@link retrofit.Callback} call as a blocking request
+ * on its HTTP executor, by default an unbounded cached pool: a lookup in flight always hold a thread, these pools
+ * bound how many. Calls beyond the queue are rejected with a {@link java.util.concurrent.RejectedExecutionException}.
+ */
+public final class RetrofitCallExecutor {
+
+    public static final int DEFAULT_THREADS = 16;
+
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private static final ExecutorService SHARED = create(DEFAULT_THREADS, DEFAULT_QUEUE_SIZE);
+
+    private RetrofitCallExecutor() {
+        // Util class.
+    }
+
+    /**
+     * @return The pool shared by locators built without executor.
+     */
+    public static ExecutorService shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return A pool of at most <code>threads</code> daemon threads, released when idle.
+     */
+    public static ExecutorService create(int threads, int queueSize) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be upper than 0.");
+        }
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("queueSize must be upper than 0.");
+        }
+        ThreadPoolExecutor res = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "retrofit-call-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        res.allowCoreThreadTimeOut(true);
+        return res;
+    }
+}
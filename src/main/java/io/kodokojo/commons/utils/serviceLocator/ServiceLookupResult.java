@@ -0,0 +1,87 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.model.ServiceSet;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Outcome of a lookup fanned out by {@link MergedServiceLocator}: services merged from the locators which answered,
+ * plus the locators which failed or didn't answer before the deadline.
+ */
+public class ServiceLookupResult {
+
+    private final Set<Service> services;
+
+    private final Map<ServiceLocator, Throwable> failures;
+
+    private final List<ServiceLocator> timedOut;
+
+    public ServiceLookupResult(Set<Service> services, Map<ServiceLocator, Throwable> failures, List<ServiceLocator> timedOut) {
+        if (services == null) {
+            throw new IllegalArgumentException("services must be defined.");
+        }
+        if (failures == null) {
+            throw new IllegalArgumentException("failures must be defined.");
+        }
+        if (timedOut == null) {
+            throw new IllegalArgumentException("timedOut must be defined.");
+        }
+        this.services = ServiceSet.copyOf(services);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.timedOut = Collections.unmodifiableList(timedOut);
+    }
+
+    public Set<Service> getServices() {
+        return services;
+    }
+
+    public Map<ServiceLocator, Throwable> getFailures() {
+        return failures;
+    }
+
+    public List<ServiceLocator> getTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return <code>true</code> if every locator answered in time.
+     */
+    public boolean isComplete() {
+        return failures.isEmpty() && timedOut.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceLookupResult{" +
+                "services=" + services +
+                ", failures=" + failures.keySet() +
+                ", timedOut=" + timedOut +
+                '}';
+    }
+}
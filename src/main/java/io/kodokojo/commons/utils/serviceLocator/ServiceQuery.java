@@ -0,0 +1,148 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * One of the three lookups a {@link ServiceLocator} answer, usable as a map key.
+ */
+public final class ServiceQuery {
+
+    public enum Kind {
+        TYPE_AND_NAME,
+        TYPE,
+        NAME
+    }
+
+    private final Kind kind;
+
+    private final String type;
+
+    private final String name;
+
+    private final int hash;
+
+    private ServiceQuery(Kind kind, String type, String name) {
+        this.kind = kind;
+        this.type = type;
+        this.name = name;
+        int result = kind.hashCode();
+        result = 31 * result + (type != null ? type.hashCode() : 0);
+        this.hash = 31 * result + (name != null ? name.hashCode() : 0);
+    }
+
+    public static ServiceQuery byTypeAndName(String type, String name) {
+        if (isBlank(type)) {
+            throw new IllegalArgumentException("type must be defined.");
+        }
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        return new ServiceQuery(Kind.TYPE_AND_NAME, type, name);
+    }
+
+    public static ServiceQuery byType(String type) {
+        if (isBlank(type)) {
+            throw new IllegalArgumentException("type must be defined.");
+        }
+        return new ServiceQuery(Kind.TYPE, type, null);
+    }
+
+    public static ServiceQuery byName(String name) {
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        return new ServiceQuery(Kind.NAME, null, name);
+    }
+
+    /**
+     * Run this query against the given locator.
+     */
+    public Set<Service> execute(ServiceLocator serviceLocator) {
+        switch (kind) {
+            case TYPE_AND_NAME:
+                return serviceLocator.getService(type, name);
+            case TYPE:
+                return serviceLocator.getServiceByType(type);
+            default:
+                return serviceLocator.getServiceByName(name);
+        }
+    }
+
+    /**
+     * Run this query against the given locator without blocking.
+     */
+    public CompletableFuture<Set<Service>> executeAsync(AsyncServiceLocator serviceLocator) {
+        switch (kind) {
+            case TYPE_AND_NAME:
+                return serviceLocator.getServiceAsync(type, name);
+            case TYPE:
+                return serviceLocator.getServiceByTypeAsync(type);
+            default:
+                return serviceLocator.getServiceByNameAsync(name);
+        }
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ServiceQuery that = (ServiceQuery) o;
+        return hash == that.hash
+                && kind == that.kind
+                && (type != null ? type.equals(that.type) : that.type == null)
+                && (name != null ? name.equals(that.name) : that.name == null);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceQuery{" +
+                "kind=" + kind +
+                ", type='" + type + '\'' +
+                ", name='" + name + '\'' +
+                '}';
+    }
+}
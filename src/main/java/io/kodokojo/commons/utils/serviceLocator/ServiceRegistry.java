@@ -0,0 +1,414 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.model.ServiceSet;
+import io.kodokojo.commons.utils.servicelocator.metrics.DataAgeAware;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * In-memory registry of discovered {@link Service}, indexed by component type, component name, project and stack.
+ * <p>
+ * Backends feed it incrementally: each source (a Consul service, a Marathon application, ...) owns a group of
+ * {@link Registration}, replaced as a whole by {@link #register(String, Collection)}. Only index entries of the keys
+ * the source had or has are rebuilt. Index entries hold the registrations of the key and their immutable
+ * {@link ServiceSet}, swapped with the snapshot, so lookups are a map read without lock nor copy. Label keys are
+ * interned, registrations of many instances share the same key.
+ * <p>
+ * Services are compared by value: a service registered under the same labels by several sources, a Consul service
+ * and the Marathon application behind it for instance, is returned once and stays until its last source drop it.
+ * <p>
+ * Its data age is the time elapsed since a backend last registered something, changed or not.
+ */
+public class ServiceRegistry implements ServiceLocator, DataAgeAware {
+
+    private static final Registration[] NO_REGISTRATION = new Registration[0];
+
+    private final Map<String, String> keys = new ConcurrentHashMap<>();
+
+    private volatile Snapshot snapshot = new Snapshot();
+
+    private volatile long registeredAt = 0;
+
+    /**
+     * Replace registrations of <code>source</code>.
+     *
+     * @param registrations Empty to unregister the source.
+     */
+    public synchronized void register(String source, Collection<Registration> registrations) {
+        if (isBlank(source)) {
+            throw new IllegalArgumentException("source must be defined.");
+        }
+        if (registrations == null) {
+            throw new IllegalArgumentException("registrations must be defined.");
+        }
+        registeredAt = System.currentTimeMillis();
+        Snapshot current = snapshot;
+        Registration[] previous = current.sources.getOrDefault(source, NO_REGISTRATION);
+        Registration[] next = new Registration[registrations.size()];
+        int i = 0;
+        for (Registration registration : registrations) {
+            next[i++] = intern(registration);
+        }
+        if (previous.length == 0 && next.length == 0) {
+            return;
+        }
+        snapshot = current.update(source, previous, next);
+    }
+
+    public void register(String source, Registration registration) {
+        if (registration == null) {
+            throw new IllegalArgumentException("registration must be defined.");
+        }
+        register(source, Collections.singletonList(registration));
+    }
+
+    public void unregister(String source) {
+        register(source, Collections.emptyList());
+    }
+
+    /**
+     * Unregister sources starting with <code>prefix</code> which aren't in <code>sources</code>, typically after a full
+     * resync of the backend owning the prefix.
+     */
+    public synchronized void retainSources(String prefix, Set<String> sources) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("prefix must be defined.");
+        }
+        if (sources == null) {
+            throw new IllegalArgumentException("sources must be defined.");
+        }
+        for (String source : new ArrayList<>(snapshot.sources.keySet())) {
+            if (source.startsWith(prefix) && !sources.contains(source)) {
+                unregister(source);
+            }
+        }
+    }
+
+    @Override
+    public long getDataAge(ServiceQuery query) {
+        long at = registeredAt;
+        return at == 0 ? -1 : System.currentTimeMillis() - at;
+    }
+
+    public Set<String> getSources() {
+        return Collections.unmodifiableSet(snapshot.sources.keySet());
+    }
+
+    /**
+     * @return <code>null</code> if no service found, as {@link ServiceLocator#getService(String, String)} specify since
+     * its first version, unlike the other lookups which return an empty set.
+     */
+    @Override
+    public Set<Service> getService(String type, String name) {
+        if (isBlank(type)) {
+            throw new IllegalArgumentException("type must be defined.");
+        }
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        Map<String, Entry> byName = snapshot.byTypeAndName.get(type);
+        Entry entry = byName == null ? null : byName.get(name);
+        return entry == null ? null : entry.services;
+    }
+
+    /**
+     * @return Empty if no service found.
+     */
+    @Override
+    public Set<Service> getServiceByType(String type) {
+        if (isBlank(type)) {
+            throw new IllegalArgumentException("type must be defined.");
+        }
+        return setOf(snapshot.byType.get(type));
+    }
+
+    /**
+     * @return Empty if no service found.
+     */
+    @Override
+    public Set<Service> getServiceByName(String name) {
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        return setOf(snapshot.byName.get(name));
+    }
+
+    /**
+     * @return Empty if no service found.
+     */
+    public Set<Service> getServiceByProject(String project) {
+        if (isBlank(project)) {
+            throw new IllegalArgumentException("project must be defined.");
+        }
+        return setOf(snapshot.byProject.get(project));
+    }
+
+    /**
+     * @return Empty if no service found.
+     */
+    public Set<Service> getServiceByStack(String stackName) {
+        if (isBlank(stackName)) {
+            throw new IllegalArgumentException("stackName must be defined.");
+        }
+        return setOf(snapshot.byStack.get(stackName));
+    }
+
+    public int size() {
+        return snapshot.size;
+    }
+
+    private static Set<Service> setOf(Entry entry) {
+        return entry == null ? ServiceSet.empty() : entry.services;
+    }
+
+    private Registration intern(Registration registration) {
+        if (registration == null) {
+            throw new IllegalArgumentException("registrations must not contain null.");
+        }
+        return new Registration(intern(registration.project), intern(registration.stackName),
+                intern(registration.componentType), intern(registration.componentName), registration.services);
+    }
+
+    private String intern(String key) {
+        if (key == null) {
+            return null;
+        }
+        String res = keys.putIfAbsent(key, key);
+        return res == null ? key : res;
+    }
+
+    /**
+     * Services of a source instance group, with the labels they are indexed by. Any label may be <code>null</code> when
+     * unknown to the backend.
+     */
+    public static class Registration {
+
+        private final String project;
+
+        private final String stackName;
+
+        private final String componentType;
+
+        private final String componentName;
+
+        private final ServiceSet services;
+
+        private Registration(String project, String stackName, String componentType, String componentName, ServiceSet services) {
+            this.project = project;
+            this.stackName = stackName;
+            this.componentType = componentType;
+            this.componentName = componentName;
+            this.services = services;
+        }
+
+        public Registration(String project, String stackName, String componentType, String componentName, Collection<Service> services) {
+            this(project, stackName, componentType, componentName, ServiceSet.copyOf(services));
+        }
+
+        public String getProject() {
+            return project;
+        }
+
+        public String getStackName() {
+            return stackName;
+        }
+
+        public String getComponentType() {
+            return componentType;
+        }
+
+        public String getComponentName() {
+            return componentName;
+        }
+
+        public Set<Service> getServices() {
+            return services;
+        }
+    }
+
+    private interface Dimension {
+        String of(Registration registration);
+    }
+
+    private static class Snapshot {
+
+        private final Map<String, Registration[]> sources;
+
+        private final Map<String, Entry> byType;
+
+        private final Map<String, Entry> byName;
+
+        private final Map<String, Entry> byProject;
+
+        private final Map<String, Entry> byStack;
+
+        private final Map<String, Map<String, Entry>> byTypeAndName;
+
+        private final int size;
+
+        private Snapshot() {
+            this(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(),
+                    Collections.emptyMap(), Collections.emptyMap(), 0);
+        }
+
+        private Snapshot(Map<String, Registration[]> sources, Map<String, Entry> byType, Map<String, Entry> byName,
+                         Map<String, Entry> byProject, Map<String, Entry> byStack,
+                         Map<String, Map<String, Entry>> byTypeAndName, int size) {
+            this.sources = sources;
+            this.byType = byType;
+            this.byName = byName;
+            this.byProject = byProject;
+            this.byStack = byStack;
+            this.byTypeAndName = byTypeAndName;
+            this.size = size;
+        }
+
+        private Snapshot update(String source, Registration[] previous, Registration[] next) {
+            Map<String, Registration[]> nextSources = new HashMap<>(sources);
+            if (next.length == 0) {
+                nextSources.remove(source);
+            } else {
+                nextSources.put(source, next);
+            }
+
+            Map<String, Map<String, Entry>> nextByTypeAndName = new HashMap<>(byTypeAndName);
+            Set<String> types = keysOf(previous, next, registration -> registration.componentType);
+            for (String type : types) {
+                Map<String, Entry> byNameOfType = byTypeAndName.getOrDefault(type, Collections.emptyMap());
+                Registration[] previousOfType = filter(previous, type);
+                Registration[] nextOfType = filter(next, type);
+                Map<String, Entry> updated = updateIndex(byNameOfType, previousOfType, nextOfType, registration -> registration.componentName);
+                if (updated.isEmpty()) {
+                    nextByTypeAndName.remove(type);
+                } else {
+                    nextByTypeAndName.put(type, updated);
+                }
+            }
+
+            int nextSize = size - count(previous) + count(next);
+            return new Snapshot(nextSources,
+                    updateIndex(byType, previous, next, registration -> registration.componentType),
+                    updateIndex(byName, previous, next, registration -> registration.componentName),
+                    updateIndex(byProject, previous, next, registration -> registration.project),
+                    updateIndex(byStack, previous, next, registration -> registration.stackName),
+                    nextByTypeAndName,
+                    nextSize);
+        }
+
+        private static Registration[] filter(Registration[] registrations, String type) {
+            List<Registration> res = new ArrayList<>(registrations.length);
+            for (Registration registration : registrations) {
+                if (type.equals(registration.componentType)) {
+                    res.add(registration);
+                }
+            }
+            return res.toArray(new Registration[res.size()]);
+        }
+
+        private static int count(Registration[] registrations) {
+            int res = 0;
+            for (Registration registration : registrations) {
+                res += registration.services.size();
+            }
+            return res;
+        }
+
+        private static Set<String> keysOf(Registration[] previous, Registration[] next, Dimension dimension) {
+            Set<String> res = new HashSet<>();
+            for (Registration registration : previous) {
+                addIfDefined(res, dimension.of(registration));
+            }
+            for (Registration registration : next) {
+                addIfDefined(res, dimension.of(registration));
+            }
+            return res;
+        }
+
+        private static void addIfDefined(Set<String> keys, String key) {
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+
+        /**
+         * Rebuild entries of the keys <code>previous</code> or <code>next</code> registrations have, other entries are
+         * shared with <code>index</code>.
+         */
+        private static Map<String, Entry> updateIndex(Map<String, Entry> index, Registration[] previous, Registration[] next, Dimension dimension) {
+            Set<String> keys = keysOf(previous, next, dimension);
+            if (keys.isEmpty()) {
+                return index;
+            }
+            Set<Registration> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+            Collections.addAll(removed, previous);
+            Map<String, Entry> res = new HashMap<>(index);
+            for (String key : keys) {
+                Entry current = index.get(key);
+                List<Registration> registrations = new ArrayList<>();
+                if (current != null) {
+                    for (Registration registration : current.registrations) {
+                        if (!removed.contains(registration)) {
+                            registrations.add(registration);
+                        }
+                    }
+                }
+                for (Registration registration : next) {
+                    if (key.equals(dimension.of(registration))) {
+                        registrations.add(registration);
+                    }
+                }
+                if (registrations.isEmpty()) {
+                    res.remove(key);
+                } else {
+                    res.put(key, new Entry(registrations.toArray(new Registration[registrations.size()])));
+                }
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Registrations indexed under a key, and the union of their services.
+     */
+    private static class Entry {
+
+        private final Registration[] registrations;
+
+        private final ServiceSet services;
+
+        private Entry(Registration[] registrations) {
+            this.registrations = registrations;
+            ServiceSet.Builder builder = ServiceSet.builder();
+            for (Registration registration : registrations) {
+                builder.addAll(registration.services);
+            }
+            this.services = builder.build();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.model.ServiceSet;
+import io.kodokojo.commons.model.ServiceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Local binary file holding the last known services of each {@link ServiceQuery}, to answer lookups after a restart
+ * before, or without, reaching the registries.
+ * <p>
+ * Each query keeps the time its services were loaded from the registries, so an entry written again and again while
+ * the registries are unreachable still ages from its last successful load.
+ * <p>
+ * Strings are written once in a table and referenced by index, numbers as variable length integers. The file is
+ * written to a temporary file of the same directory, synced, then moved over the previous one, so readers see either
+ * the old or the new snapshot, never a partial one.
+ */
+public class ServiceSnapshotFile {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceSnapshotFile.class);
+
+    private static final int MAGIC = 0x4b445353;
+
+    private static final int VERSION = 1;
+
+    private static final ServiceQuery.Kind[] KINDS = ServiceQuery.Kind.values();
+
+    private final Path path;
+
+    public ServiceSnapshotFile(Path path) {
+        if (path == null) {
+            throw new IllegalArgumentException("path must be defined.");
+        }
+        this.path = path.toAbsolutePath();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Replace the file content by <code>services</code>, all loaded at <code>writtenAt</code>.
+     */
+    public void write(Map<ServiceQuery, Set<Service>> services, long writtenAt) throws IOException {
+        write(services, Collections.emptyMap(), writtenAt);
+    }
+
+    /**
+     * Replace the file content by <code>services</code>.
+     *
+     * @param loadedAt Time each query was loaded from the registries, <code>writtenAt</code> for missing ones.
+     */
+    public void write(Map<ServiceQuery, Set<Service>> services, Map<ServiceQuery, Long> loadedAt, long writtenAt) throws IOException {
+        if (services == null) {
+            throw new IllegalArgumentException("services must be defined.");
+        }
+        if (loadedAt == null) {
+            throw new IllegalArgumentException("loadedAt must be defined.");
+        }
+        StringTable strings = new StringTable();
+        for (Map.Entry<ServiceQuery, Set<Service>> entry : services.entrySet()) {
+            strings.add(entry.getKey().getType());
+            strings.add(entry.getKey().getName());
+            for (Service service : entry.getValue()) {
+                strings.add(service.getName());
+                strings.add(service.getHost());
+                strings.add(service.getType() == null ? null : service.getType().name());
+            }
+        }
+
+        Path directory = path.getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeLong(writtenAt);
+                writeVarInt(out, strings.values.size());
+                for (String value : strings.values) {
+                    out.writeUTF(value);
+                }
+                writeVarInt(out, services.size());
+                for (Map.Entry<ServiceQuery, Set<Service>> entry : services.entrySet()) {
+                    ServiceQuery query = entry.getKey();
+                    out.writeByte(query.getKind().ordinal());
+                    writeVarInt(out, strings.indexOf(query.getType()));
+                    writeVarInt(out, strings.indexOf(query.getName()));
+                    out.writeLong(loadedAt.getOrDefault(query, writtenAt));
+                    writeVarInt(out, entry.getValue().size());
+                    for (Service service : entry.getValue()) {
+                        writeVarInt(out, strings.indexOf(service.getName()));
+                        writeVarInt(out, strings.indexOf(service.getHost()));
+                        writeVarInt(out, service.getPort());
+                        writeVarInt(out, strings.indexOf(service.getType() == null ? null : service.getType().name()));
+                    }
+                }
+                //  On disk before the move, a crash can't leave an empty or partial file under the snapshot name.
+                out.flush();
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("{} queries written to snapshot {}.", services.size(), path);
+        }
+    }
+
+    /**
+     * @return <code>null</code> if the file doesn't exist or can't be read.
+     */
+    public Snapshot read() {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int version = in.readInt() == MAGIC ? in.readByte() : -1;
+            if (version != VERSION) {
+                LOGGER.warn("Ignore snapshot {}, unknown format.", path);
+                return null;
+            }
+            long writtenAt = in.readLong();
+            String[] strings = new String[readVarInt(in)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+            int queries = readVarInt(in);
+            Map<ServiceQuery, Set<Service>> services = new LinkedHashMap<>(queries * 2);
+            Map<ServiceQuery, Long> loadedAt = new HashMap<>(queries * 2);
+            for (int i = 0; i < queries; i++) {
+                ServiceQuery.Kind kind = KINDS[in.readByte()];
+                String type = stringAt(strings, readVarInt(in));
+                String name = stringAt(strings, readVarInt(in));
+                long queryLoadedAt = in.readLong();
+                int count = readVarInt(in);
+                ServiceSet.Builder builder = ServiceSet.builder();
+                for (int j = 0; j < count; j++) {
+                    String serviceName = stringAt(strings, readVarInt(in));
+                    String host = stringAt(strings, readVarInt(in));
+                    int port = readVarInt(in);
+                    String serviceType = stringAt(strings, readVarInt(in));
+                    builder.add(Service.of(serviceName, host, port, serviceType == null ? null : ServiceType.valueOf(serviceType)));
+                }
+                ServiceQuery query = queryOf(kind, type, name);
+                services.put(query, builder.build());
+                loadedAt.put(query, queryLoadedAt);
+            }
+            return new Snapshot(services, loadedAt, writtenAt);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to read snapshot {}, ignore it.", path, e);
+            return null;
+        }
+    }
+
+    private static ServiceQuery queryOf(ServiceQuery.Kind kind, String type, String name) {
+        switch (kind) {
+            case TYPE_AND_NAME:
+                return ServiceQuery.byTypeAndName(type, name);
+            case TYPE:
+                return ServiceQuery.byType(type);
+            default:
+                return ServiceQuery.byName(name);
+        }
+    }
+
+    private static String stringAt(String[] strings, int index) {
+        //  0 stand for null.
+        return index == 0 ? null : strings[index - 1];
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int res = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            res |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return res;
+            }
+        }
+        throw new IOException("Malformed variable length integer.");
+    }
+
+    private static class StringTable {
+
+        private final List<String> values = new ArrayList<>();
+
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        private void add(String value) {
+            if (value != null && !indexes.containsKey(value)) {
+                values.add(value);
+                indexes.put(value, values.size());
+            }
+        }
+
+        private int indexOf(String value) {
+            return value == null ? 0 : indexes.get(value);
+        }
+    }
+
+    public static class Snapshot {
+
+        private final Map<ServiceQuery, Set<Service>> services;
+
+        private final Map<ServiceQuery, Long> loadedAt;
+
+        private final long writtenAt;
+
+        private Snapshot(Map<ServiceQuery, Set<Service>> services, Map<ServiceQuery, Long> loadedAt, long writtenAt) {
+            this.services = Collections.unmodifiableMap(services);
+            this.loadedAt = loadedAt;
+            this.writtenAt = writtenAt;
+        }
+
+        public Map<ServiceQuery, Set<Service>> getServices() {
+            return services;
+        }
+
+        public long getWrittenAt() {
+            return writtenAt;
+        }
+
+        /**
+         * @return Time the services of <code>query</code> were loaded from the registries, <code>-1</code> if not in
+         * the snapshot.
+         */
+        public long getLoadedAt(ServiceQuery query) {
+            Long res = loadedAt.get(query);
+            return res == null ? -1 : res;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.kodokojo.commons.utils.servicelocator.balancer;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Service} chosen by a {@link LoadBalancer}, with the count of requests in flight on it.
+ * <p>
+ * Each endpoint returned by {@link LoadBalancer#choose()} count one more outstanding request, to be ended by
+ * {@link #release()}.
+ */
+public final class Endpoint {
+
+    private final Service service;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    Endpoint(Service service) {
+        this.service = service;
+    }
+
+    public Service getService() {
+        return service;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    void acquire() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * Signal the request sent to this endpoint is over.
+     */
+    public void release() {
+        outstanding.decrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "Endpoint{" +
+                "service=" + service +
+                ", outstanding=" + outstanding.get() +
+                '}';
+    }
+}
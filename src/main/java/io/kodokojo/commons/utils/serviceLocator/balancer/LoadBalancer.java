@@ -0,0 +1,209 @@
+package io.kodokojo.commons.utils.servicelocator.balancer;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Spread requests over the services a {@link ServiceLocator} return for a {@link ServiceQuery}.
+ * <p>
+ * Services are loaded from the locator at most every <code>refreshInterval</code> milliseconds, by the caller which
+ * notice the interval elapsed, others keep using the previous endpoints meanwhile. Between two refreshes, choosing an
+ * endpoint neither lock nor allocate. Outstanding request counts are kept across refreshes for services still
+ * returned, equal by name, host, port and type: the same address returned under another name is a new endpoint. A
+ * refresh failing, or by default answering no service while endpoints are known, keep the previous endpoints: a
+ * registry losing its state must not leave callers without any endpoint.
+ * <p>
+ * Each endpoint returned by <code>choose</code> must be {@link Endpoint#release() released} once the request is over.
+ */
+public class LoadBalancer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadBalancer.class);
+
+    public static final long DEFAULT_REFRESH_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    private static final Endpoint[] NO_ENDPOINT = new Endpoint[0];
+
+    private final ServiceLocator serviceLocator;
+
+    private final ServiceQuery query;
+
+    private final LoadBalancingStrategy strategy;
+
+    private final long refreshInterval;
+
+    private final boolean keepEndpointsOnEmptyAnswer;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    private volatile State state;
+
+    /**
+     * @param keepEndpointsOnEmptyAnswer <code>false</code> to drop all endpoints when the locator answer no service.
+     */
+    public LoadBalancer(ServiceLocator serviceLocator, ServiceQuery query, LoadBalancingStrategy strategy, long refreshInterval, boolean keepEndpointsOnEmptyAnswer) {
+        if (serviceLocator == null) {
+            throw new IllegalArgumentException("serviceLocator must be defined.");
+        }
+        if (query == null) {
+            throw new IllegalArgumentException("query must be defined.");
+        }
+        if (strategy == null) {
+            throw new IllegalArgumentException("strategy must be defined.");
+        }
+        if (refreshInterval <= 0) {
+            throw new IllegalArgumentException("refreshInterval must be upper than 0.");
+        }
+        this.serviceLocator = serviceLocator;
+        this.query = query;
+        this.strategy = strategy;
+        this.refreshInterval = refreshInterval;
+        this.keepEndpointsOnEmptyAnswer = keepEndpointsOnEmptyAnswer;
+    }
+
+    public LoadBalancer(ServiceLocator serviceLocator, ServiceQuery query, LoadBalancingStrategy strategy, long refreshInterval) {
+        this(serviceLocator, query, strategy, refreshInterval, true);
+    }
+
+    public LoadBalancer(ServiceLocator serviceLocator, ServiceQuery query, LoadBalancingStrategy strategy) {
+        this(serviceLocator, query, strategy, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * @return <code>null</code> if the locator return no service.
+     */
+    public Endpoint choose() {
+        return choose(0);
+    }
+
+    /**
+     * @param key Request key, like a user or a repository, only used by {@link LoadBalancingStrategies#consistentHash()}.
+     * @return <code>null</code> if the locator return no service.
+     */
+    public Endpoint choose(String key) {
+        return choose(key == null ? 0 : key.hashCode());
+    }
+
+    private Endpoint choose(int key) {
+        State current = currentState();
+        if (current.selector == null) {
+            return null;
+        }
+        Endpoint endpoint = current.selector.select(key);
+        endpoint.acquire();
+        return endpoint;
+    }
+
+    /**
+     * Reload services from the locator now.
+     */
+    public void refresh() {
+        State previous = state;
+        Set<Service> services;
+        try {
+            services = query.execute(serviceLocator);
+        } catch (RuntimeException e) {
+            if (previous == null) {
+                throw e;
+            }
+            LOGGER.warn("Unable to refresh services for {}, keep previous ones.", query, e);
+            state = new State(previous.endpoints, previous.selector, System.currentTimeMillis());
+            return;
+        }
+        if ((services == null || services.isEmpty()) && keepEndpointsOnEmptyAnswer && previous != null && previous.endpoints.length > 0) {
+            LOGGER.warn("No service returned for {}, keep previous {} endpoints.", query, previous.endpoints.length);
+            state = new State(previous.endpoints, previous.selector, System.currentTimeMillis());
+            return;
+        }
+        Map<Service, Endpoint> previousEndpoints = new HashMap<>();
+        if (previous != null) {
+            for (Endpoint endpoint : previous.endpoints) {
+                previousEndpoints.put(endpoint.getService(), endpoint);
+            }
+        }
+        Endpoint[] endpoints = NO_ENDPOINT;
+        if (services != null && !services.isEmpty()) {
+            endpoints = new Endpoint[services.size()];
+            int i = 0;
+            for (Service service : services) {
+                Endpoint endpoint = previousEndpoints.get(service);
+                endpoints[i++] = endpoint == null ? new Endpoint(service) : endpoint;
+            }
+        }
+        LoadBalancingStrategy.Selector selector = endpoints.length == 0 ? null : strategy.selectorFor(endpoints);
+        state = new State(endpoints, selector, System.currentTimeMillis());
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("{} endpoints loaded for {}.", endpoints.length, query);
+        }
+    }
+
+    public Endpoint[] getEndpoints() {
+        return currentState().endpoints.clone();
+    }
+
+    private State currentState() {
+        State current = state;
+        if (current == null) {
+            synchronized (this) {
+                if (state == null) {
+                    refresh();
+                }
+                return state;
+            }
+        }
+        if (System.currentTimeMillis() - current.loadedAt >= refreshInterval && refreshing.compareAndSet(false, true)) {
+            try {
+                refresh();
+            } finally {
+                refreshing.set(false);
+            }
+            return state;
+        }
+        return current;
+    }
+
+    private static class State {
+
+        private final Endpoint[] endpoints;
+
+        private final LoadBalancingStrategy.Selector selector;
+
+        private final long loadedAt;
+
+        private State(Endpoint[] endpoints, LoadBalancingStrategy.Selector selector, long loadedAt) {
+            this.endpoints = endpoints;
+            this.selector = selector;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
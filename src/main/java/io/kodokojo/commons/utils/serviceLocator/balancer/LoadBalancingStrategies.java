@@ -0,0 +1,131 @@
+package io.kodokojo.commons.utils.servicelocator.balancer;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class LoadBalancingStrategies {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private LoadBalancingStrategies() {
+        // Util class.
+    }
+
+    /**
+     * Endpoints one after the other.
+     */
+    public static LoadBalancingStrategy roundRobin() {
+        return endpoints -> {
+            AtomicInteger next = new AtomicInteger(ThreadLocalRandom.current().nextInt(endpoints.length));
+            return key -> endpoints[(next.getAndIncrement() & Integer.MAX_VALUE) % endpoints.length];
+        };
+    }
+
+    public static LoadBalancingStrategy random() {
+        return endpoints -> key -> endpoints[ThreadLocalRandom.current().nextInt(endpoints.length)];
+    }
+
+    /**
+     * Power of two choices: pick two endpoints at random and keep the one with less outstanding requests.
+     */
+    public static LoadBalancingStrategy leastOutstanding() {
+        return endpoints -> key -> {
+            if (endpoints.length == 1) {
+                return endpoints[0];
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(endpoints.length);
+            int second = random.nextInt(endpoints.length - 1);
+            if (second >= first) {
+                second++;
+            }
+            return endpoints[second].getOutstanding() < endpoints[first].getOutstanding() ? endpoints[second] : endpoints[first];
+        };
+    }
+
+    /**
+     * Requests with the same key go to the same endpoint while it's available; adding or removing an endpoint only
+     * move about <code>1/n</code> of the keys.
+     */
+    public static LoadBalancingStrategy consistentHash(int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be upper than 0.");
+        }
+        return endpoints -> new HashRing(endpoints, virtualNodes);
+    }
+
+    public static LoadBalancingStrategy consistentHash() {
+        return consistentHash(DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Spread hash codes which differ by few bits, like the ones of close strings (murmur3 finalizer).
+     */
+    static int mix(int hash) {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static class HashRing implements LoadBalancingStrategy.Selector {
+
+        private final int[] points;
+
+        private final Endpoint[] owners;
+
+        private HashRing(Endpoint[] endpoints, int virtualNodes) {
+            long[] ring = new long[endpoints.length * virtualNodes];
+            int size = 0;
+            for (int i = 0; i < endpoints.length; i++) {
+                String id = endpoints[i].getService().getHost() + ":" + endpoints[i].getService().getPort();
+                for (int v = 0; v < virtualNodes; v++) {
+                    //  Point in high bits, endpoint index in low bits to sort both at once.
+                    ring[size++] = ((long) mix((id + "#" + v).hashCode()) << 32) | i;
+                }
+            }
+            Arrays.sort(ring);
+            points = new int[size];
+            owners = new Endpoint[size];
+            for (int i = 0; i < size; i++) {
+                points[i] = (int) (ring[i] >> 32);
+                owners[i] = endpoints[(int) ring[i]];
+            }
+        }
+
+        @Override
+        public Endpoint select(int key) {
+            int index = Arrays.binarySearch(points, mix(key));
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return owners[index == points.length ? 0 : index];
+        }
+    }
+}
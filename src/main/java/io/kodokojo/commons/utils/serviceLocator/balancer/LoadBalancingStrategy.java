@@ -0,0 +1,46 @@
+package io.kodokojo.commons.utils.servicelocator.balancer;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+/**
+ * Build the selector a {@link LoadBalancer} use until its endpoints change. See {@link LoadBalancingStrategies}.
+ */
+public interface LoadBalancingStrategy {
+
+    /**
+     * @param endpoints Never empty, must not be modified.
+     */
+    Selector selectorFor(Endpoint[] endpoints);
+
+    interface Selector {
+
+        /**
+         * Called for each request, must not lock nor allocate.
+         *
+         * @param key Hash of the request key, <code>0</code> when the request has none.
+         */
+        Endpoint select(int key);
+
+    }
+
+}
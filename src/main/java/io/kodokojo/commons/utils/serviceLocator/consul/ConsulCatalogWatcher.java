@@ -0,0 +1,262 @@
+package io.kodokojo.commons.utils.servicelocator.consul;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import io.kodokojo.commons.config.KodokojoConfig;
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+import io.kodokojo.commons.utils.servicelocator.ServiceRegistry;
+import io.kodokojo.commons.utils.servicelocator.metrics.DataAgeAware;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import retrofit.client.Header;
+import retrofit.client.Response;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * Keep Consul blocking queries open on the <code>X-Consul-Index</code> of each watched service and serve lookups
+ * from a {@link ServiceRegistry}, where each change replace the instances of the service. Only instances with passing
+ * health checks are kept, indexed by their component type, project and stack tags.
+ * <p>
+ * Use a {@link ConsulRest} built by {@link ConsulRestFactory#buildForWatch(String, com.google.gson.Gson, long)} so
+ * the client read timeout exceed the long-poll window.
+ */
+public class ConsulCatalogWatcher implements ServiceLocator, DataAgeAware, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConsulCatalogWatcher.class);
+
+    public static final String CONSUL_INDEX_HEADER = "X-Consul-Index";
+
+    public static final String SOURCE_PREFIX = "consul:";
+
+    public static final long DEFAULT_WAIT = TimeUnit.MINUTES.toMillis(5);
+
+    private static final long MIN_BACKOFF = 100;
+
+    private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+
+    private final ConsulRest consulRest;
+
+    private final List<String> tags;
+
+    private final String wait;
+
+    private final List<Thread> threads;
+
+    private final CountDownLatch initialSync;
+
+    private final ServiceRegistry registry;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param tags Tags instances must have, filtered on Consul side.
+     * @param wait     Long-poll window in milliseconds.
+     * @param registry Registry fed with watched services, may be shared with other backends.
+     */
+    public ConsulCatalogWatcher(ConsulRest consulRest, Collection<String> serviceNames, List<String> tags, long wait, ServiceRegistry registry) {
+        if (consulRest == null) {
+            throw new IllegalArgumentException("consulRest must be defined.");
+        }
+        if (serviceNames == null || serviceNames.isEmpty()) {
+            throw new IllegalArgumentException("serviceNames must be defined.");
+        }
+        if (wait < 1000) {
+            throw new IllegalArgumentException("wait must be upper than 1000.");
+        }
+        if (registry == null) {
+            throw new IllegalArgumentException("registry must be defined.");
+        }
+        this.consulRest = consulRest;
+        this.registry = registry;
+        this.tags = tags == null ? Collections.emptyList() : new ArrayList<>(tags);
+        this.wait = TimeUnit.MILLISECONDS.toSeconds(wait) + "s";
+        Set<String> names = new LinkedHashSet<>(serviceNames);
+        this.initialSync = new CountDownLatch(names.size());
+        this.threads = new ArrayList<>(names.size());
+        for (String serviceName : names) {
+            if (isBlank(serviceName)) {
+                throw new IllegalArgumentException("serviceNames must not contain blank name.");
+            }
+            Thread thread = new Thread(() -> watch(serviceName), "consul-watch-" + serviceName);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        threads.forEach(Thread::start);
+    }
+
+    /**
+     * @param tags Tags instances must have, filtered on Consul side.
+     * @param wait Long-poll window in milliseconds.
+     */
+    public ConsulCatalogWatcher(ConsulRest consulRest, Collection<String> serviceNames, List<String> tags, long wait) {
+        this(consulRest, serviceNames, tags, wait, new ServiceRegistry());
+    }
+
+    /**
+     * Watch services of the stack described by <code>kodokojoConfig</code>.
+     */
+    public ConsulCatalogWatcher(ConsulRest consulRest, KodokojoConfig kodokojoConfig, Collection<String> serviceNames) {
+        this(consulRest, serviceNames, ConsulServiceLocator.kodokojoTags(kodokojoConfig), DEFAULT_WAIT);
+    }
+
+    public ConsulCatalogWatcher(ConsulRest consulRest, Collection<String> serviceNames) {
+        this(consulRest, serviceNames, null, DEFAULT_WAIT);
+    }
+
+    /**
+     * Wait until each watched service was read at least once.
+     */
+    public boolean awaitInitialSync(long timeout, TimeUnit unit) throws InterruptedException {
+        return initialSync.await(timeout, unit);
+    }
+
+    @Override
+    public Set<Service> getService(String type, String name) {
+        return registry.getService(type, name);
+    }
+
+    @Override
+    public Set<Service> getServiceByType(String type) {
+        return registry.getServiceByType(type);
+    }
+
+    @Override
+    public Set<Service> getServiceByName(String name) {
+        return registry.getServiceByName(name);
+    }
+
+    @Override
+    public long getDataAge(ServiceQuery query) {
+        return registry.getDataAge(query);
+    }
+
+    private void watch(String serviceName) {
+        long index = 0;
+        long backoff = MIN_BACKOFF;
+        boolean synced = false;
+        while (running) {
+            try {
+                Response response = consulRest.watchHealthyServices(serviceName, tags, index > 0 ? index : null, wait);
+                long newIndex = readIndex(response);
+                if (newIndex != index || !synced) {
+                    update(serviceName, readBody(response));
+                } else if (response.getBody() != null) {
+                    //  Long-poll timed out without change, release the connection without parsing.
+                    response.getBody().in().close();
+                }
+                //  Consul may reset its index, start again from scratch in that case.
+                index = newIndex < index ? 0 : newIndex;
+                backoff = MIN_BACKOFF;
+                if (!synced) {
+                    synced = true;
+                    initialSync.countDown();
+                }
+            } catch (RuntimeException | IOException e) {
+                if (!running) {
+                    return;
+                }
+                LOGGER.warn("Unable to watch service '{}' on Consul, retry in {}ms.", serviceName, backoff, e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF);
+            }
+        }
+    }
+
+    private void update(String serviceName, JsonArray resultsJson) {
+        //  Instances of a Consul service may have different tags, group them by labels.
+        Map<List<String>, JsonArray> instancesByLabels = new HashMap<>();
+        for (JsonElement jsonElement : resultsJson) {
+            Set<String> instanceTags = ConsulServiceLocator.tagsOf(jsonElement);
+            List<String> labels = Arrays.asList(tagValue(instanceTags, PROJECT_KEY), tagValue(instanceTags, STACK_NAME_KEY), tagValue(instanceTags, COMPONENT_TYPE_KEY));
+            instancesByLabels.computeIfAbsent(labels, key -> new JsonArray()).add(jsonElement);
+        }
+        List<ServiceRegistry.Registration> registrations = new ArrayList<>(instancesByLabels.size());
+        for (Map.Entry<List<String>, JsonArray> entry : instancesByLabels.entrySet()) {
+            List<String> labels = entry.getKey();
+            registrations.add(new ServiceRegistry.Registration(labels.get(0), labels.get(1), labels.get(2), serviceName, ConsulServiceLocator.convertHealthToServices(entry.getValue())));
+        }
+        registry.register(SOURCE_PREFIX + serviceName, registrations);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Service '{}' updated from Consul: {}", serviceName, registry.getServiceByName(serviceName));
+        }
+    }
+
+    private static String tagValue(Set<String> tags, String key) {
+        String prefix = key + "=";
+        for (String tag : tags) {
+            if (tag.startsWith(prefix)) {
+                return tag.substring(prefix.length());
+            }
+        }
+        return null;
+    }
+
+    private static long readIndex(Response response) {
+        for (Header header : response.getHeaders()) {
+            if (CONSUL_INDEX_HEADER.equalsIgnoreCase(header.getName())) {
+                try {
+                    return Math.max(0, Long.parseLong(header.getValue().trim()));
+                } catch (NumberFormatException e) {
+                    throw new IllegalStateException("Unexpected " + CONSUL_INDEX_HEADER + " value " + header.getValue(), e);
+                }
+            }
+        }
+        throw new IllegalStateException("Consul response doesn't contain " + CONSUL_INDEX_HEADER + " header.");
+    }
+
+    private static JsonArray readBody(Response response) throws IOException {
+        try (Reader reader = new InputStreamReader(response.getBody().in(), StandardCharsets.UTF_8)) {
+            JsonElement json = new JsonParser().parse(reader);
+            if (!json.isJsonArray()) {
+                throw new IllegalStateException("Unexpected response return by consul. Waiting a json array, get " + json.toString());
+            }
+            return json.getAsJsonArray();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        threads.forEach(Thread::interrupt);
+    }
+}
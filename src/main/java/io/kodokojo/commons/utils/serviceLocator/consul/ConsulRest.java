@@ -23,11 +23,47 @@ package io.kodokojo.commons.utils.servicelocator.consul;
  */
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import retrofit.Callback;
+import retrofit.client.Response;
 import retrofit.http.GET;
 import retrofit.http.Path;
 import retrofit.http.Query;
 
+import java.util.List;
+
 interface ConsulRest {
     @GET("/v1/catalog/service/{serviceName}")
     JsonArray getServices(@Path("serviceName") String serviceName, @Query("tag") String tags);
+
+    /**
+     * Instances of a service whose checks are all passing, each <code>tag</code> must be present on the instance.
+     */
+    @GET("/v1/health/service/{serviceName}?passing")
+    JsonArray getHealthyServices(@Path("serviceName") String serviceName, @Query("tag") List<String> tags);
+
+    /**
+     * Asynchronous {@link #getHealthyServices(String, List)}.
+     */
+    @GET("/v1/health/service/{serviceName}?passing")
+    void getHealthyServices(@Path("serviceName") String serviceName, @Query("tag") List<String> tags, Callback<JsonArray> callback);
+
+    /**
+     * Blocking query, answer when the health index move past <code>index</code> or when <code>wait</code> elapsed.
+     * The raw response is returned to read the <code>X-Consul-Index</code> header.
+     */
+    @GET("/v1/health/service/{serviceName}?passing")
+    Response watchHealthyServices(@Path("serviceName") String serviceName, @Query("tag") List<String> tags, @Query("index") Long index, @Query("wait") String wait);
+
+    /**
+     * Service names with their tags, restricted by a Consul filter expression.
+     */
+    @GET("/v1/catalog/services")
+    JsonObject getServiceNames(@Query("filter") String filter);
+
+    /**
+     * Asynchronous {@link #getServiceNames(String)}.
+     */
+    @GET("/v1/catalog/services")
+    void getServiceNames(@Query("filter") String filter, Callback<JsonObject> callback);
 }
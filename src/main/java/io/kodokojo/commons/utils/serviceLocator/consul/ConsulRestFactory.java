@@ -23,23 +23,70 @@ package io.kodokojo.commons.utils.servicelocator.consul;
  */
 
 import com.google.gson.Gson;
+import com.squareup.okhttp.OkHttpClient;
+import io.kodokojo.commons.utils.servicelocator.RetrofitCallExecutor;
 import retrofit.RestAdapter;
+import retrofit.client.OkClient;
 import retrofit.converter.GsonConverter;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 public class ConsulRestFactory {
 
     private ConsulRestFactory() {
         // Util class.
     }
 
+    /**
+     * Asynchronous calls run on {@link RetrofitCallExecutor#shared()}.
+     */
     public static ConsulRest build(String baseUrl, Gson gson) {
+        return build(baseUrl, gson, RetrofitCallExecutor.shared());
+    }
+
+    /**
+     * @param callExecutor Run asynchronous calls, each one hold a thread until Consul answered.
+     */
+    public static ConsulRest build(String baseUrl, Gson gson, Executor callExecutor) {
+        if (baseUrl == null) {
+            throw new IllegalArgumentException("baseUrl must be defined.");
+        }
+        if (gson == null) {
+            throw new IllegalArgumentException("gson must be defined.");
+        }
+        if (callExecutor == null) {
+            throw new IllegalArgumentException("callExecutor must be defined.");
+        }
+        RestAdapter restAdapter = new RestAdapter.Builder()
+                .setEndpoint(baseUrl)
+                .setConverter(new GsonConverter(gson))
+                .setExecutors(callExecutor, null)
+                .build();
+        return restAdapter.create(ConsulRest.class);
+    }
+
+    /**
+     * Build a client able to hold blocking queries open during <code>wait</code> milliseconds.
+     * Consul may add up to <code>wait / 16</code> of jitter, the read timeout covers it.
+     */
+    public static ConsulRest buildForWatch(String baseUrl, Gson gson, long wait) {
         if (baseUrl == null) {
             throw new IllegalArgumentException("baseUrl must be defined.");
         }
         if (gson == null) {
             throw new IllegalArgumentException("gson must be defined.");
         }
-        RestAdapter restAdapter = new RestAdapter.Builder().setEndpoint(baseUrl).setConverter(new GsonConverter(gson)).build();
+        if (wait <= 0) {
+            throw new IllegalArgumentException("wait must be upper than 0.");
+        }
+        OkHttpClient httpClient = new OkHttpClient();
+        httpClient.setReadTimeout(wait + wait / 16 + TimeUnit.SECONDS.toMillis(5), TimeUnit.MILLISECONDS);
+        RestAdapter restAdapter = new RestAdapter.Builder()
+                .setEndpoint(baseUrl)
+                .setClient(new OkClient(httpClient))
+                .setConverter(new GsonConverter(gson))
+                .build();
         return restAdapter.create(ConsulRest.class);
     }
 
@@ -25,19 +25,43 @@ package io.kodokojo.commons.utils.servicelocator.consul;
 import com.google.gson.*;
 import io.kodokojo.commons.config.KodokojoConfig;
 import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.model.ServiceSet;
+import io.kodokojo.commons.utils.properties.GenerationPin;
+import io.kodokojo.commons.utils.properties.PropertyResolver;
+import io.kodokojo.commons.utils.servicelocator.AsyncServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.CallbackFuture;
 import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
 
-public class ConsulServiceLocator implements ServiceLocator {
+/**
+ * Locate services registered in Consul, only instances whose health checks are passing are returned.
+ * Tags are filtered by Consul, not on client side.
+ * <p>
+ * Asynchronous lookups are Retrofit callback calls: the caller doesn't wait, but Retrofit 1.9 run each call as a
+ * blocking request on the executor of the {@link ConsulRest}, so each lookup in flight hold one of its threads. A
+ * client built by {@link ConsulRestFactory#build(String, Gson)} use the bounded
+ * {@link io.kodokojo.commons.utils.servicelocator.RetrofitCallExecutor#shared() shared pool}. Cancelling a returned
+ * future doesn't abort its HTTP call, which run until Consul answered or the client timed out.
+ */
+public class ConsulServiceLocator implements ServiceLocator, AsyncServiceLocator {
 
     public static final String ADDRESS_KEY = "Address";
 
     public static final String SERVICE_PORT_KEY = "ServicePort";
 
-    private final String kodokojoTags;
+    public static final String NODE_KEY = "Node";
+
+    public static final String SERVICE_KEY = "Service";
+
+    public static final String PORT_KEY = "Port";
+
+    public static final String TAGS_KEY = "Tags";
+
+    private final List<String> kodokojoTags;
 
     private final ConsulRest consulRest;
 
@@ -45,12 +69,11 @@ public class ConsulServiceLocator implements ServiceLocator {
         if (consulRest == null) {
             throw new IllegalArgumentException("consulRest must be defined.");
         }
+        if (kodokojoConfig == null) {
+            throw new IllegalArgumentException("kodokojoConfig must be defined.");
+        }
         this.consulRest = consulRest;
-        this.kodokojoTags = new StringBuilder()
-                .append(KODOKOJO_PREFIXE).append("=").append(kodokojoConfig.projectName()).append(",")
-                .append(STACK_NAME_KEY).append("=").append(kodokojoConfig.stackName()).append(",")
-                .append(STACK_TYPE_KEY).append("=").append(kodokojoConfig.stackType())
-                .toString();
+        this.kodokojoTags = Collections.unmodifiableList(kodokojoTags(kodokojoConfig));
     }
 
 
@@ -62,42 +85,184 @@ public class ConsulServiceLocator implements ServiceLocator {
         if (isBlank(name)) {
             throw new IllegalArgumentException("name must be defined.");
         }
-        String serviceName = name;
-        StringBuilder tags = new StringBuilder().append(kodokojoTags).append(",")
-                .append(COMPONENT_NAME_KEY).append("=").append(name).append(",")
-                .append(COMPONENT_TYPE_KEY).append("=").append(type);
-        JsonArray resultsJson = consulRest.getServices(serviceName, kodokojoTags);
+        List<String> tags = new ArrayList<>(kodokojoTags);
+        tags.add(tag(COMPONENT_NAME_KEY, name));
+        tags.add(tag(COMPONENT_TYPE_KEY, type));
+        Set<Service> services = fetchHealthyServices(name, tags);
+        return services.isEmpty() ? null : services;
+    }
 
-        if (resultsJson == null || resultsJson.size() == 0) {
-            return null;    //Search not return any service. return null.
+    @Override
+    public Set<Service> getServiceByType(String type) {
+        if (isBlank(type)) {
+            throw new IllegalArgumentException("type must be defined.");
+        }
+        List<String> tags = new ArrayList<>(kodokojoTags);
+        tags.add(tag(COMPONENT_TYPE_KEY, type));
+        JsonObject serviceNames = consulRest.getServiceNames(filterOf(tags));
+        if (serviceNames == null) {
+            return ServiceSet.empty();
         }
+        ServiceSet.Builder res = ServiceSet.builder();
+        for (Map.Entry<String, JsonElement> entry : serviceNames.entrySet()) {
+            //  Agents older than 1.5 ignore the filter parameter.
+            if (hasAllTags(entry.getValue(), tags)) {
+                res.addAll(fetchHealthyServices(entry.getKey(), tags));
+            }
+        }
+        return res.build();
+    }
 
-        // Iterate to extra multiples tag->entrypoint.
-        Set<Service> entryPoints = new HashSet<>();
+    @Override
+    public Set<Service> getServiceByName(String name) {
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        return fetchHealthyServices(name, kodokojoTags);
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceAsync(String type, String name) {
+        if (isBlank(type)) {
+            throw new IllegalArgumentException("type must be defined.");
+        }
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        List<String> tags = new ArrayList<>(kodokojoTags);
+        tags.add(tag(COMPONENT_NAME_KEY, name));
+        tags.add(tag(COMPONENT_TYPE_KEY, type));
+        return fetchHealthyServicesAsync(name, tags).thenApply(services -> services.isEmpty() ? null : services);
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByTypeAsync(String type) {
+        if (isBlank(type)) {
+            throw new IllegalArgumentException("type must be defined.");
+        }
+        List<String> tags = new ArrayList<>(kodokojoTags);
+        tags.add(tag(COMPONENT_TYPE_KEY, type));
+        CallbackFuture<JsonObject> serviceNames = new CallbackFuture<>();
+        consulRest.getServiceNames(filterOf(tags), serviceNames);
+        return serviceNames.thenCompose(names -> {
+            if (names == null) {
+                return CompletableFuture.completedFuture(ServiceSet.empty());
+            }
+            List<CompletableFuture<Set<Service>>> lookups = new ArrayList<>();
+            for (Map.Entry<String, JsonElement> entry : names.entrySet()) {
+                if (hasAllTags(entry.getValue(), tags)) {
+                    lookups.add(fetchHealthyServicesAsync(entry.getKey(), tags));
+                }
+            }
+            return CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[lookups.size()])).thenApply(done -> {
+                ServiceSet.Builder res = ServiceSet.builder();
+                for (CompletableFuture<Set<Service>> lookup : lookups) {
+                    res.addAll(lookup.join());
+                }
+                return res.build();
+            });
+        });
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByNameAsync(String name) {
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        return fetchHealthyServicesAsync(name, kodokojoTags);
+    }
+
+    private CompletableFuture<Set<Service>> fetchHealthyServicesAsync(String serviceName, List<String> tags) {
+        CallbackFuture<JsonArray> resultsJson = new CallbackFuture<>();
+        consulRest.getHealthyServices(serviceName, tags, resultsJson);
+        return resultsJson.thenApply(json -> json == null ? ServiceSet.empty() : convertHealthToServices(json));
+    }
+
+    private Set<Service> fetchHealthyServices(String serviceName, List<String> tags) {
+        JsonArray resultsJson = consulRest.getHealthyServices(serviceName, tags);
+        if (resultsJson == null) {
+            return ServiceSet.empty();
+        }
+        return convertHealthToServices(resultsJson);
+    }
+
+    /**
+     * Convert a <code>/v1/health/service</code> response, the service address fallback on the node address when not set.
+     */
+    static Set<Service> convertHealthToServices(JsonArray resultsJson) {
+        ServiceSet.Builder entryPoints = ServiceSet.builder();
         for (JsonElement jsonElement : resultsJson) {
-            if (!jsonElement.isJsonObject())
-                throw new IllegalStateException("Unexpected response return by consul. Waiting a json object, get " + jsonElement.toString());
+            JsonObject service = healthEntry(jsonElement, SERVICE_KEY);
+            String host = service.has(ADDRESS_KEY) ? service.get(ADDRESS_KEY).getAsString() : "";
+            if (isBlank(host)) {
+                host = healthEntry(jsonElement, NODE_KEY).get(ADDRESS_KEY).getAsString();
+            }
+            int servicePort = service.get(PORT_KEY).getAsInt();
+            entryPoints.add(Service.of(host, host, servicePort));
+        }
+        return entryPoints.build();
+    }
 
-            JsonObject jsonObject = jsonElement.getAsJsonObject();
+    static Set<String> tagsOf(JsonElement healthJson) {
+        JsonElement tags = healthEntry(healthJson, SERVICE_KEY).get(TAGS_KEY);
+        Set<String> res = new HashSet<>();
+        if (tags != null && tags.isJsonArray()) {
+            for (JsonElement tag : tags.getAsJsonArray()) {
+                res.add(tag.getAsString());
+            }
+        }
+        return res;
+    }
 
-            String host = jsonObject.get(ADDRESS_KEY).getAsString();
-            int servicePort = jsonObject.get(SERVICE_PORT_KEY).getAsInt();
+    private static JsonObject healthEntry(JsonElement jsonElement, String key) {
+        if (jsonElement.isJsonObject()) {
+            JsonElement entry = jsonElement.getAsJsonObject().get(key);
+            if (entry != null && entry.isJsonObject()) {
+                return entry.getAsJsonObject();
+            }
+        }
+        throw new IllegalStateException("Unexpected response return by consul. Waiting a json object with " + key + ", get " + jsonElement.toString());
+    }
 
-            Service entryPoint = new Service(host, host, servicePort);
-            entryPoints.add(entryPoint);
+    private static boolean hasAllTags(JsonElement tagsJson, List<String> tags) {
+        if (tagsJson == null || !tagsJson.isJsonArray()) {
+            return false;
+        }
+        Set<String> serviceTags = new HashSet<>();
+        for (JsonElement tag : tagsJson.getAsJsonArray()) {
+            serviceTags.add(tag.getAsString());
         }
+        return serviceTags.containsAll(tags);
+    }
 
-        return entryPoints;
+    /**
+     * Tags shared by all services of the stack, read from the same config generation to avoid mixing values during a
+     * config rollout.
+     */
+    @SuppressWarnings("try")
+    static List<String> kodokojoTags(KodokojoConfig kodokojoConfig) {
+        try (GenerationPin ignored = PropertyResolver.pin(kodokojoConfig)) {
+            return Arrays.asList(
+                    tag(PROJECT_KEY, kodokojoConfig.projectName()),
+                    tag(STACK_NAME_KEY, kodokojoConfig.stackName()),
+                    tag(STACK_TYPE_KEY, kodokojoConfig.stackType())
+            );
+        }
     }
 
-    @Override
-    public Set<Service> getServiceByType(String type) {
-        return null;
+    private static String tag(String key, String value) {
+        return key + "=" + value;
     }
 
-    @Override
-    public Set<Service> getServiceByName(String name) {
-        return null;
+    private static String filterOf(List<String> tags) {
+        StringBuilder sb = new StringBuilder();
+        for (String tag : tags) {
+            if (sb.length() > 0) {
+                sb.append(" and ");
+            }
+            sb.append('"').append(tag.replace("\"", "\\\"")).append("\" in ServiceTags");
+        }
+        return sb.toString();
     }
 
 }
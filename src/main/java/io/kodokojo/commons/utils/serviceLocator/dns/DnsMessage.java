@@ -0,0 +1,274 @@
+package io.kodokojo.commons.utils.servicelocator.dns;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Encode SRV queries and decode their responses, see RFC 1035 and RFC 2782. Only what a SRV lookup needs is read,
+ * other records are skipped.
+ */
+final class DnsMessage {
+
+    static final int TYPE_A = 1;
+
+    static final int TYPE_SOA = 6;
+
+    static final int TYPE_AAAA = 28;
+
+    static final int TYPE_SRV = 33;
+
+    static final int TYPE_OPT = 41;
+
+    static final int CLASS_IN = 1;
+
+    static final int RCODE_NXDOMAIN = 3;
+
+    /**
+     * Payload size advertised with EDNS0, so large SRV answers are not truncated at 512 bytes.
+     */
+    static final int UDP_PAYLOAD_SIZE = 4096;
+
+    private static final int FLAG_RESPONSE = 0x8000;
+
+    private static final int FLAG_RECURSION_DESIRED = 0x0100;
+
+    private static final int FLAG_TRUNCATED = 0x0200;
+
+    private static final int MAX_POINTERS = 64;
+
+    private DnsMessage() {
+        //  Utility class.
+    }
+
+    static ByteBuffer srvQuery(int id, String name) {
+        ByteBuffer res = ByteBuffer.allocate(12 + name.length() + 2 + 4 + 11);
+        res.putShort((short) id);
+        res.putShort((short) FLAG_RECURSION_DESIRED);
+        res.putShort((short) 1);
+        res.putShort((short) 0);
+        res.putShort((short) 0);
+        res.putShort((short) 1);
+        putName(res, name);
+        res.putShort((short) TYPE_SRV);
+        res.putShort((short) CLASS_IN);
+        //  EDNS0 OPT pseudo record, its class is the payload size.
+        res.put((byte) 0);
+        res.putShort((short) TYPE_OPT);
+        res.putShort((short) UDP_PAYLOAD_SIZE);
+        res.putInt(0);
+        res.putShort((short) 0);
+        res.flip();
+        return res;
+    }
+
+    private static void putName(ByteBuffer buffer, String name) {
+        for (String label : name.split("\\.")) {
+            byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+            buffer.put((byte) bytes.length);
+            buffer.put(bytes);
+        }
+        buffer.put((byte) 0);
+    }
+
+    /**
+     * @throws IllegalArgumentException if <code>name</code> can't be sent in a query.
+     */
+    static void checkName(String name) {
+        if (name.length() > 253) {
+            throw new IllegalArgumentException("name must be at most 253 characters, get " + name + ".");
+        }
+        for (String label : name.split("\\.", -1)) {
+            if (label.isEmpty() || label.length() > 63) {
+                throw new IllegalArgumentException("name must be made of labels of 1 to 63 characters, get " + name + ".");
+            }
+            for (int i = 0; i < label.length(); i++) {
+                if (label.charAt(i) <= ' ' || label.charAt(i) > '~') {
+                    throw new IllegalArgumentException("name must be printable ASCII, get " + name + ".");
+                }
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the message is malformed.
+     */
+    static Response decode(ByteBuffer buffer) {
+        try {
+            int id = buffer.getShort() & 0xffff;
+            int flags = buffer.getShort() & 0xffff;
+            if ((flags & FLAG_RESPONSE) == 0) {
+                throw new IllegalArgumentException("Message is not a response.");
+            }
+            int questions = buffer.getShort() & 0xffff;
+            int answers = buffer.getShort() & 0xffff;
+            int authorities = buffer.getShort() & 0xffff;
+            int additionals = buffer.getShort() & 0xffff;
+            String question = null;
+            for (int i = 0; i < questions; i++) {
+                String name = readName(buffer);
+                buffer.position(buffer.position() + 4);
+                if (question == null) {
+                    question = name;
+                }
+            }
+            List<int[]> srvs = new ArrayList<>();
+            List<String> targets = new ArrayList<>();
+            List<Long> srvTtls = new ArrayList<>();
+            Map<String, String> addresses = new HashMap<>();
+            Map<String, Long> addressTtls = new HashMap<>();
+            long negativeTtl = -1;
+            int records = answers + authorities + additionals;
+            for (int i = 0; i < records; i++) {
+                String name = readName(buffer);
+                int type = buffer.getShort() & 0xffff;
+                buffer.getShort();
+                long ttl = buffer.getInt() & 0xffffffffL;
+                int length = buffer.getShort() & 0xffff;
+                int end = buffer.position() + length;
+                if (type == TYPE_SRV && i < answers) {
+                    srvs.add(new int[]{buffer.getShort() & 0xffff, buffer.getShort() & 0xffff, buffer.getShort() & 0xffff});
+                    targets.add(readName(buffer));
+                    srvTtls.add(ttl);
+                } else if ((type == TYPE_A && length == 4) || (type == TYPE_AAAA && length == 16)) {
+                    byte[] address = new byte[length];
+                    buffer.get(address);
+                    String key = name.toLowerCase(Locale.ROOT);
+                    if (!addresses.containsKey(key)) {
+                        addresses.put(key, InetAddress.getByAddress(address).getHostAddress());
+                        addressTtls.put(key, ttl);
+                    }
+                } else if (type == TYPE_SOA && i >= answers && i < answers + authorities) {
+                    readName(buffer);
+                    readName(buffer);
+                    buffer.position(buffer.position() + 16);
+                    long minimum = buffer.getInt() & 0xffffffffL;
+                    //  RFC 2308, negative answers are cached for the lowest of the SOA TTL and minimum field.
+                    negativeTtl = Math.min(ttl, minimum);
+                }
+                buffer.position(end);
+            }
+            List<SrvRecord> srvRecords = new ArrayList<>(srvs.size());
+            for (int i = 0; i < srvs.size(); i++) {
+                int[] srv = srvs.get(i);
+                String target = targets.get(i);
+                String key = target.toLowerCase(Locale.ROOT);
+                String address = addresses.get(key);
+                long ttl = address == null ? srvTtls.get(i) : Math.min(srvTtls.get(i), addressTtls.get(key));
+                srvRecords.add(new SrvRecord(target, address == null ? target : address, srv[2], srv[0], srv[1], ttl));
+            }
+            return new Response(id, flags & 0xf, (flags & FLAG_TRUNCATED) != 0, question, srvRecords, negativeTtl);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | UnknownHostException e) {
+            throw new IllegalArgumentException("Malformed DNS message.", e);
+        }
+    }
+
+    /**
+     * @return The name without its trailing dot, following compression pointers.
+     */
+    private static String readName(ByteBuffer buffer) {
+        StringBuilder sb = new StringBuilder();
+        int position = buffer.position();
+        int resume = -1;
+        int pointers = 0;
+        while (true) {
+            int length = buffer.get(position) & 0xff;
+            if ((length & 0xc0) == 0xc0) {
+                if (++pointers > MAX_POINTERS) {
+                    throw new IllegalArgumentException("Too many compression pointers.");
+                }
+                if (resume < 0) {
+                    resume = position + 2;
+                }
+                position = ((length & 0x3f) << 8) | (buffer.get(position + 1) & 0xff);
+            } else if (length == 0) {
+                buffer.position(resume < 0 ? position + 1 : resume);
+                return sb.toString();
+            } else {
+                if (sb.length() > 0) {
+                    sb.append('.');
+                }
+                for (int i = 1; i <= length; i++) {
+                    sb.append((char) (buffer.get(position + i) & 0xff));
+                }
+                position += length + 1;
+            }
+        }
+    }
+
+    static final class Response {
+
+        private final int id;
+
+        private final int rcode;
+
+        private final boolean truncated;
+
+        private final String question;
+
+        private final List<SrvRecord> records;
+
+        private final long negativeTtl;
+
+        private Response(int id, int rcode, boolean truncated, String question, List<SrvRecord> records, long negativeTtl) {
+            this.id = id;
+            this.rcode = rcode;
+            this.truncated = truncated;
+            this.question = question;
+            this.records = records;
+            this.negativeTtl = negativeTtl;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        int getRcode() {
+            return rcode;
+        }
+
+        boolean isTruncated() {
+            return truncated;
+        }
+
+        String getQuestion() {
+            return question;
+        }
+
+        List<SrvRecord> getRecords() {
+            return records;
+        }
+
+        /**
+         * @return Seconds a negative answer may be cached, -1 if the server sent no SOA record.
+         */
+        long getNegativeTtl() {
+            return negativeTtl;
+        }
+    }
+}
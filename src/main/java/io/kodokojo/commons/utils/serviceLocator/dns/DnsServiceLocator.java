@@ -0,0 +1,154 @@
+package io.kodokojo.commons.utils.servicelocator.dns;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.model.ServiceSet;
+import io.kodokojo.commons.utils.servicelocator.AsyncServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lookup services with DNS SRV queries, a single small UDP exchange per lookup, and none while the answer TTL runs.
+ * Meant for hot paths, like the Consul DNS interface in front of {@link io.kodokojo.commons.utils.servicelocator.consul.ConsulServiceLocator}.
+ * <p>
+ * DNS has no tags, so project and stack can't be checked: point the locator to a domain dedicated to the stack. Query
+ * names follow the given {@link SrvNames} convention, kinds of lookup without SRV name find nothing.
+ */
+public class DnsServiceLocator implements ServiceLocator, AsyncServiceLocator, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DnsServiceLocator.class);
+
+    private final DnsSrvResolver resolver;
+
+    private final SrvNames srvNames;
+
+    private final boolean ownResolver;
+
+    /**
+     * @param resolver Stays owned by the caller.
+     */
+    public DnsServiceLocator(DnsSrvResolver resolver, SrvNames srvNames) {
+        this(resolver, srvNames, false);
+    }
+
+    /**
+     * Query the Consul DNS interface at <code>server</code>, see {@link SrvNames#consul(String)}.
+     */
+    public DnsServiceLocator(InetSocketAddress server, String domain) {
+        this(new DnsSrvResolver(server), SrvNames.consul(domain), true);
+    }
+
+    private DnsServiceLocator(DnsSrvResolver resolver, SrvNames srvNames, boolean ownResolver) {
+        if (resolver == null) {
+            throw new IllegalArgumentException("resolver must be defined.");
+        }
+        if (srvNames == null) {
+            throw new IllegalArgumentException("srvNames must be defined.");
+        }
+        this.resolver = resolver;
+        this.srvNames = srvNames;
+        this.ownResolver = ownResolver;
+    }
+
+    @Override
+    public Set<Service> getService(String type, String name) {
+        Set<Service> services = lookup(ServiceQuery.byTypeAndName(type, name));
+        return services.isEmpty() ? null : services;
+    }
+
+    @Override
+    public Set<Service> getServiceByType(String type) {
+        return lookup(ServiceQuery.byType(type));
+    }
+
+    @Override
+    public Set<Service> getServiceByName(String name) {
+        return lookup(ServiceQuery.byName(name));
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceAsync(String type, String name) {
+        return lookupAsync(ServiceQuery.byTypeAndName(type, name)).thenApply(services -> services.isEmpty() ? null : services);
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByTypeAsync(String type) {
+        return lookupAsync(ServiceQuery.byType(type));
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByNameAsync(String name) {
+        return lookupAsync(ServiceQuery.byName(name));
+    }
+
+    private Set<Service> lookup(ServiceQuery query) {
+        String srvName = srvNames.of(query);
+        if (srvName == null) {
+            return unsupported(query);
+        }
+        return toServices(resolver.lookup(srvName));
+    }
+
+    private CompletableFuture<Set<Service>> lookupAsync(ServiceQuery query) {
+        String srvName = srvNames.of(query);
+        if (srvName == null) {
+            return CompletableFuture.completedFuture(unsupported(query));
+        }
+        return resolver.resolve(srvName).thenApply(DnsServiceLocator::toServices);
+    }
+
+    private static Set<Service> unsupported(ServiceQuery query) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("No SRV name for {}, nothing to lookup.", query);
+        }
+        return ServiceSet.empty();
+    }
+
+    private static Set<Service> toServices(List<SrvRecord> records) {
+        if (records.isEmpty()) {
+            return ServiceSet.empty();
+        }
+        ServiceSet.Builder res = ServiceSet.builder();
+        for (SrvRecord record : records) {
+            //  Named after the host like ConsulServiceLocator, both read the same catalog.
+            res.add(Service.of(record.getHost(), record.getHost(), record.getPort()));
+        }
+        return res.build();
+    }
+
+    @Override
+    public void close() {
+        if (ownResolver) {
+            resolver.close();
+        }
+    }
+}
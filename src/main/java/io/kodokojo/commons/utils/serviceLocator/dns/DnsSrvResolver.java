@@ -0,0 +1,352 @@
+package io.kodokojo.commons.utils.servicelocator.dns;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * Non blocking SRV resolver: queries are sent over a single UDP channel and answers are read by one selector thread,
+ * so a lookup never holds a thread while waiting for the server.
+ * <p>
+ * Answers are cached for their TTL, the lowest of the SRV and address records used, in a cache of at most
+ * {@link #MAX_CACHED_NAMES} names which evicts the oldest first. Names which don't exist are cached as empty for the
+ * negative TTL of the SOA record the server sent along. Truncated answers are used but not cached, the next lookup ask
+ * again. Concurrent lookups of a name share the same query. A query without answer is sent again once before failing
+ * with a {@link TimeoutException}. At most {@link #MAX_PENDING} queries wait for an answer, lookups beyond fail
+ * right away.
+ */
+public class DnsSrvResolver implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DnsSrvResolver.class);
+
+    public static final long DEFAULT_TIMEOUT = 1000;
+
+    private static final int ATTEMPTS = 2;
+
+    private static final long TICK = 10;
+
+    public static final int MAX_CACHED_NAMES = 4096;
+
+    public static final int MAX_PENDING = 4096;
+
+    private final InetSocketAddress server;
+
+    private final long timeout;
+
+    private final DatagramChannel channel;
+
+    private final Selector selector;
+
+    private final Thread receiver;
+
+    private final Map<Integer, Exchange> pending = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<List<SrvRecord>>> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<String, Cached> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Names of <code>cache</code>, oldest first. Only used by the receiver thread, the only one writing the cache.
+     */
+    private final Deque<String> cacheOrder = new ArrayDeque<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * @param timeout Time in milliseconds to wait for each attempt.
+     */
+    public DnsSrvResolver(InetSocketAddress server, long timeout) {
+        if (server == null) {
+            throw new IllegalArgumentException("server must be defined.");
+        }
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be upper than 0.");
+        }
+        this.server = server;
+        this.timeout = timeout;
+        try {
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 20);
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open an UDP channel to " + server + ".", e);
+        }
+        receiver = new Thread(this::receive, "dns-srv-resolver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    public DnsSrvResolver(InetSocketAddress server) {
+        this(server, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @return Records of <code>name</code>, empty if it does not exist.
+     */
+    public CompletableFuture<List<SrvRecord>> resolve(String name) {
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        String key = name.toLowerCase(Locale.ROOT);
+        List<SrvRecord> cached = cached(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        DnsMessage.checkName(key);
+        CompletableFuture<List<SrvRecord>> flight = inFlight.get(key);
+        if (flight == null) {
+            CompletableFuture<List<SrvRecord>> created = new CompletableFuture<>();
+            flight = inFlight.putIfAbsent(key, created);
+            if (flight == null) {
+                flight = created;
+                send(new Exchange(key, created));
+            }
+        }
+        //  A dependent future, callers can't complete the shared one.
+        return flight.thenApply(records -> records);
+    }
+
+    /**
+     * Blocking lookup, answered without any future when the name is cached.
+     */
+    public List<SrvRecord> lookup(String name) {
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        List<SrvRecord> cached = cached(name.toLowerCase(Locale.ROOT));
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            return resolve(name).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while resolving " + name + ".", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Unable to resolve " + name + ".", cause);
+        }
+    }
+
+    private List<SrvRecord> cached(String key) {
+        Cached cached = cache.get(key);
+        return cached != null && cached.expiresAt > System.currentTimeMillis() ? cached.records : null;
+    }
+
+    private void send(Exchange exchange) {
+        if (!running) {
+            fail(exchange, new IllegalStateException("Resolver is closed."));
+            return;
+        }
+        exchange.attempts++;
+        exchange.deadline = System.currentTimeMillis() + timeout;
+        if (exchange.id < 0) {
+            //  Also keeps free ids for the loop below.
+            if (pending.size() >= MAX_PENDING) {
+                fail(exchange, new IllegalStateException(MAX_PENDING + " queries already wait for an answer from " + server + "."));
+                return;
+            }
+            //  Random ids, with the question check it makes spoofed answers harder to forge.
+            do {
+                exchange.id = ThreadLocalRandom.current().nextInt(1 << 16);
+            } while (pending.putIfAbsent(exchange.id, exchange) != null);
+        }
+        try {
+            //  A full socket buffer drops the query like the network would, the next attempt send it again.
+            channel.send(DnsMessage.srvQuery(exchange.id, exchange.name), server);
+        } catch (IOException e) {
+            pending.remove(exchange.id, exchange);
+            fail(exchange, new IllegalStateException("Unable to send query for " + exchange.name + " to " + server + ".", e));
+        }
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocate(DnsMessage.UDP_PAYLOAD_SIZE);
+        while (running) {
+            try {
+                if (selector.select(TICK) > 0) {
+                    selector.selectedKeys().clear();
+                    SocketAddress from;
+                    while ((from = channel.receive(buffer)) != null) {
+                        buffer.flip();
+                        if (server.equals(from)) {
+                            onResponse(buffer);
+                        }
+                        buffer.clear();
+                    }
+                }
+                expire();
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException | RuntimeException e) {
+                if (running) {
+                    LOGGER.warn("Unable to read DNS responses from {}.", server, e);
+                }
+            }
+        }
+        for (Exchange exchange : pending.values()) {
+            fail(exchange, new IllegalStateException("Resolver is closed."));
+        }
+        pending.clear();
+    }
+
+    private void onResponse(ByteBuffer buffer) {
+        DnsMessage.Response response;
+        try {
+            response = DnsMessage.decode(buffer);
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Ignore malformed DNS response from {}.", server, e);
+            return;
+        }
+        Exchange exchange = pending.get(response.getId());
+        //  The question must match too, an id alone is quickly guessed.
+        if (exchange == null || !exchange.name.equalsIgnoreCase(response.getQuestion()) || !pending.remove(response.getId(), exchange)) {
+            return;
+        }
+        if (response.getRcode() != 0 && response.getRcode() != DnsMessage.RCODE_NXDOMAIN) {
+            fail(exchange, new IllegalStateException("DNS server " + server + " answered rcode " + response.getRcode() + " for " + exchange.name + "."));
+            return;
+        }
+        if (response.isTruncated() && LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Truncated answer for {}, use the {} records received without caching them.", exchange.name, response.getRecords().size());
+        }
+        List<SrvRecord> records = lowestPriority(response.getRecords());
+        long ttl = records.isEmpty() ? response.getNegativeTtl() : Long.MAX_VALUE;
+        for (SrvRecord record : records) {
+            ttl = Math.min(ttl, record.getTtl());
+        }
+        //  Missing records would be hidden for the whole TTL.
+        if (ttl > 0 && !response.isTruncated() && cache.put(exchange.name, new Cached(records, System.currentTimeMillis() + ttl * 1000)) == null) {
+            cacheOrder.addLast(exchange.name);
+            while (cacheOrder.size() > MAX_CACHED_NAMES) {
+                cache.remove(cacheOrder.pollFirst());
+            }
+        }
+        inFlight.remove(exchange.name, exchange.future);
+        exchange.future.complete(records);
+    }
+
+    private void fail(Exchange exchange, Throwable error) {
+        //  Removed before completing, a caller woken up by the completion must not join the finished lookup.
+        inFlight.remove(exchange.name, exchange.future);
+        exchange.future.completeExceptionally(error);
+    }
+
+    /**
+     * @return Records to use, RFC 2782 clients must try lower priorities first.
+     */
+    private static List<SrvRecord> lowestPriority(List<SrvRecord> records) {
+        if (records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int priority = Integer.MAX_VALUE;
+        for (SrvRecord record : records) {
+            priority = Math.min(priority, record.getPriority());
+        }
+        List<SrvRecord> res = new ArrayList<>(records.size());
+        for (SrvRecord record : records) {
+            if (record.getPriority() == priority) {
+                res.add(record);
+            }
+        }
+        return Collections.unmodifiableList(res);
+    }
+
+    private void expire() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Exchange exchange : pending.values()) {
+            if (exchange.deadline <= now) {
+                if (exchange.attempts < ATTEMPTS) {
+                    send(exchange);
+                } else if (pending.remove(exchange.id, exchange)) {
+                    fail(exchange, new TimeoutException("No answer from " + server + " for " + exchange.name + " after " + ATTEMPTS + " attempts."));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to close UDP channel to {}.", server, e);
+        }
+    }
+
+    private static class Exchange {
+
+        private final String name;
+
+        private final CompletableFuture<List<SrvRecord>> future;
+
+        private int id = -1;
+
+        private int attempts;
+
+        private volatile long deadline;
+
+        private Exchange(String name, CompletableFuture<List<SrvRecord>> future) {
+            this.name = name;
+            this.future = future;
+        }
+    }
+
+    private static class Cached {
+
+        private final List<SrvRecord> records;
+
+        private final long expiresAt;
+
+        private Cached(List<SrvRecord> records, long expiresAt) {
+            this.records = records;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.kodokojo.commons.utils.servicelocator.dns;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * Convention mapping a {@link ServiceQuery} to the SRV name to resolve. Each template may contain <code>{type}</code>
+ * and <code>{name}</code>, a <code>null</code> template means the query can't be answered through DNS.
+ */
+public class SrvNames {
+
+    private static final String TYPE = "{type}";
+
+    private static final String NAME = "{name}";
+
+    private final String byTypeAndName;
+
+    private final String byType;
+
+    private final String byName;
+
+    public SrvNames(String byTypeAndName, String byType, String byName) {
+        this.byTypeAndName = byTypeAndName;
+        this.byType = byType;
+        this.byName = byName;
+    }
+
+    /**
+     * Consul DNS interface: the component name is the Consul service name and its type a tag, looked up with the
+     * RFC 2782 form <code>_name._type.service.domain</code>. Consul can't look up a tag across services, so lookups by
+     * type are not supported.
+     *
+     * @param domain Consul domain, including the datacenter if needed, like <code>dc1.consul</code>.
+     */
+    public static SrvNames consul(String domain) {
+        if (isBlank(domain)) {
+            throw new IllegalArgumentException("domain must be defined.");
+        }
+        return new SrvNames("_" + NAME + "._" + TYPE + ".service." + domain, null, NAME + ".service." + domain);
+    }
+
+    /**
+     * @return <code>null</code> if there is no template for this kind of query.
+     */
+    public String of(ServiceQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query must be defined.");
+        }
+        String template;
+        switch (query.getKind()) {
+            case TYPE_AND_NAME:
+                template = byTypeAndName;
+                break;
+            case TYPE:
+                template = byType;
+                break;
+            default:
+                template = byName;
+                break;
+        }
+        if (template == null) {
+            return null;
+        }
+        String res = template;
+        if (query.getType() != null) {
+            res = res.replace(TYPE, label(query.getType()));
+        }
+        if (query.getName() != null) {
+            res = res.replace(NAME, label(query.getName()));
+        }
+        return res;
+    }
+
+    private static String label(String value) {
+        if (value.length() > 63) {
+            throw new IllegalArgumentException("DNS label must be at most 63 characters, get " + value + ".");
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9') && c != '-' && c != '_') {
+                throw new IllegalArgumentException("DNS label must only contain letters, digits, '-' or '_', get " + value + ".");
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,92 @@
+package io.kodokojo.commons.utils.servicelocator.dns;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+/**
+ * One SRV answer, with the target resolved to an address when the server sent it in the additional section.
+ */
+public final class SrvRecord {
+
+    private final String target;
+
+    private final String host;
+
+    private final int port;
+
+    private final int priority;
+
+    private final int weight;
+
+    private final long ttl;
+
+    SrvRecord(String target, String host, int port, int priority, int weight, long ttl) {
+        this.target = target;
+        this.host = host;
+        this.port = port;
+        this.priority = priority;
+        this.weight = weight;
+        this.ttl = ttl;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return The target address if known, the target name otherwise.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return Time to live in seconds, the lowest of the SRV record and the address record used.
+     */
+    public long getTtl() {
+        return ttl;
+    }
+
+    @Override
+    public String toString() {
+        return "SrvRecord{" +
+                "target='" + target + '\'' +
+                ", host='" + host + '\'' +
+                ", port=" + port +
+                ", priority=" + priority +
+                ", weight=" + weight +
+                ", ttl=" + ttl +
+                '}';
+    }
+}
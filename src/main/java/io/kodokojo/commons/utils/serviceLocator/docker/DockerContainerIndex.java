@@ -0,0 +1,346 @@
+package io.kodokojo.commons.utils.servicelocator.docker;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.Filters;
+import com.github.dockerjava.core.command.EventsResultCallback;
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.model.ServiceSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.kodokojo.commons.utils.servicelocator.ServiceLocator.COMPONENT_NAME_KEY;
+
+/**
+ * In-memory index of the containers of a stack, by label, with their public ports.
+ * <p>
+ * Containers are listed once, then kept up to date from the Docker events stream (<code>start</code>,
+ * <code>stop</code>, <code>die</code> and <code>destroy</code>). A full listing is done again periodically and each
+ * time the events stream is reconnected, in case an event was missed.
+ */
+public class DockerContainerIndex implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DockerContainerIndex.class);
+
+    public static final long DEFAULT_RESYNC_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    private static final long RECONNECT_DELAY = TimeUnit.SECONDS.toMillis(1);
+
+    private final DockerClient dockerClient;
+
+    private final String dockerHost;
+
+    private final String[] stackLabels;
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap());
+
+    private volatile EventsResultCallback eventsCallback;
+
+    /**
+     * Changes applied from events while a listing is in flight, replayed on its result. Guarded by <code>this</code>,
+     * <code>null</code> when no listing is running.
+     */
+    private Map<String, IndexedContainer> changesDuringResync;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param stackLabels    <code>key=value</code> labels all indexed containers must have.
+     * @param resyncInterval Milliseconds between two full listings.
+     */
+    public DockerContainerIndex(DockerClient dockerClient, String dockerHost, List<String> stackLabels, long resyncInterval) {
+        if (dockerClient == null) {
+            throw new IllegalArgumentException("dockerClient must be defined.");
+        }
+        if (dockerHost == null) {
+            throw new IllegalArgumentException("dockerHost must be defined.");
+        }
+        if (stackLabels == null) {
+            throw new IllegalArgumentException("stackLabels must be defined.");
+        }
+        if (resyncInterval <= 0) {
+            throw new IllegalArgumentException("resyncInterval must be upper than 0.");
+        }
+        this.dockerClient = dockerClient;
+        this.dockerHost = dockerHost;
+        this.stackLabels = stackLabels.toArray(new String[stackLabels.size()]);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "docker-container-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            subscribe();
+            resync();
+        } catch (RuntimeException e) {
+            //  Nobody would close an index never returned.
+            close();
+            throw e;
+        }
+        scheduler.scheduleWithFixedDelay(this::safeResync, resyncInterval, resyncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param labels <code>key=value</code> labels, in addition to stack labels.
+     * @return Services exposed by running containers which have all labels, <code>null</code> if none.
+     */
+    public Set<Service> find(List<String> labels) {
+        Snapshot current = snapshot;
+        Collection<IndexedContainer> candidates = current.byId.values();
+        for (String label : labels) {
+            List<IndexedContainer> withLabel = current.byLabel.get(label);
+            if (withLabel == null) {
+                return null;
+            }
+            if (withLabel.size() < candidates.size()) {
+                candidates = withLabel;
+            }
+        }
+        ServiceSet.Builder res = ServiceSet.builder();
+        for (IndexedContainer container : candidates) {
+            if (container.labels.containsAll(labels)) {
+                res.addAll(container.services);
+            }
+        }
+        return res.isEmpty() ? null : res.build();
+    }
+
+    public int size() {
+        return snapshot.byId.size();
+    }
+
+    void resync() {
+        synchronized (this) {
+            changesDuringResync = new HashMap<>();
+        }
+        Map<String, IndexedContainer> byId = new HashMap<>();
+        try {
+            List<Container> containers = dockerClient.listContainersCmd().withFilters(new Filters().withLabels(stackLabels)).exec();
+            if (containers != null) {
+                for (Container container : containers) {
+                    byId.put(container.getId(), index(container));
+                }
+            }
+            synchronized (this) {
+                //  Events received during the listing may be newer than it, a container could die after being listed.
+                for (Map.Entry<String, IndexedContainer> change : changesDuringResync.entrySet()) {
+                    if (change.getValue() == null) {
+                        byId.remove(change.getKey());
+                    } else {
+                        byId.put(change.getKey(), change.getValue());
+                    }
+                }
+                snapshot = new Snapshot(byId);
+            }
+        } finally {
+            synchronized (this) {
+                changesDuringResync = null;
+            }
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Docker container index resynced with {} containers.", byId.size());
+        }
+    }
+
+    private void safeResync() {
+        try {
+            resync();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to resync Docker container index.", e);
+        }
+    }
+
+    void onEvent(Event event) {
+        String status = event.getStatus();
+        if (status == null || event.getId() == null) {
+            return;
+        }
+        switch (status) {
+            case "start":
+                List<Container> containers = dockerClient.listContainersCmd()
+                        .withFilters(new Filters().withLabels(stackLabels).withFilter("id", event.getId()))
+                        .exec();
+                if (containers != null) {
+                    for (Container container : containers) {
+                        update(container.getId(), index(container));
+                    }
+                }
+                break;
+            case "stop":
+            case "die":
+            case "destroy":
+                update(event.getId(), null);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private synchronized void update(String containerId, IndexedContainer container) {
+        if (changesDuringResync != null) {
+            changesDuringResync.put(containerId, container);
+        }
+        Map<String, IndexedContainer> byId = new HashMap<>(snapshot.byId);
+        if (container == null) {
+            if (byId.remove(containerId) == null) {
+                return;
+            }
+        } else {
+            byId.put(containerId, container);
+        }
+        snapshot = new Snapshot(byId);
+    }
+
+    private IndexedContainer index(Container container) {
+        Map<String, String> labels = container.getLabels() == null ? Collections.emptyMap() : container.getLabels();
+        Set<String> keyValues = new HashSet<>(labels.size());
+        for (Map.Entry<String, String> label : labels.entrySet()) {
+            keyValues.add(label.getKey() + "=" + label.getValue());
+        }
+        ServiceSet.Builder services = ServiceSet.builder();
+        String name = labels.get(COMPONENT_NAME_KEY);
+        if (name != null && container.getPorts() != null) {
+            for (Container.Port port : container.getPorts()) {
+                if (port.getPublicPort() != null && port.getPublicPort() > 0) {
+                    services.add(Service.of(name, dockerHost, port.getPublicPort()));
+                }
+            }
+        }
+        return new IndexedContainer(Collections.unmodifiableSet(keyValues), services.build());
+    }
+
+    private void subscribe() {
+        Filters filters = new Filters()
+                .withFilter("type", "container")
+                .withFilter("event", "start", "stop", "die", "destroy")
+                .withLabels(stackLabels);
+        EventsResultCallback callback = new EventsResultCallback() {
+            @Override
+            public void onNext(Event event) {
+                try {
+                    onEvent(event);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Unable to apply Docker event {}.", event, e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                //  A replaced stream is closed on purpose, only the current one reconnect.
+                if (this == eventsCallback) {
+                    LOGGER.warn("Docker events stream failed.", throwable);
+                    reconnect();
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                if (this == eventsCallback) {
+                    reconnect();
+                }
+            }
+        };
+        EventsResultCallback previous = eventsCallback;
+        eventsCallback = callback;
+        closeQuietly(previous);
+        dockerClient.eventsCmd().withFilters(filters).exec(callback);
+    }
+
+    private static void closeQuietly(EventsResultCallback callback) {
+        if (callback != null) {
+            try {
+                callback.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close Docker events stream.", e);
+            }
+        }
+    }
+
+    private void reconnect() {
+        if (!running) {
+            return;
+        }
+        try {
+            scheduler.schedule(() -> {
+                try {
+                    subscribe();
+                    resync();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Unable to reconnect Docker events stream.", e);
+                    reconnect();
+                }
+            }, RECONNECT_DELAY, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Docker container index is closed, don't reconnect.");
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        scheduler.shutdownNow();
+        closeQuietly(eventsCallback);
+    }
+
+    private static class Snapshot {
+
+        private final Map<String, IndexedContainer> byId;
+
+        private final Map<String, List<IndexedContainer>> byLabel;
+
+        private Snapshot(Map<String, IndexedContainer> byId) {
+            this.byId = byId;
+            this.byLabel = new HashMap<>();
+            for (IndexedContainer container : byId.values()) {
+                for (String label : container.labels) {
+                    byLabel.computeIfAbsent(label, key -> new ArrayList<>()).add(container);
+                }
+            }
+        }
+    }
+
+    private static class IndexedContainer {
+
+        private final Set<String> labels;
+
+        private final Set<Service> services;
+
+        private IndexedContainer(Set<String> labels, Set<Service> services) {
+            this.labels = labels;
+            this.services = services;
+        }
+    }
+}
@@ -27,18 +27,38 @@ import com.github.dockerjava.api.model.Container;
 import com.github.dockerjava.api.model.Filters;
 import io.kodokojo.commons.config.KodokojoConfig;
 import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.model.ServiceSet;
 import io.kodokojo.commons.utils.docker.DockerSupport;
+import io.kodokojo.commons.utils.properties.GenerationPin;
+import io.kodokojo.commons.utils.properties.PropertyResolver;
+import io.kodokojo.commons.utils.servicelocator.AsyncServiceLocator;
 import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
 import org.apache.commons.collections4.CollectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.io.Closeable;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
 
-public class DockerServiceLocator implements ServiceLocator {
+/**
+ * Locate services exposed by containers of the stack.
+ * <p>
+ * By default each lookup list containers from the Docker daemon. Built with a resync interval, containers are indexed
+ * once and kept up to date from the Docker events stream by a {@link DockerContainerIndex}, lookups are then answered
+ * locally.
+ * <p>
+ * Asynchronous lookups answered from the index complete immediately. Without index, the Docker client only offer
+ * blocking calls: they run on a small pool owned by the locator instead of the caller thread.
+ */
+public class DockerServiceLocator implements ServiceLocator, AsyncServiceLocator, Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DockerServiceLocator.class);
 
@@ -48,6 +68,12 @@ public class DockerServiceLocator implements ServiceLocator {
 
     private final KodokojoConfig kodokojoConfig;
 
+    private static final int LOOKUP_THREADS = 2;
+
+    private final DockerContainerIndex containerIndex;
+
+    private final ThreadPoolExecutor lookupExecutor;
+
     @Inject
     public DockerServiceLocator(DockerSupport dockerSupport, KodokojoConfig kodokojoConfig) {
         if (dockerSupport == null) {
@@ -58,7 +84,31 @@ public class DockerServiceLocator implements ServiceLocator {
         }
         this.kodokojoConfig = kodokojoConfig;
         this.dockerSupport = dockerSupport;
-        this.dockerClient = dockerSupport.createDockerClient();
+        this.dockerClient = dockerSupport.getDockerClient();
+        this.containerIndex = null;
+        this.lookupExecutor = new ThreadPoolExecutor(LOOKUP_THREADS, LOOKUP_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "docker-service-locator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lookupExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Answer lookups from an index of the stack containers, fully resynced every <code>resyncInterval</code> milliseconds.
+     */
+    public DockerServiceLocator(DockerSupport dockerSupport, KodokojoConfig kodokojoConfig, long resyncInterval) {
+        if (dockerSupport == null) {
+            throw new IllegalArgumentException("dockerClient must be defined.");
+        }
+        if (kodokojoConfig == null) {
+            throw new IllegalArgumentException("kodokojoConfig must be defined.");
+        }
+        this.kodokojoConfig = kodokojoConfig;
+        this.dockerSupport = dockerSupport;
+        this.dockerClient = dockerSupport.getDockerClient();
+        this.containerIndex = new DockerContainerIndex(dockerClient, dockerSupport.getDockerHost(), stackLabels(), resyncInterval);
+        this.lookupExecutor = null;
     }
 
     @Override
@@ -113,11 +163,64 @@ public class DockerServiceLocator implements ServiceLocator {
         return services;
     }
 
+    @Override
+    public CompletableFuture<Set<Service>> getServiceAsync(String type, String name) {
+        if (isBlank(type)) {
+            throw new IllegalArgumentException("type must be defined.");
+        }
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        return lookupAsync(() -> getService(type, name));
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByTypeAsync(String type) {
+        if (isBlank(type)) {
+            throw new IllegalArgumentException("type must be defined.");
+        }
+        return lookupAsync(() -> getServiceByType(type));
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByNameAsync(String name) {
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        return lookupAsync(() -> getServiceByName(name));
+    }
+
+    private CompletableFuture<Set<Service>> lookupAsync(Supplier<Set<Service>> lookup) {
+        if (containerIndex == null) {
+            return CompletableFuture.supplyAsync(lookup, lookupExecutor);
+        }
+        CompletableFuture<Set<Service>> res = new CompletableFuture<>();
+        try {
+            res.complete(lookup.get());
+        } catch (RuntimeException e) {
+            res.completeExceptionally(e);
+        }
+        return res;
+    }
+
+    @SuppressWarnings("try")
+    private List<String> stackLabels() {
+        try (GenerationPin ignored = PropertyResolver.pin(kodokojoConfig)) {
+            return Arrays.asList(
+                    PROJECT_KEY + "=" + kodokojoConfig.projectName(),
+                    STACK_NAME_KEY + "=" + kodokojoConfig.stackName(),
+                    STACK_TYPE_KEY + "=" + kodokojoConfig.stackType()
+            );
+        }
+    }
+
     private Set<Service> searchServicesWithLabel(List<String> labels) {
         assert labels != null : "labels must be defined";
-        labels.add(PROJECT_KEY + "=" + kodokojoConfig.projectName());
-        labels.add(STACK_NAME_KEY+ "=" + kodokojoConfig.stackName());
-        labels.add(STACK_TYPE_KEY + "=" + kodokojoConfig.stackType());
+        if (containerIndex != null) {
+            //  Stack labels are common to all indexed containers.
+            return containerIndex.find(labels);
+        }
+        labels.addAll(stackLabels());
         Filters filters = new Filters()
                 .withLabels(labels.toArray(new String[]{}));
         if (LOGGER.isDebugEnabled()) {
@@ -126,7 +229,7 @@ public class DockerServiceLocator implements ServiceLocator {
         List<Container> containers = dockerClient.listContainersCmd().withFilters(filters).exec();
 
         if (CollectionUtils.isNotEmpty(containers)) {
-            Set<Service> res = new HashSet<>(containers.size());
+            ServiceSet.Builder res = ServiceSet.builder();
             for (Container container : containers) {
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("Lookup list of public port for container : {}", container.getId());
@@ -134,12 +237,22 @@ public class DockerServiceLocator implements ServiceLocator {
                 for (Container.Port port : container.getPorts()) {
                     if (port.getPublicPort() != null && port.getPublicPort() > 0) {
                         String name = container.getLabels().get(KODOKOJO_PREFIXE + "componentName");
-                        res.add(new Service(name, dockerSupport.getDockerHost(), port.getPublicPort()));
+                        res.add(Service.of(name, dockerSupport.getDockerHost(), port.getPublicPort()));
                     }
                 }
             }
-            return res;
+            return res.build();
         }
         return null;
     }
+
+    @Override
+    public void close() {
+        if (containerIndex != null) {
+            containerIndex.close();
+        }
+        if (lookupExecutor != null) {
+            lookupExecutor.shutdownNow();
+        }
+    }
 }
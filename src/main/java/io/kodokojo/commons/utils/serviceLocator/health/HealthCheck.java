@@ -0,0 +1,96 @@
+package io.kodokojo.commons.utils.servicelocator.health;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.squareup.okhttp.Response;
+import io.kodokojo.commons.utils.docker.DockerSupport;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * How a {@link HealthChecker} probe an endpoint: a TCP connect, or an HTTP <code>GET</code> judged like
+ * {@link DockerSupport#waitUntilHttpRequestRespond(String, long, DockerSupport.ServiceIsUp)} does.
+ */
+public final class HealthCheck {
+
+    public enum Mode {
+        TCP,
+        HTTP
+    }
+
+    private final Mode mode;
+
+    private final String path;
+
+    private final DockerSupport.ServiceIsUp serviceIsUp;
+
+    private HealthCheck(Mode mode, String path, DockerSupport.ServiceIsUp serviceIsUp) {
+        this.mode = mode;
+        this.path = path;
+        this.serviceIsUp = serviceIsUp;
+    }
+
+    public static HealthCheck tcp() {
+        return new HealthCheck(Mode.TCP, null, null);
+    }
+
+    /**
+     * @param path Absolute path requested on the endpoint, like <code>/health</code>.
+     */
+    public static HealthCheck http(String path, DockerSupport.ServiceIsUp serviceIsUp) {
+        if (isBlank(path) || !path.startsWith("/")) {
+            throw new IllegalArgumentException("path must be defined and start with '/'.");
+        }
+        if (serviceIsUp == null) {
+            throw new IllegalArgumentException("serviceIsUp must be defined.");
+        }
+        return new HealthCheck(Mode.HTTP, path, serviceIsUp);
+    }
+
+    /**
+     * Endpoint is up when it answer a 2xx.
+     */
+    public static HealthCheck http(String path) {
+        return http(path, Response::isSuccessful);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public DockerSupport.ServiceIsUp getServiceIsUp() {
+        return serviceIsUp;
+    }
+
+    @Override
+    public String toString() {
+        return "HealthCheck{" +
+                "mode=" + mode +
+                ", path='" + path + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,288 @@
+package io.kodokojo.commons.utils.servicelocator.health;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.squareup.okhttp.*;
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Probe, every <code>interval</code> milliseconds, the endpoints a {@link ServiceLocator} return for the watched
+ * queries, and keep whether each one is healthy.
+ * <p>
+ * TCP probes are non blocking connects multiplexed on a single selector thread, once the host name is resolved on a
+ * pool of <code>threads</code> threads. Each HTTP probe holds one of these threads until answered or timed out, so at
+ * most <code>threads</code> endpoints are probed at once and a round over many unresponsive endpoints lasts about
+ * <code>endpoints / threads * timeout</code>: size it from the number of watched endpoints. Lookups on the locator run
+ * on the scheduler thread, never in the caller one.
+ * An endpoint not probed yet is considered healthy. An endpoint is never probed twice at once, a round waits for its
+ * probes a bounded time and the next one skips endpoints still probed.
+ * <p>
+ * Health is kept per {@link Service}, equal by name, host, port and type: equal services returned by several queries
+ * share their health, the same address returned under two names is probed and tracked for each.
+ */
+public class HealthChecker implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HealthChecker.class);
+
+    public static final long DEFAULT_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    public static final long DEFAULT_TIMEOUT = TimeUnit.SECONDS.toMillis(2);
+
+    public static final int DEFAULT_THREADS = 8;
+
+    private final ServiceLocator serviceLocator;
+
+    private final HealthCheck healthCheck;
+
+    private final long timeout;
+
+    private final Set<ServiceQuery> watched = ConcurrentHashMap.newKeySet();
+
+    private final Map<Service, Boolean> health = new ConcurrentHashMap<>();
+
+    private final Map<Service, CompletableFuture<Boolean>> probing = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final TcpProber tcpProber;
+
+    private final OkHttpClient httpClient;
+
+    private final ExecutorService probeExecutor;
+
+    public HealthChecker(ServiceLocator serviceLocator, HealthCheck healthCheck, long interval, long timeout) {
+        this(serviceLocator, healthCheck, interval, timeout, DEFAULT_THREADS);
+    }
+
+    /**
+     * @param threads Maximum number of HTTP probes, or of host name resolutions for TCP ones, run at once.
+     */
+    public HealthChecker(ServiceLocator serviceLocator, HealthCheck healthCheck, long interval, long timeout, int threads) {
+        if (serviceLocator == null) {
+            throw new IllegalArgumentException("serviceLocator must be defined.");
+        }
+        if (healthCheck == null) {
+            throw new IllegalArgumentException("healthCheck must be defined.");
+        }
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be upper than 0.");
+        }
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be upper than 0.");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be upper than 0.");
+        }
+        this.serviceLocator = serviceLocator;
+        this.healthCheck = healthCheck;
+        this.timeout = timeout;
+        ThreadPoolExecutor probeExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                daemonThreadFactory(healthCheck.getMode() == HealthCheck.Mode.TCP ? "health-check-dns" : "health-check-http"));
+        probeExecutor.allowCoreThreadTimeOut(true);
+        this.probeExecutor = probeExecutor;
+        if (healthCheck.getMode() == HealthCheck.Mode.TCP) {
+            try {
+                this.tcpProber = new TcpProber(probeExecutor);
+            } catch (IOException e) {
+                probeExecutor.shutdownNow();
+                throw new UncheckedIOException("Unable to open health check selector.", e);
+            }
+            this.httpClient = null;
+        } else {
+            this.tcpProber = null;
+            //  Calls beyond the thread count wait in the dispatcher, endpoints sharing a host included.
+            Dispatcher dispatcher = new Dispatcher(probeExecutor);
+            dispatcher.setMaxRequests(threads);
+            dispatcher.setMaxRequestsPerHost(threads);
+            this.httpClient = new OkHttpClient();
+            this.httpClient.setConnectTimeout(timeout, TimeUnit.MILLISECONDS);
+            this.httpClient.setReadTimeout(timeout, TimeUnit.MILLISECONDS);
+            this.httpClient.setFollowRedirects(false);
+            this.httpClient.setDispatcher(dispatcher);
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("health-check-scheduler"));
+        scheduler.scheduleWithFixedDelay(this::safeCheckWatched, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public HealthChecker(ServiceLocator serviceLocator, HealthCheck healthCheck) {
+        this(serviceLocator, healthCheck, DEFAULT_INTERVAL, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Probe endpoints returned for <code>query</code> from the next round on.
+     */
+    public void watch(ServiceQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query must be defined.");
+        }
+        if (watched.add(query) && LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Health of {} endpoints watched.", query);
+        }
+    }
+
+    /**
+     * @return <code>false</code> only if the last probe of this endpoint failed.
+     */
+    public boolean isHealthy(Service service) {
+        return health.getOrDefault(service, Boolean.TRUE);
+    }
+
+    /**
+     * Probe <code>service</code> now and record the result, or join the probe already running for it.
+     */
+    public CompletableFuture<Boolean> check(Service service) {
+        if (service == null) {
+            throw new IllegalArgumentException("service must be defined.");
+        }
+        CompletableFuture<Boolean> res = new CompletableFuture<>();
+        CompletableFuture<Boolean> current = probing.putIfAbsent(service, res);
+        if (current != null) {
+            //  A dependent future, callers can't complete the shared one.
+            return current.thenApply(healthy -> healthy);
+        }
+        CompletableFuture<Boolean> probe;
+        try {
+            probe = healthCheck.getMode() == HealthCheck.Mode.TCP ?
+                    tcpProber.connect(service.getHost(), service.getPort(), timeout) : httpProbe(service);
+        } catch (RuntimeException e) {
+            probing.remove(service, res);
+            throw e;
+        }
+        probe.whenComplete((healthy, error) -> {
+            if (error == null) {
+                Boolean previous = health.put(service, healthy);
+                if (previous != null && previous != healthy) {
+                    LOGGER.info("{}:{} is now {}.", service.getHost(), service.getPort(), healthy ? "healthy" : "unhealthy");
+                }
+            }
+            //  Removed before completing, a caller woken up by the completion must probe again.
+            probing.remove(service, res);
+            if (error == null) {
+                res.complete(healthy);
+            } else {
+                res.completeExceptionally(error);
+            }
+        });
+        return res;
+    }
+
+    /**
+     * Probe all endpoints of watched queries, forget health of endpoints no more returned.
+     */
+    CompletableFuture<Void> checkWatched() {
+        Set<Service> endpoints = new HashSet<>();
+        for (ServiceQuery query : watched) {
+            Set<Service> services = query.execute(serviceLocator);
+            if (services != null) {
+                for (Service service : services) {
+                    endpoints.add(service);
+                }
+            }
+        }
+        health.keySet().retainAll(endpoints);
+        CompletableFuture<?>[] probes = new CompletableFuture<?>[endpoints.size()];
+        int i = 0;
+        for (Service service : endpoints) {
+            probes[i++] = check(service);
+        }
+        return CompletableFuture.allOf(probes);
+    }
+
+    private void safeCheckWatched() {
+        try {
+            //  Connect then read may each take the timeout, waiting longer only delays the next round.
+            checkWatched().get(2 * timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.debug("Health check round still running after {}ms, endpoints still probed are skipped next round.", 2 * timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.warn("Unable to health check endpoints.", e.getCause());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to lookup endpoints to health check.", e);
+        }
+    }
+
+    private CompletableFuture<Boolean> httpProbe(Service service) {
+        CompletableFuture<Boolean> res = new CompletableFuture<>();
+        HttpUrl url = new HttpUrl.Builder()
+                .scheme("http")
+                .host(service.getHost())
+                .port(service.getPort())
+                .encodedPath(healthCheck.getPath())
+                .build();
+        Request request = new Request.Builder().url(url).get().build();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Health check {} failed.", url, e);
+                }
+                res.complete(false);
+            }
+
+            @Override
+            public void onResponse(Response response) throws IOException {
+                try {
+                    res.complete(healthCheck.getServiceIsUp().accept(response));
+                } catch (RuntimeException e) {
+                    LOGGER.debug("Health check {} response not accepted.", url, e);
+                    res.complete(false);
+                } finally {
+                    response.body().close();
+                }
+            }
+        });
+        return res;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (tcpProber != null) {
+            tcpProber.close();
+            //  Queued resolutions still run, to fail their probe.
+            probeExecutor.shutdown();
+        } else {
+            probeExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package io.kodokojo.commons.utils.servicelocator.health;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.model.ServiceSet;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+
+import java.util.Set;
+
+/**
+ * Decorate a {@link ServiceLocator} to drop endpoints a {@link HealthChecker} found unhealthy, or an
+ * {@link OutlierDetector} ejected. Each query is watched by the checker from its first lookup on.
+ */
+public class HealthFilteringServiceLocator implements ServiceLocator {
+
+    private final ServiceLocator delegate;
+
+    private final HealthChecker healthChecker;
+
+    private final OutlierDetector outlierDetector;
+
+    /**
+     * @param healthChecker   May be <code>null</code> if <code>outlierDetector</code> is defined.
+     * @param outlierDetector May be <code>null</code> if <code>healthChecker</code> is defined.
+     */
+    public HealthFilteringServiceLocator(ServiceLocator delegate, HealthChecker healthChecker, OutlierDetector outlierDetector) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate must be defined.");
+        }
+        if (healthChecker == null && outlierDetector == null) {
+            throw new IllegalArgumentException("healthChecker or outlierDetector must be defined.");
+        }
+        this.delegate = delegate;
+        this.healthChecker = healthChecker;
+        this.outlierDetector = outlierDetector;
+    }
+
+    public HealthFilteringServiceLocator(ServiceLocator delegate, HealthChecker healthChecker) {
+        this(delegate, healthChecker, null);
+        if (healthChecker == null) {
+            throw new IllegalArgumentException("healthChecker must be defined.");
+        }
+    }
+
+    @Override
+    public Set<Service> getService(String type, String name) {
+        Set<Service> res = lookup(ServiceQuery.byTypeAndName(type, name));
+        return res == null || res.isEmpty() ? null : res;
+    }
+
+    @Override
+    public Set<Service> getServiceByType(String type) {
+        return lookup(ServiceQuery.byType(type));
+    }
+
+    @Override
+    public Set<Service> getServiceByName(String name) {
+        return lookup(ServiceQuery.byName(name));
+    }
+
+    private Set<Service> lookup(ServiceQuery query) {
+        if (healthChecker != null) {
+            healthChecker.watch(query);
+        }
+        Set<Service> services = query.execute(delegate);
+        if (services == null) {
+            return null;
+        }
+        ServiceSet.Builder res = ServiceSet.builder();
+        for (Service service : services) {
+            if ((healthChecker == null || healthChecker.isHealthy(service))
+                    && (outlierDetector == null || !outlierDetector.isEjected(service))) {
+                res.add(service);
+            }
+        }
+        return res.build();
+    }
+}
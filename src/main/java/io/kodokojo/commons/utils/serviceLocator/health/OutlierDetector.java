@@ -0,0 +1,325 @@
+package io.kodokojo.commons.utils.servicelocator.health;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+import io.kodokojo.commons.utils.servicelocator.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Passive outlier detection: callers {@link #report(ServiceQuery, Service, long, TimeUnit, boolean) report} each call
+ * made to an endpoint, and every <code>interval</code> milliseconds endpoints are compared with their peers, the
+ * endpoints returned by the same query. Backends like Consul or DNS name each endpoint after its host, so peers can't
+ * be told by service name.
+ * <p>
+ * An endpoint is ejected when its error rate exceed the median error rate of its peers by
+ * {@link #DEFAULT_ERROR_RATE_MARGIN}, or when its p99 latency exceed {@link #DEFAULT_LATENCY_FACTOR} times the median
+ * p99 of its peers. It's re-admitted after {@link #DEFAULT_BASE_EJECTION}, doubled at each consecutive ejection up to
+ * {@link #DEFAULT_MAX_EJECTION}. At most half of the endpoints of a service are ejected at once. Endpoints without
+ * calls for {@link #MAX_IDLE_INTERVALS} intervals are forgotten.
+ * <p>
+ * Endpoints are {@link Service} values, equal by name, host, port and type: reports on equal instances add up, the
+ * same address reported under another name is another endpoint.
+ * <p>
+ * Counters are {@link LongAdder} and latencies a {@link LatencyHistogram}, so reporting neither lock nor contend
+ * between callers.
+ */
+public class OutlierDetector implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutlierDetector.class);
+
+    public static final long DEFAULT_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    public static final long DEFAULT_BASE_EJECTION = TimeUnit.SECONDS.toMillis(30);
+
+    public static final long DEFAULT_MAX_EJECTION = TimeUnit.MINUTES.toMillis(5);
+
+    public static final double DEFAULT_ERROR_RATE_MARGIN = 0.2;
+
+    public static final double DEFAULT_LATENCY_FACTOR = 3.0;
+
+    public static final int DEFAULT_MIN_CALLS = 20;
+
+    public static final int MAX_IDLE_INTERVALS = 6;
+
+    private static final double MAX_EJECTED_RATIO = 0.5;
+
+    private final long baseEjection;
+
+    private final long maxEjection;
+
+    private final double errorRateMargin;
+
+    private final double latencyFactor;
+
+    private final int minCalls;
+
+    private final Map<Service, EndpointStats> stats = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    public OutlierDetector(long interval, long baseEjection, long maxEjection, double errorRateMargin, double latencyFactor, int minCalls) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be upper than 0.");
+        }
+        if (baseEjection <= 0) {
+            throw new IllegalArgumentException("baseEjection must be upper than 0.");
+        }
+        if (maxEjection < baseEjection) {
+            throw new IllegalArgumentException("maxEjection must be upper or equal to baseEjection.");
+        }
+        if (errorRateMargin <= 0) {
+            throw new IllegalArgumentException("errorRateMargin must be upper than 0.");
+        }
+        if (latencyFactor <= 1) {
+            throw new IllegalArgumentException("latencyFactor must be upper than 1.");
+        }
+        if (minCalls <= 0) {
+            throw new IllegalArgumentException("minCalls must be upper than 0.");
+        }
+        this.baseEjection = baseEjection;
+        this.maxEjection = maxEjection;
+        this.errorRateMargin = errorRateMargin;
+        this.latencyFactor = latencyFactor;
+        this.minCalls = minCalls;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "outlier-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::safeEvaluate, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public OutlierDetector() {
+        this(DEFAULT_INTERVAL, DEFAULT_BASE_EJECTION, DEFAULT_MAX_EJECTION, DEFAULT_ERROR_RATE_MARGIN, DEFAULT_LATENCY_FACTOR, DEFAULT_MIN_CALLS);
+    }
+
+    /**
+     * Record a call made to <code>service</code>, compared with the other endpoints returned by <code>query</code>.
+     */
+    public void report(ServiceQuery query, Service service, long latency, TimeUnit unit, boolean success) {
+        if (query == null) {
+            throw new IllegalArgumentException("query must be defined.");
+        }
+        record(query, service, latency, unit, success);
+    }
+
+    /**
+     * Record a call made to <code>service</code>, compared with the endpoints of the same service name. Only fits
+     * backends naming every endpoint after its service, like Marathon or Docker.
+     */
+    public void report(Service service, long latency, TimeUnit unit, boolean success) {
+        if (service == null) {
+            throw new IllegalArgumentException("service must be defined.");
+        }
+        record(service.getName(), service, latency, unit, success);
+    }
+
+    private void record(Object peers, Service service, long latency, TimeUnit unit, boolean success) {
+        if (service == null) {
+            throw new IllegalArgumentException("service must be defined.");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit must be defined.");
+        }
+        EndpointStats endpointStats = stats.get(service);
+        if (endpointStats == null) {
+            endpointStats = stats.computeIfAbsent(service, EndpointStats::new);
+        }
+        endpointStats.peers = peers;
+        endpointStats.record(unit.toMicros(latency), success);
+    }
+
+    /**
+     * @return <code>true</code> while <code>service</code> is ejected.
+     */
+    public boolean isEjected(Service service) {
+        EndpointStats endpointStats = stats.get(service);
+        return endpointStats != null && endpointStats.ejectedUntil > System.currentTimeMillis();
+    }
+
+    long ejectedUntil(Service service) {
+        EndpointStats endpointStats = stats.get(service);
+        return endpointStats == null ? 0 : endpointStats.ejectedUntil;
+    }
+
+    int size() {
+        return stats.size();
+    }
+
+    /**
+     * Compare endpoints calls since previous evaluation, eject outliers and re-admit endpoints whose ejection is over.
+     */
+    void evaluate(long now) {
+        Map<Object, List<Window>> windowsByPeers = new HashMap<>();
+        for (EndpointStats endpointStats : stats.values()) {
+            Window window = endpointStats.drain();
+            if (window.calls > 0 || endpointStats.ejectedUntil > now) {
+                endpointStats.idleIntervals = 0;
+            } else if (++endpointStats.idleIntervals >= MAX_IDLE_INTERVALS) {
+                //  Endpoints gone from the backend would otherwise be kept forever.
+                stats.remove(endpointStats.service, endpointStats);
+                continue;
+            }
+            windowsByPeers.computeIfAbsent(endpointStats.peers, key -> new ArrayList<>()).add(window);
+        }
+        for (Map.Entry<Object, List<Window>> entry : windowsByPeers.entrySet()) {
+            evaluate(entry.getKey(), entry.getValue(), now);
+        }
+    }
+
+    private void evaluate(Object peers, List<Window> windows, long now) {
+        List<Window> measured = new ArrayList<>(windows.size());
+        int ejected = 0;
+        for (Window window : windows) {
+            if (window.stats.ejectedUntil > now) {
+                ejected++;
+            } else if (window.calls >= minCalls) {
+                measured.add(window);
+            }
+        }
+        //  Without peers, nothing stands out.
+        if (measured.size() >= 2) {
+            double medianErrorRate = median(measured, window -> window.errorRate());
+            double medianP99 = median(measured, window -> window.p99);
+            int maxEjected = (int) (windows.size() * MAX_EJECTED_RATIO);
+            for (Window window : measured) {
+                boolean errorOutlier = window.errorRate() > medianErrorRate + errorRateMargin;
+                boolean latencyOutlier = window.p99 > medianP99 * latencyFactor;
+                if ((errorOutlier || latencyOutlier) && ejected < maxEjected) {
+                    eject(window.stats, now);
+                    ejected++;
+                    LOGGER.warn("Endpoint {} of {} ejected until {}: error rate {} (peers {}), p99 {}us (peers {}us).", window.stats.service,
+                            peers, new Date(window.stats.ejectedUntil), window.errorRate(), medianErrorRate, window.p99, medianP99);
+                } else if (window.stats.ejections > 0) {
+                    //  A clean window shorten the next ejection.
+                    window.stats.ejections--;
+                }
+            }
+        }
+    }
+
+    private void eject(EndpointStats endpointStats, long now) {
+        int ejections = Math.min(endpointStats.ejections, 30);
+        long duration = Math.min(baseEjection << ejections, maxEjection);
+        endpointStats.ejectedUntil = now + duration;
+        endpointStats.ejections++;
+    }
+
+    private void safeEvaluate() {
+        try {
+            evaluate(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to evaluate outliers.", e);
+        }
+    }
+
+    private static double median(List<Window> windows, Metric metric) {
+        double[] values = new double[windows.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = metric.of(windows.get(i));
+        }
+        Arrays.sort(values);
+        int middle = values.length / 2;
+        return values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private interface Metric {
+        double of(Window window);
+    }
+
+    private static class EndpointStats {
+
+        private final Service service;
+
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final LatencyHistogram latencies = new LatencyHistogram();
+
+        //  Written by the last caller reporting, the endpoint is compared with the peers of its latest lookup.
+        private volatile Object peers;
+
+        //  Only read and written by the evaluation thread, except ejectedUntil read by isEjected.
+        private volatile long ejectedUntil;
+
+        private int ejections;
+
+        private int idleIntervals;
+
+        private EndpointStats(Service service) {
+            this.service = service;
+        }
+
+        private void record(long micros, boolean success) {
+            calls.increment();
+            if (!success) {
+                errors.increment();
+            }
+            latencies.record(micros);
+        }
+
+        private Window drain() {
+            long p99 = latencies.drain().percentile(0.99);
+            return new Window(this, calls.sumThenReset(), errors.sumThenReset(), p99);
+        }
+    }
+
+    private static class Window {
+
+        private final EndpointStats stats;
+
+        private final long calls;
+
+        private final long errors;
+
+        private final long p99;
+
+        private Window(EndpointStats stats, long calls, long errors, long p99) {
+            this.stats = stats;
+            this.calls = calls;
+            this.errors = errors;
+            this.p99 = p99;
+        }
+
+        private double errorRate() {
+            return calls == 0 ? 0 : (double) errors / calls;
+        }
+    }
+}
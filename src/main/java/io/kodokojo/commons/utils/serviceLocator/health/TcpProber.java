@@ -0,0 +1,211 @@
+package io.kodokojo.commons.utils.servicelocator.health;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Non blocking TCP connects multiplexed on a single selector thread. Host names are resolved on the given executor
+ * first, since resolution blocks.
+ */
+class TcpProber implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TcpProber.class);
+
+    private final Executor resolver;
+
+    private final Selector selector;
+
+    private final Queue<PendingConnect> registrations = new ConcurrentLinkedQueue<>();
+
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    TcpProber(Executor resolver) throws IOException {
+        this.resolver = resolver;
+        this.selector = Selector.open();
+        this.thread = new Thread(this::run, "health-check-tcp");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return Completed with <code>true</code> once connected, <code>false</code> if refused or not connected within
+     * <code>timeout</code> milliseconds, resolution included.
+     */
+    CompletableFuture<Boolean> connect(String host, int port, long timeout) {
+        CompletableFuture<Boolean> res = new CompletableFuture<>();
+        long deadline = System.currentTimeMillis() + timeout;
+        try {
+            resolver.execute(() -> connect(host, port, deadline, res));
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Connect to {}:{} rejected, prober is closed.", host, port);
+            res.complete(false);
+        }
+        return res;
+    }
+
+    private void connect(String host, int port, long deadline, CompletableFuture<Boolean> res) {
+        if (!running) {
+            res.complete(false);
+            return;
+        }
+        SocketChannel channel = null;
+        try {
+            InetSocketAddress address = new InetSocketAddress(host, port);
+            if (address.isUnresolved() || System.currentTimeMillis() >= deadline) {
+                LOGGER.debug("Unable to resolve {} in time.", host);
+                res.complete(false);
+                return;
+            }
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            if (channel.connect(address)) {
+                closeQuietly(channel);
+                res.complete(true);
+                return;
+            }
+            registrations.add(new PendingConnect(channel, res, deadline));
+            if (running) {
+                selector.wakeup();
+            } else {
+                failRegistrations();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Unable to connect to {}:{}.", host, port, e);
+            }
+            closeQuietly(channel);
+            res.complete(false);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                PendingConnect registration;
+                while ((registration = registrations.poll()) != null) {
+                    registration.channel.register(selector, SelectionKey.OP_CONNECT, registration);
+                }
+                selector.select(100);
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    PendingConnect pending = (PendingConnect) key.attachment();
+                    boolean connected;
+                    try {
+                        connected = pending.channel.finishConnect();
+                    } catch (IOException e) {
+                        connected = false;
+                    }
+                    pending.complete(connected);
+                }
+                long now = System.currentTimeMillis();
+                for (SelectionKey key : selector.keys()) {
+                    PendingConnect pending = (PendingConnect) key.attachment();
+                    if (pending.deadline <= now) {
+                        pending.complete(false);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (running) {
+                    LOGGER.warn("Health check selector loop failed.", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            ((PendingConnect) key.attachment()).complete(false);
+        }
+        failRegistrations();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to close health check selector.", e);
+        }
+    }
+
+    private void failRegistrations() {
+        PendingConnect registration;
+        while ((registration = registrations.poll()) != null) {
+            registration.complete(false);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to close channel.", e);
+            }
+        }
+    }
+
+    private static class PendingConnect {
+
+        private final SocketChannel channel;
+
+        private final CompletableFuture<Boolean> result;
+
+        private final long deadline;
+
+        private PendingConnect(SocketChannel channel, CompletableFuture<Boolean> result, long deadline) {
+            this.channel = channel;
+            this.result = result;
+            this.deadline = deadline;
+        }
+
+        private void complete(boolean connected) {
+            //  Closing the channel cancel its key.
+            closeQuietly(channel);
+            result.complete(connected);
+        }
+    }
+}
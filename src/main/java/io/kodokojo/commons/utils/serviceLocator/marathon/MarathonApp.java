@@ -0,0 +1,218 @@
+package io.kodokojo.commons.utils.servicelocator.marathon;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.model.ServiceSet;
+
+import java.util.*;
+
+import static io.kodokojo.commons.utils.servicelocator.marathon.MarathonServiceLocator.COMPONENT_TYPE_LABEL;
+import static io.kodokojo.commons.utils.servicelocator.marathon.MarathonServiceLocator.PROJECT_LABEL;
+
+/**
+ * Immutable view of a Marathon application: the labels and port mappings we locate services with, and its running tasks.
+ */
+class MarathonApp {
+
+    private final String id;
+
+    private final String project;
+
+    private final String componentType;
+
+    private final List<Integer> containerPorts;
+
+    private final Map<String, Task> tasks;
+
+    MarathonApp(String id, String project, String componentType, List<Integer> containerPorts, Map<String, Task> tasks) {
+        if (id == null) {
+            throw new IllegalArgumentException("id must be defined.");
+        }
+        this.id = id;
+        this.project = project;
+        this.componentType = componentType;
+        this.containerPorts = containerPorts;
+        this.tasks = tasks;
+    }
+
+    /**
+     * Read an application as returned by <code>/v2/apps</code> or embedded in a deployment plan, tasks are optional.
+     */
+    static MarathonApp fromJson(JsonObject app) {
+        JsonObject labels = app.has("labels") && app.get("labels").isJsonObject() ? app.getAsJsonObject("labels") : new JsonObject();
+        List<Integer> containerPorts = new ArrayList<>();
+        JsonElement container = app.get("container");
+        if (container != null && container.isJsonObject() && "DOCKER".equals(stringOf(container.getAsJsonObject(), "type"))) {
+            JsonElement docker = container.getAsJsonObject().get("docker");
+            JsonElement portMappings = docker != null && docker.isJsonObject() ? docker.getAsJsonObject().get("portMappings") : null;
+            if (portMappings != null && portMappings.isJsonArray()) {
+                for (JsonElement portMapping : portMappings.getAsJsonArray()) {
+                    containerPorts.add(portMapping.getAsJsonObject().get("containerPort").getAsInt());
+                }
+            }
+        }
+        Map<String, Task> tasks = new LinkedHashMap<>();
+        JsonElement tasksJson = app.get("tasks");
+        if (tasksJson != null && tasksJson.isJsonArray()) {
+            for (JsonElement taskJson : tasksJson.getAsJsonArray()) {
+                Task task = Task.fromJson(taskJson.getAsJsonObject());
+                tasks.put(task.getId(), task);
+            }
+        }
+        return new MarathonApp(app.get("id").getAsString(), stringOf(labels, PROJECT_LABEL), stringOf(labels, COMPONENT_TYPE_LABEL),
+                Collections.unmodifiableList(containerPorts), Collections.unmodifiableMap(tasks));
+    }
+
+    static String stringOf(JsonObject json, String key) {
+        JsonElement element = json.get(key);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getProject() {
+        return project;
+    }
+
+    public String getComponentType() {
+        return componentType;
+    }
+
+    public Map<String, Task> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * @return <code>true</code> if the application carries both labels used to locate services.
+     */
+    public boolean isLocatable() {
+        return project != null && componentType != null;
+    }
+
+    /**
+     * Same definition with the tasks of <code>other</code>, used when a deployment change an application definition.
+     */
+    public MarathonApp withTasksOf(MarathonApp other) {
+        return new MarathonApp(id, project, componentType, containerPorts, other.tasks);
+    }
+
+    public MarathonApp withTask(Task task) {
+        Map<String, Task> res = new LinkedHashMap<>(tasks);
+        res.put(task.getId(), task);
+        return new MarathonApp(id, project, componentType, containerPorts, Collections.unmodifiableMap(res));
+    }
+
+    public MarathonApp withoutTask(String taskId) {
+        if (!tasks.containsKey(taskId)) {
+            return this;
+        }
+        Map<String, Task> res = new LinkedHashMap<>(tasks);
+        res.remove(taskId);
+        return new MarathonApp(id, project, componentType, containerPorts, Collections.unmodifiableMap(res));
+    }
+
+    /**
+     * @return One service per port mapping of each alive task, named <code>project-componentType-containerPort</code>.
+     */
+    public Set<Service> toServices() {
+        ServiceSet.Builder res = ServiceSet.builder();
+        String name = project + "-" + componentType;
+        for (Task task : tasks.values()) {
+            if (task.isAlive()) {
+                int size = Math.min(containerPorts.size(), task.getPorts().size());
+                for (int i = 0; i < size; i++) {
+                    res.add(Service.of(name + "-" + containerPorts.get(i), task.getHost(), task.getPorts().get(i)));
+                }
+            }
+        }
+        return res.build();
+    }
+
+    static class Task {
+
+        private final String id;
+
+        private final String host;
+
+        private final List<Integer> ports;
+
+        private final boolean alive;
+
+        Task(String id, String host, List<Integer> ports, boolean alive) {
+            this.id = id;
+            this.host = host;
+            this.ports = ports;
+            this.alive = alive;
+        }
+
+        static Task fromJson(JsonObject task) {
+            boolean alive = false;
+            JsonElement healthCheckResults = task.get("healthCheckResults");
+            if (healthCheckResults != null && healthCheckResults.isJsonArray()) {
+                for (JsonElement healthCheck : healthCheckResults.getAsJsonArray()) {
+                    alive |= healthCheck.getAsJsonObject().get("alive").getAsBoolean();
+                }
+            }
+            return new Task(task.get("id").getAsString(), task.get("host").getAsString(), portsOf(task.getAsJsonArray("ports")), alive);
+        }
+
+        static List<Integer> portsOf(JsonArray ports) {
+            List<Integer> res = new ArrayList<>();
+            if (ports != null) {
+                for (JsonElement port : ports) {
+                    res.add(port.getAsInt());
+                }
+            }
+            return Collections.unmodifiableList(res);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public List<Integer> getPorts() {
+            return ports;
+        }
+
+        /**
+         * @return <code>true</code> once a health check reported the task alive, tasks without health check are never alive.
+         */
+        public boolean isAlive() {
+            return alive;
+        }
+
+        public Task withAlive(boolean alive) {
+            return new Task(id, host, ports, alive);
+        }
+    }
+}
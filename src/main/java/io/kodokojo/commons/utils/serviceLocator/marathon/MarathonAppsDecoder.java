@@ -0,0 +1,279 @@
+package io.kodokojo.commons.utils.servicelocator.marathon;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.model.ServiceSet;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static io.kodokojo.commons.utils.servicelocator.marathon.MarathonServiceLocator.COMPONENT_TYPE_LABEL;
+import static io.kodokojo.commons.utils.servicelocator.marathon.MarathonServiceLocator.PROJECT_LABEL;
+
+/**
+ * Decode a <code>/v2/apps?embed=apps.tasks</code> response while reading it, without building a json tree.
+ * <p>
+ * Once the labels of an application are known not to match, the remaining of the application is skipped; otherwise
+ * only the ports of alive tasks are kept until the application end, and {@link Service} are built for matches only.
+ */
+final class MarathonAppsDecoder {
+
+    private static final int[] NO_PORT = new int[0];
+
+    private MarathonAppsDecoder() {
+        // Util class.
+    }
+
+    /**
+     * @param project       Expected <code>project</code> label, <code>null</code> to accept any value.
+     * @param componentType Expected <code>componentType</code> label, <code>null</code> to accept any value.
+     * @return Services of alive tasks of matching applications, named like {@link MarathonApp#toServices()}.
+     */
+    static Set<Service> decode(Reader in, String project, String componentType) throws IOException {
+        ServiceSet.Builder res = ServiceSet.builder();
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("apps".equals(reader.nextName())) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readApp(reader, project, componentType, res);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return res.build();
+    }
+
+    private static void readApp(JsonReader reader, String project, String componentType, ServiceSet.Builder res) throws IOException {
+        String appProject = null;
+        String appComponentType = null;
+        boolean labelsRead = false;
+        int[] containerPorts = null;
+        List<AliveTask> tasks = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (labelsRead && !matches(appProject, appComponentType, project, componentType)) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "labels":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String label = reader.nextName();
+                        if (PROJECT_LABEL.equals(label)) {
+                            appProject = nextStringOrNull(reader);
+                        } else if (COMPONENT_TYPE_LABEL.equals(label)) {
+                            appComponentType = nextStringOrNull(reader);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    labelsRead = true;
+                    break;
+                case "container":
+                    containerPorts = readDockerContainerPorts(reader);
+                    break;
+                case "tasks":
+                    tasks = readAliveTasks(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (labelsRead && containerPorts != null && tasks != null && matches(appProject, appComponentType, project, componentType)) {
+            String serviceName = appProject + "-" + appComponentType;
+            for (AliveTask task : tasks) {
+                int size = Math.min(containerPorts.length, task.ports.length);
+                for (int i = 0; i < size; i++) {
+                    res.add(Service.of(serviceName + "-" + containerPorts[i], task.host, task.ports[i]));
+                }
+            }
+        }
+    }
+
+    private static boolean matches(String appProject, String appComponentType, String project, String componentType) {
+        return appProject != null && appComponentType != null
+                && (project == null || project.equals(appProject))
+                && (componentType == null || componentType.equals(appComponentType));
+    }
+
+    /**
+     * @return Container ports of port mappings, <code>null</code> if the container isn't a Docker one.
+     */
+    private static int[] readDockerContainerPorts(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        String type = null;
+        int[] ports = NO_PORT;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("type".equals(name)) {
+                type = nextStringOrNull(reader);
+            } else if ("docker".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("portMappings".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        ports = readPortMappings(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return "DOCKER".equals(type) ? ports : null;
+    }
+
+    private static int[] readPortMappings(JsonReader reader) throws IOException {
+        int[] ports = new int[4];
+        int size = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int containerPort = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("containerPort".equals(reader.nextName())) {
+                    containerPort = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (size == ports.length) {
+                ports = Arrays.copyOf(ports, size * 2);
+            }
+            ports[size++] = containerPort;
+        }
+        reader.endArray();
+        return Arrays.copyOf(ports, size);
+    }
+
+    private static List<AliveTask> readAliveTasks(JsonReader reader) throws IOException {
+        List<AliveTask> res = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String host = null;
+            int[] ports = NO_PORT;
+            boolean alive = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "host":
+                        host = nextStringOrNull(reader);
+                        break;
+                    case "ports":
+                        ports = readInts(reader);
+                        break;
+                    case "healthCheckResults":
+                        alive = readAlive(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            if (alive && host != null) {
+                res.add(new AliveTask(host, ports));
+            }
+        }
+        reader.endArray();
+        return res;
+    }
+
+    private static boolean readAlive(JsonReader reader) throws IOException {
+        boolean alive = false;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("alive".equals(reader.nextName())) {
+                    alive |= reader.nextBoolean();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return alive;
+    }
+
+    private static int[] readInts(JsonReader reader) throws IOException {
+        int[] values = new int[4];
+        int size = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = reader.nextInt();
+        }
+        reader.endArray();
+        return Arrays.copyOf(values, size);
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static class AliveTask {
+
+        private final String host;
+
+        private final int[] ports;
+
+        private AliveTask(String host, int[] ports) {
+            this.host = host;
+            this.ports = ports;
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package io.kodokojo.commons.utils.servicelocator.marathon;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+import io.kodokojo.commons.utils.servicelocator.ServiceRegistry;
+import io.kodokojo.commons.utils.servicelocator.metrics.DataAgeAware;
+import okio.BufferedSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import retrofit.RestAdapter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.kodokojo.commons.utils.servicelocator.marathon.MarathonServiceLocator.COMPONENT_TYPE_LABEL;
+import static io.kodokojo.commons.utils.servicelocator.marathon.MarathonServiceLocator.PROJECT_LABEL;
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * Event driven alternative to {@link MarathonServiceLocator}: subscribe to the <code>/v2/events</code> server-sent
+ * event stream and keep an in-memory index of applications, tasks, health results and port mappings. Services of each
+ * application are published to a {@link ServiceRegistry}, lookups never leave the JVM.
+ * <p>
+ * The index is rebuilt from <code>/v2/apps</code> each time the stream is (re)connected, then updated incrementally.
+ */
+public class MarathonEventSubscriber implements ServiceLocator, DataAgeAware, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MarathonEventSubscriber.class);
+
+    static final String STATUS_UPDATE_EVENT = "status_update_event";
+
+    static final String HEALTH_STATUS_CHANGED_EVENT = "health_status_changed_event";
+
+    static final String DEPLOYMENT_INFO_EVENT = "deployment_info";
+
+    static final String DEPLOYMENT_SUCCESS_EVENT = "deployment_success";
+
+    static final String API_POST_EVENT = "api_post_event";
+
+    static final String APP_TERMINATED_EVENT = "app_terminated_event";
+
+    private static final Set<String> TERMINAL_TASK_STATUS = new HashSet<>(Arrays.asList(
+            "TASK_FINISHED", "TASK_FAILED", "TASK_KILLED", "TASK_LOST", "TASK_ERROR", "TASK_GONE", "TASK_DROPPED", "TASK_GONE_BY_OPERATOR"
+    ));
+
+    private static final long MIN_BACKOFF = 100;
+
+    public static final String SOURCE_PREFIX = "marathon:";
+
+    private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+
+    private final String eventsUrl;
+
+    private final MarathonRestApi marathonRestApi;
+
+    private final OkHttpClient httpClient;
+
+    private final Map<String, MarathonApp> apps = new ConcurrentHashMap<>();
+
+    private final ServiceRegistry registry;
+
+    private final CountDownLatch initialSync = new CountDownLatch(1);
+
+    private final Thread thread;
+
+    private volatile Call currentCall;
+
+    private volatile boolean running = true;
+
+    public MarathonEventSubscriber(String marathonUrl) {
+        this(marathonUrl, new ServiceRegistry());
+    }
+
+    /**
+     * @param registry Registry fed with located applications, may be shared with other backends.
+     */
+    public MarathonEventSubscriber(String marathonUrl, ServiceRegistry registry) {
+        if (isBlank(marathonUrl)) {
+            throw new IllegalArgumentException("marathonUrl must be defined.");
+        }
+        if (registry == null) {
+            throw new IllegalArgumentException("registry must be defined.");
+        }
+        this.registry = registry;
+        String baseUrl = marathonUrl.endsWith("/") ? marathonUrl.substring(0, marathonUrl.length() - 1) : marathonUrl;
+        this.eventsUrl = baseUrl + "/v2/events";
+        this.marathonRestApi = new RestAdapter.Builder().setEndpoint(baseUrl).build().create(MarathonRestApi.class);
+        this.httpClient = new OkHttpClient();
+        //  Events may be minutes apart, never time out while reading the stream.
+        this.httpClient.setReadTimeout(0, TimeUnit.MILLISECONDS);
+        this.thread = new Thread(this::subscribe, "marathon-events");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Wait until the index was loaded from <code>/v2/apps</code> once.
+     */
+    public boolean awaitInitialSync(long timeout, TimeUnit unit) throws InterruptedException {
+        return initialSync.await(timeout, unit);
+    }
+
+    /**
+     * @param name Project of the application, as {@link MarathonServiceLocator} does.
+     */
+    @Override
+    public Set<Service> getService(String type, String name) {
+        return registry.getService(type, name);
+    }
+
+    @Override
+    public Set<Service> getServiceByType(String type) {
+        return registry.getServiceByType(type);
+    }
+
+    @Override
+    public Set<Service> getServiceByName(String name) {
+        return registry.getServiceByName(name);
+    }
+
+    @Override
+    public long getDataAge(ServiceQuery query) {
+        return registry.getDataAge(query);
+    }
+
+    private void subscribe() {
+        long backoff = MIN_BACKOFF;
+        while (running) {
+            try {
+                Request request = new Request.Builder().url(eventsUrl).header("Accept", "text/event-stream").build();
+                currentCall = httpClient.newCall(request);
+                Response response = currentCall.execute();
+                try (ResponseBody body = response.body()) {
+                    if (!response.isSuccessful()) {
+                        throw new IOException("Unexpected status " + response.code() + " from " + eventsUrl);
+                    }
+                    //  Stream is open, events emitted from now on are buffered while we resync.
+                    resync();
+                    backoff = MIN_BACKOFF;
+                    readEvents(body.source());
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                LOGGER.warn("Marathon event stream {} interrupted, reconnect in {}ms.", eventsUrl, backoff, e);
+            }
+            if (!running) {
+                return;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        }
+    }
+
+    private void resync() {
+        JsonObject json = marathonRestApi.getApplicationsWithTasks(PROJECT_LABEL + "," + COMPONENT_TYPE_LABEL);
+        Set<String> ids = new HashSet<>();
+        Set<String> sources = new HashSet<>();
+        for (JsonElement appJson : json.getAsJsonArray("apps")) {
+            MarathonApp app = MarathonApp.fromJson(appJson.getAsJsonObject());
+            if (app.isLocatable()) {
+                ids.add(app.getId());
+                sources.add(SOURCE_PREFIX + app.getId());
+                apps.put(app.getId(), app);
+                publish(app.getId());
+            }
+        }
+        apps.keySet().retainAll(ids);
+        registry.retainSources(SOURCE_PREFIX, sources);
+        initialSync.countDown();
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Marathon index resynced with {} applications.", ids.size());
+        }
+    }
+
+    private void readEvents(BufferedSource source) throws IOException {
+        String eventType = null;
+        StringBuilder data = new StringBuilder();
+        String line;
+        while (running && (line = source.readUtf8Line()) != null) {
+            if (line.isEmpty()) {
+                if (data.length() > 0) {
+                    dispatch(eventType, data.toString());
+                }
+                eventType = null;
+                data.setLength(0);
+            } else if (line.startsWith("event:")) {
+                eventType = fieldValue(line, "event:");
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(fieldValue(line, "data:"));
+            }
+        }
+    }
+
+    private static String fieldValue(String line, String field) {
+        String value = line.substring(field.length());
+        return value.startsWith(" ") ? value.substring(1) : value;
+    }
+
+    void dispatch(String eventType, String data) {
+        JsonObject event = new JsonParser().parse(data).getAsJsonObject();
+        String type = eventType == null ? MarathonApp.stringOf(event, "eventType") : eventType;
+        if (type == null) {
+            return;
+        }
+        switch (type) {
+            case STATUS_UPDATE_EVENT:
+                onStatusUpdate(event);
+                break;
+            case HEALTH_STATUS_CHANGED_EVENT:
+                onHealthStatusChanged(event);
+                break;
+            case DEPLOYMENT_INFO_EVENT:
+                onDeployment(event, false);
+                break;
+            case DEPLOYMENT_SUCCESS_EVENT:
+                onDeployment(event, true);
+                break;
+            case API_POST_EVENT:
+                if (event.has("appDefinition")) {
+                    updateDefinition(MarathonApp.fromJson(event.getAsJsonObject("appDefinition")));
+                }
+                break;
+            case APP_TERMINATED_EVENT:
+                remove(event.get("appId").getAsString());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onStatusUpdate(JsonObject event) {
+        String appId = event.get("appId").getAsString();
+        String taskId = event.get("taskId").getAsString();
+        String taskStatus = event.get("taskStatus").getAsString();
+        if ("TASK_RUNNING".equals(taskStatus)) {
+            apps.computeIfPresent(appId, (id, app) -> {
+                MarathonApp.Task previous = app.getTasks().get(taskId);
+                //  Health result arrive in a separate event, keep the one we already know.
+                boolean alive = previous != null && previous.isAlive();
+                MarathonApp.Task task = new MarathonApp.Task(taskId, event.get("host").getAsString(), MarathonApp.Task.portsOf(event.getAsJsonArray("ports")), alive);
+                return app.withTask(task);
+            });
+        } else if (TERMINAL_TASK_STATUS.contains(taskStatus)) {
+            apps.computeIfPresent(appId, (id, app) -> app.withoutTask(taskId));
+        }
+        publish(appId);
+    }
+
+    private void onHealthStatusChanged(JsonObject event) {
+        String appId = event.get("appId").getAsString();
+        boolean alive = event.get("alive").getAsBoolean();
+        //  Marathon 1.4 and later identify the instance instead of the task.
+        String taskId = MarathonApp.stringOf(event, "taskId");
+        String instanceId = MarathonApp.stringOf(event, "instanceId");
+        apps.computeIfPresent(appId, (id, app) -> {
+            MarathonApp res = app;
+            for (MarathonApp.Task task : app.getTasks().values()) {
+                if (task.getId().equals(taskId) || (instanceId != null && task.getId().startsWith(instanceId))) {
+                    res = res.withTask(task.withAlive(alive));
+                }
+            }
+            return res;
+        });
+        publish(appId);
+    }
+
+    private void onDeployment(JsonObject event, boolean completed) {
+        JsonObject plan = event.getAsJsonObject("plan");
+        if (plan == null) {
+            return;
+        }
+        Set<String> targetIds = new HashSet<>();
+        for (JsonElement appJson : appsOf(plan.getAsJsonObject("target"))) {
+            MarathonApp app = MarathonApp.fromJson(appJson.getAsJsonObject());
+            targetIds.add(app.getId());
+            updateDefinition(app);
+        }
+        if (completed) {
+            for (JsonElement appJson : appsOf(plan.getAsJsonObject("original"))) {
+                String id = appJson.getAsJsonObject().get("id").getAsString();
+                if (!targetIds.contains(id)) {
+                    remove(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Applications of <code>group</code> and of its nested groups.
+     */
+    private static JsonArray appsOf(JsonObject group) {
+        JsonArray res = new JsonArray();
+        addApps(group, res);
+        return res;
+    }
+
+    private static void addApps(JsonObject group, JsonArray res) {
+        if (group == null) {
+            return;
+        }
+        if (group.has("apps")) {
+            res.addAll(group.getAsJsonArray("apps"));
+        }
+        if (group.has("groups")) {
+            for (JsonElement nested : group.getAsJsonArray("groups")) {
+                addApps(nested.getAsJsonObject(), res);
+            }
+        }
+    }
+
+    private void updateDefinition(MarathonApp definition) {
+        if (!definition.isLocatable()) {
+            //  Labels may have been removed from an indexed application.
+            remove(definition.getId());
+            return;
+        }
+        apps.compute(definition.getId(), (id, app) -> app == null ? definition : definition.withTasksOf(app));
+        publish(definition.getId());
+    }
+
+    private void remove(String appId) {
+        apps.remove(appId);
+        registry.unregister(SOURCE_PREFIX + appId);
+    }
+
+    private void publish(String appId) {
+        MarathonApp app = apps.get(appId);
+        if (app == null) {
+            registry.unregister(SOURCE_PREFIX + appId);
+        } else {
+            //  Marathon services are named after their project, see MarathonServiceLocator.
+            registry.register(SOURCE_PREFIX + appId, new ServiceRegistry.Registration(app.getProject(), null, app.getComponentType(), app.getProject(), app.toServices()));
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        Call call = currentCall;
+        if (call != null) {
+            call.cancel();
+        }
+        thread.interrupt();
+    }
+}
@@ -23,8 +23,12 @@ package io.kodokojo.commons.utils.servicelocator.marathon;
  */
 
 import com.google.gson.JsonObject;
+import retrofit.Callback;
+import retrofit.client.Response;
 import retrofit.http.GET;
 import retrofit.http.Path;
+import retrofit.http.Query;
+import retrofit.http.Streaming;
 
 public interface MarathonRestApi {
 
@@ -34,4 +38,24 @@ public interface MarathonRestApi {
     @GET("/v2/apps/{appId}")
     JsonObject getApplicationConfiguration(@Path("appId") String appId);
 
+    /**
+     * Applications matching a Marathon label selector, like <code>project==acme,componentType==scm</code>, with their tasks.
+     */
+    @GET("/v2/apps?embed=apps.tasks")
+    JsonObject getApplicationsWithTasks(@Query("label") String labelSelector);
+
+    /**
+     * Same as {@link #getApplicationsWithTasks(String)}, the body is left unread to be decoded as a stream.
+     */
+    @Streaming
+    @GET("/v2/apps?embed=apps.tasks")
+    Response streamApplicationsWithTasks(@Query("label") String labelSelector);
+
+    /**
+     * Asynchronous {@link #streamApplicationsWithTasks(String)}, the callback run on the thread which made the call.
+     */
+    @Streaming
+    @GET("/v2/apps?embed=apps.tasks")
+    void streamApplicationsWithTasks(@Query("label") String labelSelector, Callback<Response> callback);
+
 }
@@ -22,24 +22,39 @@ package io.kodokojo.commons.utils.servicelocator.marathon;
  * #L%
  */
 
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
 import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.AsyncServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.CallbackFuture;
+import io.kodokojo.commons.utils.servicelocator.RetrofitCallExecutor;
 import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
 import org.apache.commons.lang.StringUtils;
 import retrofit.RestAdapter;
+import retrofit.client.Response;
 
 import javax.inject.Inject;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
 
-public class MarathonServiceLocator implements ServiceLocator {
+/**
+ * Locate services from Marathon application labels.
+ * <p>
+ * Asynchronous lookups are Retrofit callback calls: the caller doesn't wait, but Retrofit 1.9 run each call as a
+ * blocking request on its HTTP executor, the bounded {@link RetrofitCallExecutor#shared() shared pool}, and the response
+ * is decoded by that thread. Each lookup in flight hold one thread. Cancelling a returned future doesn't abort its HTTP
+ * call.
+ */
+public class MarathonServiceLocator implements ServiceLocator, AsyncServiceLocator {
+
+    public static final String PROJECT_LABEL = "project";
+
+    public static final String COMPONENT_TYPE_LABEL = "componentType";
 
     private final MarathonRestApi marathonRestApi;
 
@@ -52,82 +67,107 @@ public class MarathonServiceLocator implements ServiceLocator {
     }
 
     protected MarathonRestApi provideMarathonRestApi(String marathonUrl) {
-        RestAdapter adapter = new RestAdapter.Builder().setEndpoint(marathonUrl).build();
+        RestAdapter adapter = new RestAdapter.Builder().setEndpoint(marathonUrl).setExecutors(RetrofitCallExecutor.shared(), null).build();
         return adapter.create(MarathonRestApi.class);
     }
 
     @Override
     public Set<Service> getService(String type, String name) {
-        Set<String> appIds = new HashSet<>();
-        JsonObject json = marathonRestApi.getAllApplications();
-        JsonArray apps = json.getAsJsonArray("apps");
-        for (int i = 0; i < apps.size(); i++) {
-            JsonObject app = (JsonObject) apps.get(i);
-            String id = app.getAsJsonPrimitive("id").getAsString();
-            JsonObject labels = app.getAsJsonObject("labels");
-            if (labels.has("project")) {
-                String project = labels.getAsJsonPrimitive("project").getAsString();
-                String apptype = labels.getAsJsonPrimitive("componentType").getAsString();
-                if (type.equals(apptype) && name.equals(project)) {
-                    appIds.add(id);
-                }
-            }
+        if (isBlank(type)) {
+            throw new IllegalArgumentException("type must be defined.");
         }
-        Set<Service> res = new HashSet<>();
-        for (String appId : appIds) {
-            JsonObject applicationConfiguration = marathonRestApi.getApplicationConfiguration(appId);
-            res.addAll(convertToService(name + "-" + type, applicationConfiguration));
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
         }
-
-        return res;
+        return findServices(name, type);
     }
 
     @Override
     public Set<Service> getServiceByType(String type) {
-        return null;
+        if (isBlank(type)) {
+            throw new IllegalArgumentException("type must be defined.");
+        }
+        return findServices(null, type);
     }
 
     @Override
     public Set<Service> getServiceByName(String name) {
-        return null;
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        return findServices(name, null);
     }
 
-    private static Set<Service> convertToService(String name, JsonObject json) {
-        Set<Service> res = new HashSet<>();
-        JsonObject app = json.getAsJsonObject("app");
-        JsonObject container = app.getAsJsonObject("container");
-        String containerType = container.getAsJsonPrimitive("type").getAsString();
-        if ("DOCKER".equals(containerType)) {
-            List<String> ports = new ArrayList<>();
-            JsonObject docker = container.getAsJsonObject("docker");
-            JsonArray portMappings = docker.getAsJsonArray("portMappings");
-            for (int i = 0; i < portMappings.size(); i++) {
-                JsonObject portMapping = (JsonObject) portMappings.get(i);
-                ports.add(portMapping.getAsJsonPrimitive("containerPort").getAsString());
-            }
-            JsonArray tasks = app.getAsJsonArray("tasks");
-            for (int i = 0; i < tasks.size(); i++) {
-                JsonObject task = (JsonObject) tasks.get(i);
-                String host = task.getAsJsonPrimitive("host").getAsString();
-                boolean alive = false;
-                if (task.has("healthCheckResults")) {
-                    JsonArray healthCheckResults = task.getAsJsonArray("healthCheckResults");
-                    for (int j = 0; j < healthCheckResults.size() && !alive; j++) {
-                        JsonObject healthCheck = (JsonObject) healthCheckResults.get(j);
-                        alive = healthCheck.getAsJsonPrimitive("alive").getAsBoolean();
-                    }
-                }
-                if (alive) {
-                    JsonArray jsonPorts = task.getAsJsonArray("ports");
-                    for (int j = 0; j < jsonPorts.size(); j++) {
-                        JsonPrimitive jsonPort = (JsonPrimitive) jsonPorts.get(j);
-                        String portName = ports.get(j);
-                        res.add(new Service(name + "-" + portName, host, jsonPort.getAsInt()));
-                    }
-                }
+    @Override
+    public CompletableFuture<Set<Service>> getServiceAsync(String type, String name) {
+        if (isBlank(type)) {
+            throw new IllegalArgumentException("type must be defined.");
+        }
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        return findServicesAsync(name, type);
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByTypeAsync(String type) {
+        if (isBlank(type)) {
+            throw new IllegalArgumentException("type must be defined.");
+        }
+        return findServicesAsync(null, type);
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByNameAsync(String name) {
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        return findServicesAsync(name, null);
+    }
+
+    private Set<Service> findServices(String project, String componentType) {
+        //  Marathon filter apps on labels and embed their tasks, a single call whatever the number of apps.
+        String labelSelector = appsSelector(project, componentType);
+        return decode(marathonRestApi.streamApplicationsWithTasks(labelSelector), labelSelector, project, componentType);
+    }
+
+    private CompletableFuture<Set<Service>> findServicesAsync(String project, String componentType) {
+        String labelSelector = appsSelector(project, componentType);
+        CallbackFuture<Response> response = new CallbackFuture<>();
+        marathonRestApi.streamApplicationsWithTasks(labelSelector, response);
+        //  The callback run on the Retrofit thread, the stream is decoded there before the future complete.
+        return response.thenApply(body -> decode(body, labelSelector, project, componentType));
+    }
+
+    private static Set<Service> decode(Response response, String labelSelector, String project, String componentType) {
+        try (Reader reader = new InputStreamReader(response.getBody().in(), StandardCharsets.UTF_8)) {
+            return MarathonAppsDecoder.decode(reader, project, componentType);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read applications matching " + labelSelector + " from Marathon.", e);
+        }
+    }
+
+    private static String appsSelector(String project, String componentType) {
+        return labelSelector(PROJECT_LABEL, project) + "," + labelSelector(COMPONENT_TYPE_LABEL, componentType);
+    }
+
+    /**
+     * @return <code>key==value</code>, or <code>key</code> to only require the label when value is <code>null</code>.
+     */
+    static String labelSelector(String key, String value) {
+        return value == null ? escapeLabel(key) : escapeLabel(key) + "==" + escapeLabel(value);
+    }
+
+    private static String escapeLabel(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_' && c != '.') {
+                sb.append('\\');
             }
+            sb.append(c);
         }
-        return res;
+        return sb.toString();
     }
 
 }
@@ -0,0 +1,44 @@
+package io.kodokojo.commons.utils.servicelocator.metrics;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.Map;
+
+/**
+ * Lookup metrics of one discovery backend, registered as
+ * <code>io.kodokojo.commons:type=ServiceLocator,backend=&lt;name&gt;</code>.
+ */
+public interface BackendMetricsMXBean {
+
+    String getBackend();
+
+    long getLookups();
+
+    long getErrors();
+
+    /**
+     * @return Stats keyed by query shape, like <code>TYPE_AND_NAME</code>.
+     */
+    Map<String, LookupStats> getLookupStats();
+
+}
@@ -0,0 +1,37 @@
+package io.kodokojo.commons.utils.servicelocator.metrics;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+
+/**
+ * A locator answering from data loaded earlier, like a cache or a watched registry, able to tell how old it is.
+ */
+public interface DataAgeAware {
+
+    /**
+     * @return Age in milliseconds of the data <code>query</code> is answered from, <code>-1</code> if unknown.
+     */
+    long getDataAge(ServiceQuery query);
+
+}
@@ -0,0 +1,81 @@
+package io.kodokojo.commons.utils.servicelocator.metrics;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.AsyncServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link InstrumentedServiceLocator} of a delegate which is also an {@link AsyncServiceLocator}: asynchronous lookups
+ * use the delegate asynchronous API and are timed until their future complete.
+ */
+public class InstrumentedAsyncServiceLocator extends InstrumentedServiceLocator implements AsyncServiceLocator {
+
+    private final AsyncServiceLocator asyncDelegate;
+
+    public InstrumentedAsyncServiceLocator(ServiceLocator delegate, String backend, ServiceLocatorMetrics metrics) {
+        super(delegate, backend, metrics);
+        if (!(delegate instanceof AsyncServiceLocator)) {
+            throw new IllegalArgumentException("delegate must be an AsyncServiceLocator.");
+        }
+        this.asyncDelegate = (AsyncServiceLocator) delegate;
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceAsync(String type, String name) {
+        return lookupAsync(ServiceQuery.byTypeAndName(type, name));
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByTypeAsync(String type) {
+        return lookupAsync(ServiceQuery.byType(type));
+    }
+
+    @Override
+    public CompletableFuture<Set<Service>> getServiceByNameAsync(String name) {
+        return lookupAsync(ServiceQuery.byName(name));
+    }
+
+    private CompletableFuture<Set<Service>> lookupAsync(ServiceQuery query) {
+        LookupRecorder recorder = recorderOf(query);
+        long start = System.nanoTime();
+        CompletableFuture<Set<Service>> res;
+        try {
+            res = query.executeAsync(asyncDelegate);
+        } catch (RuntimeException e) {
+            recorder.record(System.nanoTime() - start, -1);
+            throw e;
+        }
+        return res.whenComplete((services, error) -> {
+            recorder.record(System.nanoTime() - start, error != null ? -1 : services == null ? 0 : services.size());
+            if (error == null) {
+                recordDataAge(query, recorder);
+            }
+        });
+    }
+}
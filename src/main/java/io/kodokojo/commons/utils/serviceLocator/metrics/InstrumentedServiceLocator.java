@@ -0,0 +1,112 @@
+package io.kodokojo.commons.utils.servicelocator.metrics;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.AsyncServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+
+import java.util.Set;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * Decorate a {@link ServiceLocator} to record, under the <code>backend</code> name, the count, latency, result size
+ * and failures of its lookups by query shape. If the delegate is {@link DataAgeAware}, the age of the data each
+ * lookup was answered from is recorded too.
+ * <p>
+ * Use {@link #instrument(ServiceLocator, String, ServiceLocatorMetrics)} to keep the asynchronous API of a delegate
+ * which has one: this class only expose the blocking one, so a blocking delegate stay seen as blocking.
+ */
+public class InstrumentedServiceLocator implements ServiceLocator {
+
+    private final ServiceLocator delegate;
+
+    private final LookupRecorder[] recorders = new LookupRecorder[ServiceQuery.Kind.values().length];
+
+    public InstrumentedServiceLocator(ServiceLocator delegate, String backend, ServiceLocatorMetrics metrics) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate must be defined.");
+        }
+        if (isBlank(backend)) {
+            throw new IllegalArgumentException("backend must be defined.");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics must be defined.");
+        }
+        this.delegate = delegate;
+        for (ServiceQuery.Kind kind : ServiceQuery.Kind.values()) {
+            recorders[kind.ordinal()] = metrics.recorder(backend, kind);
+        }
+    }
+
+    /**
+     * @return An {@link InstrumentedAsyncServiceLocator} if <code>delegate</code> is an {@link AsyncServiceLocator},
+     * an {@link InstrumentedServiceLocator} otherwise.
+     */
+    public static InstrumentedServiceLocator instrument(ServiceLocator delegate, String backend, ServiceLocatorMetrics metrics) {
+        return delegate instanceof AsyncServiceLocator ?
+                new InstrumentedAsyncServiceLocator(delegate, backend, metrics) : new InstrumentedServiceLocator(delegate, backend, metrics);
+    }
+
+    @Override
+    public Set<Service> getService(String type, String name) {
+        return lookup(ServiceQuery.byTypeAndName(type, name));
+    }
+
+    @Override
+    public Set<Service> getServiceByType(String type) {
+        return lookup(ServiceQuery.byType(type));
+    }
+
+    @Override
+    public Set<Service> getServiceByName(String name) {
+        return lookup(ServiceQuery.byName(name));
+    }
+
+    private Set<Service> lookup(ServiceQuery query) {
+        LookupRecorder recorder = recorderOf(query);
+        long start = System.nanoTime();
+        Set<Service> res;
+        try {
+            res = query.execute(delegate);
+        } catch (RuntimeException e) {
+            recorder.record(System.nanoTime() - start, -1);
+            throw e;
+        }
+        recorder.record(System.nanoTime() - start, res == null ? 0 : res.size());
+        recordDataAge(query, recorder);
+        return res;
+    }
+
+    LookupRecorder recorderOf(ServiceQuery query) {
+        return recorders[query.getKind().ordinal()];
+    }
+
+    void recordDataAge(ServiceQuery query, LookupRecorder recorder) {
+        if (delegate instanceof DataAgeAware) {
+            recorder.recordDataAge(((DataAgeAware) delegate).getDataAge(query));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.kodokojo.commons.utils.servicelocator.metrics;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies counted in power of two microsecond buckets, so recording neither lock nor contend between callers.
+ * Percentiles are read as the upper bound of their bucket, at most twice the exact value.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 40;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(Math.max(micros, 0));
+        buckets[Math.min(bucket, BUCKETS - 1)].increment();
+    }
+
+    /**
+     * @return Latencies recorded so far.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new Snapshot(counts);
+    }
+
+    /**
+     * @return Latencies recorded since the previous drain, and start counting again.
+     */
+    public Snapshot drain() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sumThenReset();
+        }
+        return new Snapshot(counts);
+    }
+
+    public static class Snapshot {
+
+        private final long[] counts;
+
+        private final long total;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long sum = 0;
+            for (long count : counts) {
+                sum += count;
+            }
+            this.total = sum;
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        /**
+         * @param ratio Between 0 and 1, like <code>0.99</code>.
+         * @return Latency in microseconds, <code>0</code> if nothing was recorded.
+         */
+        public long percentile(double ratio) {
+            long rank = (long) Math.ceil(total * ratio);
+            long seen = 0;
+            for (int i = 0; i < counts.length && total > 0; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return 1L << i;
+                }
+            }
+            return 0;
+        }
+    }
+}
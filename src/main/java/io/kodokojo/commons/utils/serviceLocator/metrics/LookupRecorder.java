@@ -0,0 +1,87 @@
+package io.kodokojo.commons.utils.servicelocator.metrics;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of one backend for one query shape, latencies are kept in a {@link LatencyHistogram}.
+ */
+class LookupRecorder {
+
+    private final LongAdder lookups = new LongAdder();
+
+    private final LongAdder emptyResults = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+
+    private final LongAdder resultSizes = new LongAdder();
+
+    private final LongAccumulator maxResultSize = new LongAccumulator(Math::max, 0);
+
+    private final LongAccumulator maxDataAge = new LongAccumulator(Math::max, -1);
+
+    private volatile long lastDataAge = -1;
+
+    /**
+     * @param resultSize <code>-1</code> if the lookup failed.
+     */
+    void record(long latencyNanos, int resultSize) {
+        long micros = Math.max(latencyNanos / 1000, 0);
+        lookups.increment();
+        latencies.record(micros);
+        maxLatency.accumulate(micros);
+        if (resultSize < 0) {
+            errors.increment();
+            return;
+        }
+        if (resultSize == 0) {
+            emptyResults.increment();
+        }
+        resultSizes.add(resultSize);
+        maxResultSize.accumulate(resultSize);
+    }
+
+    void recordDataAge(long age) {
+        if (age >= 0) {
+            lastDataAge = age;
+            maxDataAge.accumulate(age);
+        }
+    }
+
+    LookupStats snapshot() {
+        LatencyHistogram.Snapshot histogram = latencies.snapshot();
+        long count = lookups.sum();
+        long failed = errors.sum();
+        long answered = count - failed;
+        return new LookupStats(count, emptyResults.sum(), failed,
+                histogram.percentile(0.5), histogram.percentile(0.99), maxLatency.get(),
+                answered <= 0 ? 0 : (double) resultSizes.sum() / answered, maxResultSize.get(),
+                lastDataAge, maxDataAge.get());
+    }
+}
@@ -0,0 +1,122 @@
+package io.kodokojo.commons.utils.servicelocator.metrics;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Lookups of one backend for one query shape since the metrics were created. Latencies are in microseconds, rounded up
+ * to a power of two; data ages in milliseconds, <code>-1</code> when the backend doesn't report it.
+ */
+public class LookupStats {
+
+    private final long lookups;
+
+    private final long emptyResults;
+
+    private final long errors;
+
+    private final long p50Latency;
+
+    private final long p99Latency;
+
+    private final long maxLatency;
+
+    private final double meanResultSize;
+
+    private final long maxResultSize;
+
+    private final long lastDataAge;
+
+    private final long maxDataAge;
+
+    @ConstructorProperties({"lookups", "emptyResults", "errors", "p50Latency", "p99Latency", "maxLatency", "meanResultSize", "maxResultSize", "lastDataAge", "maxDataAge"})
+    public LookupStats(long lookups, long emptyResults, long errors, long p50Latency, long p99Latency, long maxLatency, double meanResultSize, long maxResultSize, long lastDataAge, long maxDataAge) {
+        this.lookups = lookups;
+        this.emptyResults = emptyResults;
+        this.errors = errors;
+        this.p50Latency = p50Latency;
+        this.p99Latency = p99Latency;
+        this.maxLatency = maxLatency;
+        this.meanResultSize = meanResultSize;
+        this.maxResultSize = maxResultSize;
+        this.lastDataAge = lastDataAge;
+        this.maxDataAge = maxDataAge;
+    }
+
+    public long getLookups() {
+        return lookups;
+    }
+
+    public long getEmptyResults() {
+        return emptyResults;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getP50Latency() {
+        return p50Latency;
+    }
+
+    public long getP99Latency() {
+        return p99Latency;
+    }
+
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    public double getMeanResultSize() {
+        return meanResultSize;
+    }
+
+    public long getMaxResultSize() {
+        return maxResultSize;
+    }
+
+    public long getLastDataAge() {
+        return lastDataAge;
+    }
+
+    public long getMaxDataAge() {
+        return maxDataAge;
+    }
+
+    @Override
+    public String toString() {
+        return "LookupStats{" +
+                "lookups=" + lookups +
+                ", emptyResults=" + emptyResults +
+                ", errors=" + errors +
+                ", p50Latency=" + p50Latency +
+                ", p99Latency=" + p99Latency +
+                ", maxLatency=" + maxLatency +
+                ", meanResultSize=" + meanResultSize +
+                ", maxResultSize=" + maxResultSize +
+                ", lastDataAge=" + lastDataAge +
+                ", maxDataAge=" + maxDataAge +
+                '}';
+    }
+}
@@ -0,0 +1,183 @@
+package io.kodokojo.commons.utils.servicelocator.metrics;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.commons.lang.StringUtils.isBlank;
+
+/**
+ * Lookup metrics of the discovery backends, fed by {@link InstrumentedServiceLocator}s sharing this instance. Read them
+ * with {@link #snapshot()}, or through JMX when built with an {@link MBeanServer}: one {@link BackendMetricsMXBean}
+ * is registered per backend, and unregistered by {@link #close()}.
+ */
+public class ServiceLocatorMetrics implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceLocatorMetrics.class);
+
+    public static final String JMX_DOMAIN = "io.kodokojo.commons";
+
+    private static final ServiceQuery.Kind[] KINDS = ServiceQuery.Kind.values();
+
+    private final MBeanServer mBeanServer;
+
+    private final Map<String, Backend> backends = new ConcurrentHashMap<>();
+
+    /**
+     * @param mBeanServer May be <code>null</code> to not expose metrics through JMX.
+     */
+    public ServiceLocatorMetrics(MBeanServer mBeanServer) {
+        this.mBeanServer = mBeanServer;
+    }
+
+    public ServiceLocatorMetrics() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * @return Stats of each backend by query shape.
+     */
+    public Map<String, Map<ServiceQuery.Kind, LookupStats>> snapshot() {
+        Map<String, Map<ServiceQuery.Kind, LookupStats>> res = new TreeMap<>();
+        for (Backend backend : backends.values()) {
+            res.put(backend.name, backend.snapshot());
+        }
+        return res;
+    }
+
+    /**
+     * @return <code>null</code> if no lookup was recorded for <code>backend</code>.
+     */
+    public Map<ServiceQuery.Kind, LookupStats> snapshot(String backend) {
+        Backend res = backends.get(backend);
+        return res == null ? null : res.snapshot();
+    }
+
+    LookupRecorder recorder(String backend, ServiceQuery.Kind kind) {
+        if (isBlank(backend)) {
+            throw new IllegalArgumentException("backend must be defined.");
+        }
+        Backend res = backends.get(backend);
+        if (res == null) {
+            res = backends.computeIfAbsent(backend, this::register);
+        }
+        return res.recorders[kind.ordinal()];
+    }
+
+    private Backend register(String name) {
+        Backend backend = new Backend(name);
+        if (mBeanServer != null) {
+            try {
+                mBeanServer.registerMBean(backend, objectNameOf(name));
+            } catch (JMException e) {
+                LOGGER.warn("Unable to expose metrics of {} through JMX.", name, e);
+            }
+        }
+        return backend;
+    }
+
+    private static ObjectName objectNameOf(String backend) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=ServiceLocator,backend=" + ObjectName.quote(backend));
+    }
+
+    @Override
+    public void close() {
+        if (mBeanServer == null) {
+            return;
+        }
+        for (String name : backends.keySet()) {
+            try {
+                ObjectName objectName = objectNameOf(name);
+                if (mBeanServer.isRegistered(objectName)) {
+                    mBeanServer.unregisterMBean(objectName);
+                }
+            } catch (JMException e) {
+                LOGGER.warn("Unable to unregister metrics of {}.", name, e);
+            }
+        }
+    }
+
+    private static class Backend implements BackendMetricsMXBean {
+
+        private final String name;
+
+        private final LookupRecorder[] recorders = new LookupRecorder[KINDS.length];
+
+        private Backend(String name) {
+            this.name = name;
+            for (int i = 0; i < recorders.length; i++) {
+                recorders[i] = new LookupRecorder();
+            }
+        }
+
+        private Map<ServiceQuery.Kind, LookupStats> snapshot() {
+            Map<ServiceQuery.Kind, LookupStats> res = new EnumMap<>(ServiceQuery.Kind.class);
+            for (ServiceQuery.Kind kind : KINDS) {
+                res.put(kind, recorders[kind.ordinal()].snapshot());
+            }
+            return res;
+        }
+
+        @Override
+        public String getBackend() {
+            return name;
+        }
+
+        @Override
+        public long getLookups() {
+            long res = 0;
+            for (LookupStats stats : snapshot().values()) {
+                res += stats.getLookups();
+            }
+            return res;
+        }
+
+        @Override
+        public long getErrors() {
+            long res = 0;
+            for (LookupStats stats : snapshot().values()) {
+                res += stats.getErrors();
+            }
+            return res;
+        }
+
+        @Override
+        public Map<String, LookupStats> getLookupStats() {
+            Map<String, LookupStats> res = new TreeMap<>();
+            for (Map.Entry<ServiceQuery.Kind, LookupStats> entry : snapshot().entrySet()) {
+                res.put(entry.getKey().name(), entry.getValue());
+            }
+            return res;
+        }
+    }
+}
@@ -23,6 +23,9 @@ package io.kodokojo.commons.utils.servicelocator.property;
  */
 
 import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.properties.Key;
+import io.kodokojo.commons.utils.properties.PropertyConfig;
+import io.kodokojo.commons.utils.properties.PropertyResolver;
 import io.kodokojo.commons.utils.properties.provider.PropertyValueProvider;
 import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
 import org.apache.commons.lang.StringUtils;
@@ -30,23 +33,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PropertyServiceLocator implements ServiceLocator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PropertyServiceLocator.class);
 
-    private static final String HOST_KEY = "host";
+    private final PropertyResolver propertyResolver;
 
-    private static final String PORT_KEY = "port";
+    private final Map<String, ServiceEndpointConfig> endpointConfigs;
 
-    private final PropertyValueProvider propertyValueProvider;
+    public PropertyServiceLocator(PropertyResolver propertyResolver) {
+        if (propertyResolver == null) {
+            throw new IllegalArgumentException("propertyResolver must be defined.");
+        }
+        this.propertyResolver = propertyResolver;
+        this.endpointConfigs = new ConcurrentHashMap<>();
+    }
 
     public PropertyServiceLocator(PropertyValueProvider propertyValueProvider) {
-        if (propertyValueProvider == null) {
-            throw new IllegalArgumentException("propertyValueProvider must be defined.");
-        }
-        this.propertyValueProvider = propertyValueProvider;
+        this(new PropertyResolver(propertyValueProvider));
     }
 
     @Override
@@ -61,14 +69,16 @@ public class PropertyServiceLocator implements ServiceLocator {
 
     @Override
     public Set<Service> getServiceByName(String name) {
-        String hostKey = name + "." + HOST_KEY;
-        String portKey = name + "." + PORT_KEY;
+        if (StringUtils.isBlank(name)) {
+            throw new IllegalArgumentException("name must be defined.");
+        }
+        ServiceEndpointConfig endpointConfig = endpointConfigs.computeIfAbsent(name, prefix -> propertyResolver.createProxy(ServiceEndpointConfig.class, prefix));
 
-        String host = propertyValueProvider.providePropertyValue(String.class, hostKey);
-        Integer port = propertyValueProvider.providePropertyValue(Integer.class, portKey);
+        String host = endpointConfig.host();
+        Integer port = endpointConfig.port();
 
-        if (StringUtils.isNotBlank(host) && port > 0) {
-            Service service = new Service(name, host, port);
+        if (StringUtils.isNotBlank(host) && port != null && port > 0) {
+            Service service = Service.of(name, host, port);
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("BrickEntity name '{} found under PropertyProvider : {}", name, service);
             }
@@ -77,4 +87,13 @@ public class PropertyServiceLocator implements ServiceLocator {
 
         return Collections.emptySet();
     }
+
+    interface ServiceEndpointConfig extends PropertyConfig {
+
+        @Key("host")
+        String host();
+
+        @Key("port")
+        Integer port();
+    }
 }
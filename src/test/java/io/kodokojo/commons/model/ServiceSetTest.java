@@ -0,0 +1,113 @@
+package io.kodokojo.commons.model;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ServiceSetTest {
+
+    @Test
+    public void services_with_same_values_are_equal() {
+        Service service = new Service("gitlab", "10.0.0.1", 8080, ServiceType.HTTP);
+
+        assertThat(service).isEqualTo(new Service("gitlab", "10.0.0.1", 8080, ServiceType.HTTP));
+        assertThat(service.hashCode()).isEqualTo(new Service("gitlab", "10.0.0.1", 8080, ServiceType.HTTP).hashCode());
+        assertThat(service).isNotEqualTo(new Service("gitlab", "10.0.0.1", 8081, ServiceType.HTTP));
+        assertThat(new HashSet<>(Arrays.asList(service, new Service("gitlab", "10.0.0.1", 8080, ServiceType.HTTP)))).hasSize(1);
+    }
+
+    @Test
+    public void of_return_canonical_instance() {
+        Service first = Service.of("gitlab", new String("10.0.0.1"), 8080, ServiceType.HTTP);
+        Service second = Service.of("gitlab", new String("10.0.0.1"), 8080, ServiceType.HTTP);
+        Service other = Service.of("jenkins", new String("10.0.0.1"), 8080, ServiceType.HTTP);
+
+        assertThat(second).isSameAs(first);
+        assertThat(other.getHost()).isSameAs(first.getHost());
+    }
+
+    @Test
+    public void deduplicate_and_lookup() {
+        Service gitlab1 = new Service("gitlab", "10.0.0.1", 8080);
+        Service gitlab2 = new Service("gitlab", "10.0.0.2", 8080);
+
+        ServiceSet services = ServiceSet.builder()
+                .add(gitlab1)
+                .add(gitlab2)
+                .add(new Service("gitlab", "10.0.0.1", 8080))
+                .build();
+
+        assertThat(services).hasSize(2).containsOnly(gitlab1, gitlab2);
+        assertThat(services.contains(new Service("gitlab", "10.0.0.2", 8080))).isTrue();
+        assertThat(services.contains(new Service("gitlab", "10.0.0.3", 8080))).isFalse();
+        assertThat(services).isEqualTo(new HashSet<>(Arrays.asList(gitlab1, gitlab2)));
+        assertThat(ServiceSet.copyOf(services)).isSameAs(services);
+        assertThat(ServiceSet.builder().build()).isSameAs(ServiceSet.empty());
+    }
+
+    @Test
+    public void is_immutable() {
+        ServiceSet services = ServiceSet.of(new Service("gitlab", "10.0.0.1", 8080));
+        try {
+            services.add(new Service("gitlab", "10.0.0.2", 8080));
+            fail("UnsupportedOperationException expected.");
+        } catch (UnsupportedOperationException e) {
+            assertThat(services).hasSize(1);
+        }
+        Iterator<Service> iterator = services.iterator();
+        iterator.next();
+        try {
+            iterator.remove();
+            fail("UnsupportedOperationException expected.");
+        } catch (UnsupportedOperationException e) {
+            assertThat(services).hasSize(1);
+        }
+    }
+
+    @Test
+    public void lookup_after_serialization() throws Exception {
+        Service gitlab = new Service("gitlab", "10.0.0.1", 8080, ServiceType.HTTP);
+        ServiceSet services = ServiceSet.of(gitlab, new Service("jenkins", "10.0.0.2", 8080, ServiceType.HTTP));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(services);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            ServiceSet read = (ServiceSet) in.readObject();
+            assertThat(read).isEqualTo(services);
+            assertThat(read.contains(gitlab)).isTrue();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.kodokojo.commons.utils.docker;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.github.dockerjava.api.DockerClient;
+import io.kodokojo.commons.config.DockerConfig;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DockerSupportTest {
+
+    @Test
+    public void docker_client_shared_until_closed() throws Exception {
+        DockerConfig dockerConfig = mock(DockerConfig.class);
+        when(dockerConfig.dockerServerUrl()).thenReturn("http://127.0.0.1:2375");
+        when(dockerConfig.dockerClientConnectTimeout()).thenReturn(5000);
+        when(dockerConfig.dockerClientMaxTotalConnections()).thenReturn(20);
+        when(dockerConfig.dockerClientMaxPerRouteConnections()).thenReturn(10);
+        DockerSupport dockerSupport = new DockerSupport(dockerConfig);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Set<DockerClient> clients = ConcurrentHashMap.newKeySet();
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?>[] futures = new Future<?>[8];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(() -> {
+                    start.await();
+                    return clients.add(dockerSupport.getDockerClient());
+                });
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            assertThat(clients).hasSize(1);
+            assertThat(dockerSupport.getDockerClient()).isSameAs(clients.iterator().next());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        dockerSupport.close();
+        try {
+            dockerSupport.getDockerClient();
+            fail("Closed DockerSupport must not create a new client.");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessageContaining("closed");
+        }
+    }
+
+}
@@ -22,11 +22,17 @@ package io.kodokojo.commons.utils.properties;
  * #L%
  */
 
+import io.kodokojo.commons.utils.properties.provider.JavaArgumentPropertyValueProvider;
+import io.kodokojo.commons.utils.properties.provider.OrderedMergedValueProvider;
+import io.kodokojo.commons.utils.properties.provider.PropertiesValueProvider;
 import io.kodokojo.commons.utils.properties.provider.PropertyValueProvider;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 
 import java.math.BigDecimal;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
@@ -89,6 +95,151 @@ public class PropertyResolverTest {
         assertThat(config.booleanValue()).isTrue();
     }
 
+    @Test
+    public void read_provider_until_first_refresh() {
+        Properties properties = new Properties();
+        PropertyResolver propertyResolver = new PropertyResolver(new PropertiesValueProvider(properties));
+        StackConfig config = propertyResolver.createProxy(StackConfig.class);
+
+        properties.setProperty("stack.name", "build-A");
+        assertThat(config.stackName()).isEqualTo("build-A");
+        assertThat(propertyResolver.currentGeneration()).isNull();
+
+        try (GenerationPin pin = propertyResolver.pin()) {
+            assertThat(pin.getGeneration()).isNull();
+        }
+    }
+
+    @Test
+    public void read_published_generation_until_next_refresh() {
+        Properties properties = new Properties();
+        properties.setProperty("stack.name", "build-A");
+        properties.setProperty("stack.type", "build");
+        PropertyResolver propertyResolver = new PropertyResolver(new PropertiesValueProvider(properties));
+        StackConfig config = propertyResolver.createProxy(StackConfig.class);
+
+        ConfigGeneration generation = propertyResolver.refresh();
+        assertThat(generation.getVersion()).isEqualTo(1);
+        assertThat(generation.getValues()).containsEntry("stack.name", "build-A").containsEntry("stack.type", "build");
+
+        properties.setProperty("stack.name", "build-B");
+        assertThat(config.stackName()).isEqualTo("build-A");
+
+        assertThat(propertyResolver.refresh().getVersion()).isEqualTo(2);
+        assertThat(config.stackName()).isEqualTo("build-B");
+    }
+
+    @Test
+    public void pinned_generation_stay_consistent_across_refresh() {
+        Properties properties = new Properties();
+        properties.setProperty("stack.name", "build-A");
+        properties.setProperty("stack.type", "build");
+        PropertyResolver propertyResolver = new PropertyResolver(new PropertiesValueProvider(properties));
+        StackConfig config = propertyResolver.createProxy(StackConfig.class);
+        propertyResolver.refresh();
+
+        try (GenerationPin pin = PropertyResolver.pin(config)) {
+            assertThat(pin.getGeneration().getVersion()).isEqualTo(1);
+            assertThat(config.stackName()).isEqualTo("build-A");
+
+            properties.setProperty("stack.name", "run-A");
+            properties.setProperty("stack.type", "run");
+            propertyResolver.refresh();
+
+            assertThat(config.stackType()).isEqualTo("build");
+            assertThat(config.stackName()).isEqualTo("build-A");
+        }
+        assertThat(config.stackType()).isEqualTo("run");
+        assertThat(config.stackName()).isEqualTo("run-A");
+    }
+
+    @Test
+    public void pin_config_not_created_by_resolver_do_nothing() {
+        try (GenerationPin pin = PropertyResolver.pin(new StackConfig() {
+            @Override
+            public String stackName() {
+                return "build-A";
+            }
+
+            @Override
+            public String stackType() {
+                return "build";
+            }
+        })) {
+            assertThat(pin.getGeneration()).isNull();
+        }
+    }
+
+    @Test
+    public void explain_report_each_provider_consulted() {
+        Properties properties = new Properties();
+        properties.setProperty("stack.name", "build-A");
+        LinkedList<PropertyValueProvider> valueProviders = new LinkedList<>();
+        valueProviders.add(new JavaArgumentPropertyValueProvider(new String[]{"--stack.type", "build"}));
+        valueProviders.add(new PropertiesValueProvider(properties));
+        PropertyResolver propertyResolver = new PropertyResolver(new OrderedMergedValueProvider(valueProviders));
+        propertyResolver.createProxy(DefaultValue.class);
+
+        PropertyTrace trace = propertyResolver.explain("stack.name");
+
+        assertThat(trace.getValue()).isEqualTo("build-A");
+        assertThat(trace.getDurationNanos()).isGreaterThanOrEqualTo(0);
+        List<PropertyTrace.Step> steps = trace.getSteps();
+        assertThat(steps).hasSize(3);
+        assertThat(steps.get(0).getSource()).isEqualTo("JavaArgumentPropertyValueProvider");
+        assertThat(steps.get(0).getOutcome()).isEqualTo(PropertyTrace.Outcome.MISS);
+        assertThat(steps.get(1).getSource()).isEqualTo("PropertiesValueProvider");
+        assertThat(steps.get(1).getOutcome()).isEqualTo(PropertyTrace.Outcome.HIT);
+        assertThat(steps.get(2).getSource()).isEqualTo("OrderedMergedValueProvider");
+        assertThat(steps.get(2).getOutcome()).isEqualTo(PropertyTrace.Outcome.HIT);
+
+        trace = propertyResolver.explain("int");
+        assertThat(trace.getValue()).isEqualTo(42);
+        assertThat(trace.getSteps()).extracting("outcome").contains(PropertyTrace.Outcome.DEFAULT_VALUE);
+        assertThat(PropertyTrace.current()).isNull();
+    }
+
+    @Test
+    public void sampled_traces_are_kept_in_ring_buffer_without_values() {
+        PropertyResolver propertyResolver = new PropertyResolver(new PropertiesValueProvider(new Properties()));
+        SimpleConfig config = propertyResolver.createProxy(SimpleConfig.class);
+        assertThat(propertyResolver.dumpSampledTraces()).isEmpty();
+
+        propertyResolver.enableSampling(1, 4);
+        for (int i = 0; i < 6; i++) {
+            config.value();
+        }
+
+        List<PropertyTrace> traces = propertyResolver.dumpSampledTraces();
+        assertThat(traces).hasSize(4);
+        assertThat(traces.get(0).getKey()).isEqualTo("maCle");
+        assertThat(traces.get(0).getValue()).isNull();
+        assertThat(traces.get(0).getSteps()).extracting("outcome").containsExactly(PropertyTrace.Outcome.MISS);
+
+        propertyResolver.disableSampling();
+        assertThat(propertyResolver.dumpSampledTraces()).isEmpty();
+    }
+
+    @Test
+    public void scoped_proxy_prefix_each_key() {
+        Properties properties = new Properties();
+        properties.setProperty("registry.stack.name", "build-A");
+        properties.setProperty("scm.stack.name", "build-B");
+        PropertyResolver propertyResolver = new PropertyResolver(new PropertiesValueProvider(properties));
+
+        StackConfig registry = propertyResolver.createProxy(StackConfig.class, "registry");
+        StackConfig scm = propertyResolver.createProxy(StackConfig.class, "scm.");
+
+        assertThat(registry.stackName()).isEqualTo("build-A");
+        assertThat(scm.stackName()).isEqualTo("build-B");
+        assertThat(registry.toString()).isEqualTo("StackConfig[registry]");
+
+        assertThat(propertyResolver.refresh().getValues()).containsOnlyKeys("registry.stack.name", "registry.stack.type", "scm.stack.name", "scm.stack.type");
+        properties.setProperty("registry.stack.name", "build-C");
+        assertThat(registry.stackName()).isEqualTo("build-A");
+        assertThat(propertyResolver.explain("registry.stack.name").getValue()).isEqualTo("build-C");
+    }
+
     interface SimpleConfig extends PropertyConfig {
         @Key("maCle")
         String value();
@@ -102,6 +253,14 @@ public class PropertyResolverTest {
         String valueFilledWithDefault();
     }
 
+    interface StackConfig extends PropertyConfig {
+        @Key("stack.name")
+        String stackName();
+
+        @Key("stack.type")
+        String stackType();
+    }
+
     interface DefaultValue extends PropertyConfig {
 
         @Key(value = "string", defaultValue = "string")
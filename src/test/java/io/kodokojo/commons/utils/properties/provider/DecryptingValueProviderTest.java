@@ -0,0 +1,103 @@
+package io.kodokojo.commons.utils.properties.provider;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.utils.RSAUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Base64;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class DecryptingValueProviderTest {
+
+    private SecretKey aesKey;
+
+    private Properties properties;
+
+    private DecryptingValueProvider decryptingValueProvider;
+
+    @Before
+    public void setup() throws Exception {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        aesKey = keyGenerator.generateKey();
+        properties = new Properties();
+        decryptingValueProvider = new DecryptingValueProvider(new PropertiesValueProvider(properties), aesKey);
+    }
+
+    @Test
+    public void decrypt_encrypted_value() {
+        properties.setProperty("password", encrypt("s3cr3t"));
+        properties.setProperty("port", encrypt("8500"));
+
+        assertThat(decryptingValueProvider.providePropertyValue(String.class, "password")).isEqualTo("s3cr3t");
+        assertThat(decryptingValueProvider.providePropertyValue(Integer.class, "port")).isEqualTo(8500);
+    }
+
+    @Test
+    public void return_clear_value_unchanged() {
+        properties.setProperty("host", "localhost");
+
+        assertThat(decryptingValueProvider.providePropertyValue(String.class, "host")).isEqualTo("localhost");
+        assertThat(decryptingValueProvider.providePropertyValue(String.class, "unknown")).isNull();
+    }
+
+    @Test
+    public void decrypt_with_key_read_by_rsa_utils() {
+        StringWriter writer = new StringWriter();
+        RSAUtils.writeAesKey(aesKey, writer);
+        SecretKey readKey = RSAUtils.readAesKey(new StringReader(writer.toString()));
+        properties.setProperty("password", encrypt("s3cr3t"));
+
+        DecryptingValueProvider provider = new DecryptingValueProvider(new PropertiesValueProvider(properties), readKey);
+
+        assertThat(provider.providePropertyValue(String.class, "password")).isEqualTo("s3cr3t");
+    }
+
+    @Test
+    public void invalid_ciphertext_is_rejected_and_next_value_still_decrypted() {
+        properties.setProperty("broken", "ENC(" + Base64.getEncoder().encodeToString("not encrypted".getBytes()) + ")");
+        properties.setProperty("password", encrypt("s3cr3t"));
+
+        try {
+            decryptingValueProvider.providePropertyValue(String.class, "broken");
+            fail("Expected an IllegalStateException.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("broken");
+        }
+        assertThat(decryptingValueProvider.providePropertyValue(String.class, "password")).isEqualTo("s3cr3t");
+    }
+
+    private String encrypt(String value) {
+        return "ENC(" + Base64.getEncoder().encodeToString(RSAUtils.encryptWithAES(aesKey, value)) + ")";
+    }
+
+}
@@ -0,0 +1,105 @@
+package io.kodokojo.commons.utils.properties.provider;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class InterpolatingValueProviderTest {
+
+    private Properties properties;
+
+    private InterpolatingValueProvider interpolatingValueProvider;
+
+    @Before
+    public void setup() {
+        properties = new Properties();
+        interpolatingValueProvider = new InterpolatingValueProvider(new PropertiesValueProvider(properties));
+    }
+
+    @Test
+    public void compile_template_with_distinct_references() {
+        InterpolatingValueProvider.Template template = InterpolatingValueProvider.Template.compile("${host}:${port}/${host}");
+
+        assertThat(template.references()).containsExactly("host", "port");
+        assertThat(template.render(new String[]{"localhost", "8080"})).isEqualTo("localhost:8080/localhost");
+    }
+
+    @Test
+    public void resolve_nested_references() {
+        properties.setProperty("domain", "kodokojo.io");
+        properties.setProperty("host", "consul.${domain}");
+        properties.setProperty("port", "8500");
+        properties.setProperty("url", "http://${host}:${port}");
+
+        assertThat(interpolatingValueProvider.providePropertyValue(String.class, "url")).isEqualTo("http://consul.kodokojo.io:8500");
+    }
+
+    @Test
+    public void keep_unknown_reference() {
+        properties.setProperty("url", "http://${unknown}/");
+
+        assertThat(interpolatingValueProvider.providePropertyValue(String.class, "url")).isEqualTo("http://${unknown}/");
+    }
+
+    @Test
+    public void convert_interpolated_value() {
+        properties.setProperty("base.port", "8000");
+        properties.setProperty("port", "${base.port}");
+
+        assertThat(interpolatingValueProvider.providePropertyValue(Integer.class, "port")).isEqualTo(8000);
+    }
+
+    @Test
+    public void render_again_only_when_upstream_value_change() {
+        properties.setProperty("host", "localhost");
+        properties.setProperty("url", "http://${host}");
+
+        String first = interpolatingValueProvider.providePropertyValue(String.class, "url");
+        String second = interpolatingValueProvider.providePropertyValue(String.class, "url");
+        assertThat(second).isSameAs(first);
+
+        properties.setProperty("host", "remote");
+        assertThat(interpolatingValueProvider.providePropertyValue(String.class, "url")).isEqualTo("http://remote");
+    }
+
+    @Test
+    public void detect_reference_cycle() {
+        properties.setProperty("a", "${b}");
+        properties.setProperty("b", "x${c}");
+        properties.setProperty("c", "${a}");
+
+        try {
+            interpolatingValueProvider.providePropertyValue(String.class, "a");
+            fail("Expected an IllegalStateException.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("a -> b -> c -> a");
+        }
+    }
+
+}
@@ -24,7 +24,9 @@ package io.kodokojo.commons.utils.properties.provider;
 
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Properties;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -64,4 +66,26 @@ public class OrderedMergedValueProviderTest {
 
     }
 
+    @Test
+    public void read_properties_in_batch_in_right_order() {
+        LinkedList<PropertyValueProvider> valueProviders = new LinkedList<>();
+
+        Properties properties = new Properties();
+        properties.setProperty(KEY, "value1");
+        valueProviders.add(new PropertiesValueProvider(properties));
+
+        properties = new Properties();
+        properties.setProperty(KEY, "value20");
+        properties.setProperty(KEY_2, "value21");
+        valueProviders.add(new PropertiesValueProvider(properties));
+
+        OrderedMergedValueProvider mergedValueProvider = new OrderedMergedValueProvider(valueProviders);
+
+        Map<String, String> values = mergedValueProvider.providePropertyValues(String.class, Arrays.asList(KEY, KEY_2, "unknown"));
+
+        assertThat(values).hasSize(2)
+                .containsEntry(KEY, "value1")
+                .containsEntry(KEY_2, "value21");
+    }
+
 }
\ No newline at end of file
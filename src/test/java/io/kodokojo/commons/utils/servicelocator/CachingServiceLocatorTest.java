@@ -0,0 +1,241 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CachingServiceLocatorTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void second_lookup_served_from_cache() {
+        CountingServiceLocator delegate = new CountingServiceLocator();
+        try (CachingServiceLocator serviceLocator = new CachingServiceLocator(delegate)) {
+
+            Set<Service> first = serviceLocator.getService("scm", "gitlab");
+            Set<Service> second = serviceLocator.getService("scm", "gitlab");
+
+            assertThat(first).hasSize(1);
+            assertThat(second).isSameAs(first);
+            assertThat(delegate.calls.get()).isEqualTo(1);
+
+            serviceLocator.getServiceByName("gitlab");
+            assertThat(delegate.calls.get()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void empty_result_expire_with_negative_ttl() throws InterruptedException {
+        CountingServiceLocator delegate = new CountingServiceLocator();
+        try (CachingServiceLocator serviceLocator = new CachingServiceLocator(delegate, 60000, 50, 16)) {
+
+            assertThat(serviceLocator.getServiceByType("unknown")).isEmpty();
+            assertThat(serviceLocator.getServiceByType("unknown")).isEmpty();
+            assertThat(delegate.calls.get()).isEqualTo(1);
+
+            Thread.sleep(80);
+
+            serviceLocator.getServiceByType("unknown");
+            assertThat(delegate.calls.get()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void refresh_ahead_in_background() throws InterruptedException {
+        CountingServiceLocator delegate = new CountingServiceLocator();
+        try (CachingServiceLocator serviceLocator = new CachingServiceLocator(delegate, 200, 50, 16)) {
+
+            serviceLocator.getServiceByName("gitlab");
+            Thread.sleep(170);
+            assertThat(serviceLocator.getServiceByName("gitlab")).hasSize(1);
+
+            long deadline = System.currentTimeMillis() + 2000;
+            while (delegate.calls.get() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(delegate.calls.get()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void empty_refresh_keep_current_services() throws InterruptedException {
+        CountingServiceLocator delegate = new CountingServiceLocator();
+        try (CachingServiceLocator serviceLocator = new CachingServiceLocator(delegate, 1000, 50, 16)) {
+
+            serviceLocator.getServiceByName("gitlab");
+            delegate.empty = true;
+            Thread.sleep(850);
+            serviceLocator.getServiceByName("gitlab");
+            waitForCalls(delegate, 2);
+            Thread.sleep(20);
+
+            assertThat(serviceLocator.getServiceByName("gitlab")).extracting("host").containsOnly("localhost");
+        }
+    }
+
+    @Test
+    public void failed_refresh_retried_once_per_interval() throws InterruptedException {
+        CountingServiceLocator delegate = new CountingServiceLocator();
+        try (CachingServiceLocator serviceLocator = new CachingServiceLocator(delegate, 1000, 50, 16)) {
+
+            serviceLocator.getServiceByName("gitlab");
+            delegate.failing = true;
+            Thread.sleep(810);
+            serviceLocator.getServiceByName("gitlab");
+            waitForCalls(delegate, 2);
+
+            long deadline = System.currentTimeMillis() + 100;
+            while (System.currentTimeMillis() < deadline) {
+                assertThat(serviceLocator.getServiceByName("gitlab")).hasSize(1);
+                Thread.sleep(5);
+            }
+            assertThat(delegate.calls.get()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void evict_least_recently_used() {
+        CountingServiceLocator delegate = new CountingServiceLocator();
+        try (CachingServiceLocator serviceLocator = new CachingServiceLocator(delegate, 60000, 60000, 2)) {
+
+            serviceLocator.getServiceByName("a");
+            serviceLocator.getServiceByName("b");
+            serviceLocator.getServiceByName("a");
+            serviceLocator.getServiceByName("c");
+
+            assertThat(serviceLocator.size()).isEqualTo(2);
+            serviceLocator.getServiceByName("a");
+            assertThat(delegate.calls.get()).isEqualTo(3);
+            serviceLocator.getServiceByName("b");
+            assertThat(delegate.calls.get()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    public void serve_stale_snapshot_after_restart_while_registry_is_down() throws Exception {
+        ServiceSnapshotFile snapshotFile = new ServiceSnapshotFile(tmpFolder.getRoot().toPath().resolve("discovery.snapshot"));
+        try (CachingServiceLocator serviceLocator = new CachingServiceLocator(new CountingServiceLocator(), snapshotFile)) {
+            serviceLocator.getServiceByName("gitlab");
+            serviceLocator.getServiceByType("unknown");
+        }
+
+        CountingServiceLocator down = new CountingServiceLocator();
+        down.failing = true;
+        try (CachingServiceLocator serviceLocator = new CachingServiceLocator(down, 200, 50, 16, snapshotFile, 60000, CachingServiceLocator.DEFAULT_MAX_STALE)) {
+            assertThat(serviceLocator.size()).isEqualTo(1);
+            assertThat(serviceLocator.isStale(ServiceQuery.byName("gitlab"))).isTrue();
+            assertThat(serviceLocator.getServiceByName("gitlab")).extracting("host").containsOnly("localhost");
+
+            waitForCalls(down, 1);
+            assertThat(serviceLocator.getServiceByName("gitlab")).hasSize(1);
+            assertThat(serviceLocator.isStale(ServiceQuery.byName("gitlab"))).isTrue();
+
+            down.failing = false;
+            long deadline = System.currentTimeMillis() + 2000;
+            while (serviceLocator.isStale(ServiceQuery.byName("gitlab")) && System.currentTimeMillis() < deadline) {
+                serviceLocator.getServiceByName("gitlab");
+                Thread.sleep(5);
+            }
+            assertThat(serviceLocator.isStale(ServiceQuery.byName("gitlab"))).isFalse();
+        }
+    }
+
+    @Test
+    public void stale_entries_written_again_keep_aging_from_their_load() throws Exception {
+        ServiceSnapshotFile snapshotFile = new ServiceSnapshotFile(tmpFolder.getRoot().toPath().resolve("discovery.snapshot"));
+        long loadedAt = System.currentTimeMillis() - 900;
+        snapshotFile.write(Collections.singletonMap(ServiceQuery.byName("gitlab"), Collections.singleton(new Service("gitlab", "localhost", 8080))),
+                Collections.singletonMap(ServiceQuery.byName("gitlab"), loadedAt), System.currentTimeMillis());
+        CountingServiceLocator down = new CountingServiceLocator();
+        down.failing = true;
+
+        try (CachingServiceLocator serviceLocator = new CachingServiceLocator(down, 1000, 1000, 10, snapshotFile, 60000, 1000)) {
+            assertThat(serviceLocator.isStale(ServiceQuery.byName("gitlab"))).isTrue();
+            serviceLocator.writeSnapshot();
+        }
+        assertThat(snapshotFile.read().getLoadedAt(ServiceQuery.byName("gitlab"))).isEqualTo(loadedAt);
+
+        Thread.sleep(Math.max(0, loadedAt + 1000 - System.currentTimeMillis()) + 10);
+        try (CachingServiceLocator serviceLocator = new CachingServiceLocator(down, 1000, 1000, 10, snapshotFile, 60000, 1000)) {
+            assertThat(serviceLocator.size()).isEqualTo(0);
+        }
+    }
+
+    /**
+     * Wait for the background refresh to reach <code>calls</code> delegate calls.
+     */
+    private static void waitForCalls(CountingServiceLocator delegate, int calls) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (delegate.calls.get() < calls && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(delegate.calls.get()).isGreaterThanOrEqualTo(calls);
+    }
+
+    private static class CountingServiceLocator implements ServiceLocator {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private volatile boolean failing;
+
+        private volatile boolean empty;
+
+        @Override
+        public Set<Service> getService(String type, String name) {
+            return getServiceByName(name);
+        }
+
+        @Override
+        public Set<Service> getServiceByType(String type) {
+            calls.incrementAndGet();
+            return Collections.emptySet();
+        }
+
+        @Override
+        public Set<Service> getServiceByName(String name) {
+            calls.incrementAndGet();
+            if (failing) {
+                throw new IllegalStateException("Registry unavailable");
+            }
+            if (empty) {
+                return Collections.emptySet();
+            }
+            Set<Service> res = new HashSet<>();
+            res.add(new Service(name, "localhost", 8080));
+            return res;
+        }
+    }
+
+}
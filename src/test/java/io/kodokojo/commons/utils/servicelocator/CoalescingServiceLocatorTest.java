@@ -0,0 +1,180 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class CoalescingServiceLocatorTest {
+
+    private static final int CALLERS = 20;
+
+    @Test
+    public void concurrent_identical_lookups_share_one_backend_call() throws Exception {
+        BlockingServiceLocator delegate = new BlockingServiceLocator(false);
+        CoalescingServiceLocator serviceLocator = new CoalescingServiceLocator(delegate);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<Set<Service>>> lookups = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                lookups.add(executor.submit(() -> serviceLocator.getService("scm", "gitlab")));
+            }
+            assertThat(delegate.started.await(2, TimeUnit.SECONDS)).isTrue();
+            waitForCallers();
+            delegate.release.countDown();
+
+            Set<Service> first = lookups.get(0).get(2, TimeUnit.SECONDS);
+            for (Future<Set<Service>> lookup : lookups) {
+                assertThat(lookup.get(2, TimeUnit.SECONDS)).isSameAs(first);
+            }
+            assertThat(delegate.calls.get()).isEqualTo(1);
+            assertThat(serviceLocator.inFlight()).isZero();
+
+            serviceLocator.getServiceByName("gitlab");
+            assertThat(delegate.calls.get()).isEqualTo(2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failure_is_shared_then_forgotten() throws Exception {
+        BlockingServiceLocator delegate = new BlockingServiceLocator(true);
+        CoalescingServiceLocator serviceLocator = new CoalescingServiceLocator(delegate);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Set<Service>> leader = executor.submit(() -> serviceLocator.getService("scm", "gitlab"));
+            assertThat(delegate.started.await(2, TimeUnit.SECONDS)).isTrue();
+            Future<Set<Service>> follower = executor.submit(() -> serviceLocator.getService("scm", "gitlab"));
+            waitForCallers();
+            delegate.release.countDown();
+
+            for (Future<Set<Service>> lookup : Arrays.asList(leader, follower)) {
+                try {
+                    lookup.get(2, TimeUnit.SECONDS);
+                    fail("Lookup should fail.");
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause()).isInstanceOf(IllegalStateException.class).hasMessage("Backend unavailable");
+                }
+            }
+            assertThat(delegate.calls.get()).isEqualTo(1);
+            assertThat(serviceLocator.inFlight()).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void async_api_exposed_only_for_async_delegates() throws Exception {
+        BlockingServiceLocator delegate = new BlockingServiceLocator(false);
+        assertThat(CoalescingServiceLocator.coalesce(delegate)).isNotInstanceOf(AsyncServiceLocator.class);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CoalescingServiceLocator serviceLocator = CoalescingServiceLocator.coalesce(new BlockingServiceLocatorAdapter(delegate, executor));
+            assertThat(serviceLocator).isInstanceOf(AsyncServiceLocator.class);
+            AsyncServiceLocator asyncServiceLocator = (AsyncServiceLocator) serviceLocator;
+
+            CompletableFuture<Set<Service>> leader = asyncServiceLocator.getServiceAsync("scm", "gitlab");
+            assertThat(delegate.started.await(2, TimeUnit.SECONDS)).isTrue();
+            CompletableFuture<Set<Service>> follower = asyncServiceLocator.getServiceAsync("scm", "gitlab");
+            assertThat(leader.isDone()).isFalse();
+            delegate.release.countDown();
+
+            assertThat(follower.get(2, TimeUnit.SECONDS)).isSameAs(leader.get(2, TimeUnit.SECONDS));
+            assertThat(delegate.calls.get()).isEqualTo(1);
+            assertThat(serviceLocator.inFlight()).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void async_coalescing_requires_async_delegate() {
+        new CoalescingAsyncServiceLocator(new BlockingServiceLocator(false));
+    }
+
+    /**
+     * Give followers the time to join the in flight lookup.
+     */
+    private static void waitForCallers() throws InterruptedException {
+        Thread.sleep(100);
+    }
+
+    private static class BlockingServiceLocator implements ServiceLocator {
+
+        private final boolean failing;
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private BlockingServiceLocator(boolean failing) {
+            this.failing = failing;
+        }
+
+        @Override
+        public Set<Service> getService(String type, String name) {
+            return getServiceByName(name);
+        }
+
+        @Override
+        public Set<Service> getServiceByType(String type) {
+            return getServiceByName(type);
+        }
+
+        @Override
+        public Set<Service> getServiceByName(String name) {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failing) {
+                throw new IllegalStateException("Backend unavailable");
+            }
+            return Collections.singleton(new Service(name, "10.0.0.1", 80));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MergedServiceLocatorTest {
+
+    @Test
+    public void parallel_lookup_return_partial_result_before_deadline() {
+        ServiceLocator fast = new FixedServiceLocator(new Service("gitlab", "10.0.0.1", 80), 0);
+        ServiceLocator slow = new FixedServiceLocator(new Service("gitlab", "10.0.0.2", 80), 5000);
+        ServiceLocator failing = new FixedServiceLocator(null, -1);
+
+        try (MergedServiceLocator serviceLocator = new MergedServiceLocator(Arrays.asList(fast, slow, failing), 200)) {
+            long start = System.currentTimeMillis();
+            ServiceLookupResult result = serviceLocator.lookup(ServiceQuery.byName("gitlab"));
+            long duration = System.currentTimeMillis() - start;
+
+            assertThat(duration).isLessThan(2000);
+            assertThat(result.getServices()).extracting("host").containsExactly("10.0.0.1");
+            assertThat(result.getTimedOut()).containsExactly(slow);
+            assertThat(result.getFailures()).containsOnlyKeys(failing);
+            assertThat(result.isComplete()).isFalse();
+        }
+    }
+
+    @Test
+    public void parallel_lookup_merge_all_locators() {
+        ServiceLocator first = new FixedServiceLocator(new Service("gitlab", "10.0.0.1", 80), 300);
+        ServiceLocator second = new FixedServiceLocator(new Service("gitlab", "10.0.0.2", 80), 300);
+
+        try (MergedServiceLocator serviceLocator = new MergedServiceLocator(Arrays.asList(first, second), 2000)) {
+            long start = System.currentTimeMillis();
+            Set<Service> services = serviceLocator.getServiceByName("gitlab");
+            long duration = System.currentTimeMillis() - start;
+
+            assertThat(services).extracting("host").containsOnly("10.0.0.1", "10.0.0.2");
+            assertThat(duration).isLessThan(600);
+        }
+    }
+
+    @Test
+    public void sequential_lookup_fails_when_no_locator_answered() {
+        ServiceLocator failing = new FixedServiceLocator(null, -1);
+        ServiceLocator answering = new FixedServiceLocator(new Service("gitlab", "10.0.0.1", 80), 0);
+        MergedServiceLocator serviceLocator = new MergedServiceLocator(new LinkedList<>(Arrays.asList(failing, answering)));
+
+        assertThat(serviceLocator.getServiceByName("gitlab")).extracting("host").containsOnly("10.0.0.1");
+        assertThat(serviceLocator.lookup(ServiceQuery.byName("gitlab")).getFailures()).containsOnlyKeys(failing);
+
+        MergedServiceLocator allFailing = new MergedServiceLocator(new LinkedList<>(Collections.singletonList(failing)));
+        try {
+            allFailing.getServiceByName("gitlab");
+            fail("Lookup should fail.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getSuppressed()).extracting("message").containsExactly("Backend unavailable");
+        }
+    }
+
+    @Test
+    public void sequential_lookup_return_null_when_nothing_found() {
+        ServiceLocator empty = new FixedServiceLocator(null, 0);
+        MergedServiceLocator serviceLocator = new MergedServiceLocator(new LinkedList<>(Collections.singletonList(empty)));
+
+        assertThat(serviceLocator.getServiceByName("gitlab")).isNull();
+    }
+
+    @Test
+    public void async_locators_are_merged_without_blocking() throws Exception {
+        AsyncFixedServiceLocator answering = new AsyncFixedServiceLocator();
+        AsyncFixedServiceLocator silent = new AsyncFixedServiceLocator();
+        ServiceLocator blocking = new FixedServiceLocator(new Service("gitlab", "10.0.0.3", 80), 0);
+
+        try (MergedServiceLocator serviceLocator = new MergedServiceLocator(Arrays.asList(answering, silent, blocking), 300)) {
+            CompletableFuture<ServiceLookupResult> lookup = serviceLocator.lookupAsync(ServiceQuery.byName("gitlab"));
+
+            assertThat(lookup.isDone()).isFalse();
+            answering.future.complete(Collections.singleton(new Service("gitlab", "10.0.0.1", 80)));
+
+            ServiceLookupResult result = lookup.get(2, TimeUnit.SECONDS);
+            assertThat(result.getServices()).extracting("host").containsOnly("10.0.0.1", "10.0.0.3");
+            assertThat(result.getTimedOut()).containsExactly(silent);
+            assertThat(result.getFailures()).isEmpty();
+            //  Late lookups are cancelled before the result completes.
+            assertThat(silent.future.isCancelled()).isTrue();
+        }
+    }
+
+    @Test
+    public void blocking_adapter_run_lookup_on_executor() throws Exception {
+        ServiceLocator blocking = new FixedServiceLocator(new Service("gitlab", "10.0.0.1", 80), 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            BlockingServiceLocatorAdapter adapter = new BlockingServiceLocatorAdapter(blocking, executor);
+
+            assertThat(adapter.getServiceByNameAsync("gitlab").get(2, TimeUnit.SECONDS)).extracting("host").containsOnly("10.0.0.1");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void blocking_adapter_fail_lookup_on_error() throws Exception {
+        ServiceLocator broken = mock(ServiceLocator.class);
+        when(broken.getServiceByName("gitlab")).thenThrow(new NoClassDefFoundError("Backend client"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<Set<Service>> lookup = new BlockingServiceLocatorAdapter(broken, executor).getServiceByNameAsync("gitlab");
+
+            try {
+                lookup.get(2, TimeUnit.SECONDS);
+                fail("Lookup should fail.");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(NoClassDefFoundError.class);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class AsyncFixedServiceLocator implements ServiceLocator, AsyncServiceLocator {
+
+        private final CompletableFuture<Set<Service>> future = new CompletableFuture<>();
+
+        @Override
+        public Set<Service> getService(String type, String name) {
+            return future.join();
+        }
+
+        @Override
+        public Set<Service> getServiceByType(String type) {
+            return future.join();
+        }
+
+        @Override
+        public Set<Service> getServiceByName(String name) {
+            return future.join();
+        }
+
+        @Override
+        public CompletableFuture<Set<Service>> getServiceAsync(String type, String name) {
+            return future;
+        }
+
+        @Override
+        public CompletableFuture<Set<Service>> getServiceByTypeAsync(String type) {
+            return future;
+        }
+
+        @Override
+        public CompletableFuture<Set<Service>> getServiceByNameAsync(String name) {
+            return future;
+        }
+    }
+
+    private static class FixedServiceLocator implements ServiceLocator {
+
+        private final Service service;
+
+        private final long latency;
+
+        private FixedServiceLocator(Service service, long latency) {
+            this.service = service;
+            this.latency = latency;
+        }
+
+        @Override
+        public Set<Service> getService(String type, String name) {
+            return getServiceByName(name);
+        }
+
+        @Override
+        public Set<Service> getServiceByType(String type) {
+            return getServiceByName(type);
+        }
+
+        @Override
+        public Set<Service> getServiceByName(String name) {
+            if (latency < 0) {
+                throw new IllegalStateException("Backend unavailable");
+            }
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Collections.emptySet();
+            }
+            return service == null ? Collections.emptySet() : new HashSet<>(Collections.singleton(service));
+        }
+    }
+
+}
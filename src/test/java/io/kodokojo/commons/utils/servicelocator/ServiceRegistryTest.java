@@ -0,0 +1,132 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServiceRegistryTest {
+
+    private static final Service GITLAB_1 = new Service("gitlab", "10.0.0.1", 8080);
+
+    private static final Service GITLAB_2 = new Service("gitlab", "10.0.0.2", 8080);
+
+    private static final Service JENKINS = new Service("jenkins", "10.0.0.3", 8080);
+
+    @Test
+    public void lookup_by_each_dimension() {
+        ServiceRegistry registry = new ServiceRegistry();
+        registry.register("consul:gitlab", new ServiceRegistry.Registration("acme", "build-A", "scm", "gitlab", Arrays.asList(GITLAB_1, GITLAB_2)));
+        registry.register("consul:jenkins", new ServiceRegistry.Registration("acme", "build-B", "ci", "jenkins", Collections.singletonList(JENKINS)));
+
+        assertThat(registry.getService("scm", "gitlab")).containsOnly(GITLAB_1, GITLAB_2);
+        assertThat(registry.getService("ci", "gitlab")).isNull();
+        assertThat(registry.getServiceByType("ci")).containsOnly(JENKINS);
+        assertThat(registry.getServiceByName("gitlab")).containsOnly(GITLAB_1, GITLAB_2);
+        assertThat(registry.getServiceByProject("acme")).containsOnly(GITLAB_1, GITLAB_2, JENKINS);
+        assertThat(registry.getServiceByStack("build-B")).containsOnly(JENKINS);
+        assertThat(registry.getServiceByType("repository")).isEmpty();
+        assertThat(registry.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void missing_services_follow_service_locator_contract() {
+        ServiceRegistry registry = new ServiceRegistry();
+        registry.register("consul:gitlab", new ServiceRegistry.Registration("acme", "build-A", "scm", "gitlab", Collections.singletonList(GITLAB_1)));
+
+        assertThat(registry.getService("scm", "jenkins")).isNull();
+        assertThat(registry.getService("ci", "jenkins")).isNull();
+        assertThat(registry.getServiceByType("ci")).isNotNull().isEmpty();
+        assertThat(registry.getServiceByName("jenkins")).isNotNull().isEmpty();
+        assertThat(registry.getServiceByProject("other")).isNotNull().isEmpty();
+        assertThat(registry.getServiceByStack("build-B")).isNotNull().isEmpty();
+    }
+
+    @Test
+    public void register_replace_only_source_entries() {
+        ServiceRegistry registry = new ServiceRegistry();
+        registry.register("consul:gitlab", new ServiceRegistry.Registration("acme", "build-A", "scm", "gitlab", Arrays.asList(GITLAB_1, GITLAB_2)));
+        registry.register("consul:jenkins", new ServiceRegistry.Registration("acme", "build-A", "ci", "jenkins", Collections.singletonList(JENKINS)));
+
+        registry.register("consul:gitlab", new ServiceRegistry.Registration("acme", "build-A", "scm", "gitlab", Collections.singletonList(GITLAB_2)));
+
+        assertThat(registry.getService("scm", "gitlab")).containsOnly(GITLAB_2);
+        assertThat(registry.getServiceByStack("build-A")).containsOnly(GITLAB_2, JENKINS);
+        assertThat(registry.size()).isEqualTo(2);
+
+        registry.unregister("consul:gitlab");
+
+        assertThat(registry.getService("scm", "gitlab")).isNull();
+        assertThat(registry.getServiceByType("scm")).isEmpty();
+        assertThat(registry.getServiceByProject("acme")).containsOnly(JENKINS);
+        assertThat(registry.getSources()).containsOnly("consul:jenkins");
+    }
+
+    @Test
+    public void unregister_keep_equal_service_registered_by_another_source() {
+        ServiceRegistry registry = new ServiceRegistry();
+        registry.register("consul:gitlab", new ServiceRegistry.Registration("acme", "build-A", "scm", "gitlab", Collections.singletonList(GITLAB_1)));
+        registry.register("marathon:acme", new ServiceRegistry.Registration("acme", "build-A", "scm", "gitlab", Collections.singletonList(new Service("gitlab", "10.0.0.1", 8080))));
+
+        assertThat(registry.getService("scm", "gitlab")).containsOnly(GITLAB_1);
+
+        registry.unregister("consul:gitlab");
+
+        assertThat(registry.getService("scm", "gitlab")).containsOnly(GITLAB_1);
+        assertThat(registry.getServiceByProject("acme")).containsOnly(GITLAB_1);
+    }
+
+    @Test
+    public void retain_sources_of_one_backend() {
+        ServiceRegistry registry = new ServiceRegistry();
+        registry.register("marathon:/acme/gitlab", new ServiceRegistry.Registration("acme", null, "scm", "acme", Collections.singletonList(GITLAB_1)));
+        registry.register("marathon:/acme/jenkins", new ServiceRegistry.Registration("acme", null, "ci", "acme", Collections.singletonList(JENKINS)));
+        registry.register("consul:gitlab", new ServiceRegistry.Registration("acme", null, "scm", "gitlab", Collections.singletonList(GITLAB_2)));
+
+        registry.retainSources("marathon:", new HashSet<>(Collections.singletonList("marathon:/acme/jenkins")));
+
+        assertThat(registry.getSources()).containsOnly("marathon:/acme/jenkins", "consul:gitlab");
+        assertThat(registry.getServiceByType("scm")).containsOnly(GITLAB_2);
+    }
+
+    @Test
+    public void retain_sources_keep_equal_service_of_another_backend() {
+        ServiceRegistry registry = new ServiceRegistry();
+        registry.register("marathon:/acme/gitlab", new ServiceRegistry.Registration("acme", "build-A", "scm", "gitlab", Collections.singletonList(GITLAB_1)));
+        registry.register("consul:gitlab", new ServiceRegistry.Registration("acme", "build-A", "scm", "gitlab", Collections.singletonList(new Service("gitlab", "10.0.0.1", 8080))));
+
+        registry.retainSources("marathon:", Collections.emptySet());
+
+        assertThat(registry.getSources()).containsOnly("consul:gitlab");
+        assertThat(registry.getService("scm", "gitlab")).containsOnly(GITLAB_1);
+        assertThat(registry.getServiceByStack("build-A")).containsOnly(GITLAB_1);
+        assertThat(registry.size()).isEqualTo(1);
+    }
+
+}
@@ -0,0 +1,78 @@
+package io.kodokojo.commons.utils.servicelocator;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.model.ServiceSet;
+import io.kodokojo.commons.model.ServiceType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServiceSnapshotFileTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void write_then_read() throws Exception {
+        Path path = tmpFolder.getRoot().toPath().resolve("snapshot/discovery.snapshot");
+        ServiceSnapshotFile snapshotFile = new ServiceSnapshotFile(path);
+        Map<ServiceQuery, Set<Service>> services = new LinkedHashMap<>();
+        services.put(ServiceQuery.byTypeAndName("scm", "gitlab"), ServiceSet.of(
+                new Service("gitlab", "10.0.0.1", 80, ServiceType.HTTP),
+                new Service("gitlab", "10.0.0.1", 22, ServiceType.SSH)));
+        services.put(ServiceQuery.byType("ci"), ServiceSet.of(new Service("jenkins", "10.0.0.2", 8080, null)));
+
+        snapshotFile.write(services, 42);
+        ServiceSnapshotFile.Snapshot snapshot = snapshotFile.read();
+
+        assertThat(snapshot.getWrittenAt()).isEqualTo(42);
+        assertThat(snapshot.getServices()).isEqualTo(services);
+        assertThat(snapshot.getLoadedAt(ServiceQuery.byType("ci"))).isEqualTo(42);
+        assertThat(snapshot.getLoadedAt(ServiceQuery.byName("nexus"))).isEqualTo(-1);
+        try (Stream<Path> files = Files.list(path.getParent())) {
+            assertThat(files.count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void missing_or_corrupted_file_is_ignored() throws Exception {
+        Path path = tmpFolder.getRoot().toPath().resolve("discovery.snapshot");
+        ServiceSnapshotFile snapshotFile = new ServiceSnapshotFile(path);
+
+        assertThat(snapshotFile.read()).isNull();
+
+        Files.write(path, new byte[]{0x4b, 0x44, 0x53, 0x53, 1, 0, 0});
+        assertThat(snapshotFile.read()).isNull();
+    }
+}
@@ -0,0 +1,179 @@
+package io.kodokojo.commons.utils.servicelocator.balancer;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LoadBalancerTest {
+
+    private static final ServiceQuery QUERY = ServiceQuery.byName("gitlab");
+
+    @Test
+    public void round_robin_spread_requests_evenly() {
+        LoadBalancer loadBalancer = new LoadBalancer(locatorOf(services(3)), QUERY, LoadBalancingStrategies.roundRobin());
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            Endpoint endpoint = loadBalancer.choose();
+            counts.merge(endpoint.getService().getHost(), 1, Integer::sum);
+            endpoint.release();
+        }
+
+        assertThat(counts.values()).containsOnly(100);
+    }
+
+    @Test
+    public void least_outstanding_avoid_busy_endpoint() {
+        LoadBalancer loadBalancer = new LoadBalancer(locatorOf(services(2)), QUERY, LoadBalancingStrategies.leastOutstanding());
+        Endpoint busy = loadBalancer.choose();
+
+        for (int i = 0; i < 50; i++) {
+            Endpoint endpoint = loadBalancer.choose();
+            assertThat(endpoint).isNotSameAs(busy);
+            endpoint.release();
+        }
+    }
+
+    @Test
+    public void consistent_hash_move_few_keys_when_endpoint_added() {
+        ServiceLocator serviceLocator = mock(ServiceLocator.class);
+        Set<Service> services = services(4);
+        when(serviceLocator.getServiceByName("gitlab")).thenReturn(services);
+        LoadBalancer loadBalancer = new LoadBalancer(serviceLocator, QUERY, LoadBalancingStrategies.consistentHash());
+
+        Map<String, String> before = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            String key = "user-" + i;
+            Endpoint endpoint = loadBalancer.choose(key);
+            assertThat(loadBalancer.choose(key)).isSameAs(endpoint);
+            before.put(key, endpoint.getService().getHost());
+        }
+
+        Set<Service> moreServices = new HashSet<>(services);
+        moreServices.add(new Service("gitlab", "10.0.0.99", 8080));
+        when(serviceLocator.getServiceByName("gitlab")).thenReturn(moreServices);
+        loadBalancer.refresh();
+
+        int moved = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            String host = loadBalancer.choose(entry.getKey()).getService().getHost();
+            if (!host.equals(entry.getValue())) {
+                assertThat(host).isEqualTo("10.0.0.99");
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(100, 350);
+    }
+
+    @Test
+    public void refresh_keep_outstanding_of_remaining_endpoints() {
+        ServiceLocator serviceLocator = mock(ServiceLocator.class);
+        when(serviceLocator.getServiceByName("gitlab")).thenReturn(services(1));
+        LoadBalancer loadBalancer = new LoadBalancer(serviceLocator, QUERY, LoadBalancingStrategies.random());
+        Endpoint endpoint = loadBalancer.choose();
+
+        when(serviceLocator.getServiceByName("gitlab")).thenReturn(services(1));
+        loadBalancer.refresh();
+
+        assertThat(loadBalancer.getEndpoints()).containsExactly(endpoint);
+        assertThat(endpoint.getOutstanding()).isEqualTo(1);
+
+        when(serviceLocator.getServiceByName("gitlab")).thenReturn(null);
+        loadBalancer.refresh();
+        assertThat(loadBalancer.getEndpoints()).containsExactly(endpoint);
+    }
+
+    @Test
+    public void refresh_compare_services_by_value() {
+        ServiceLocator serviceLocator = mock(ServiceLocator.class);
+        when(serviceLocator.getServiceByName("gitlab")).thenReturn(services(1));
+        LoadBalancer loadBalancer = new LoadBalancer(serviceLocator, QUERY, LoadBalancingStrategies.random());
+        Endpoint endpoint = loadBalancer.choose();
+
+        when(serviceLocator.getServiceByName("gitlab")).thenReturn(Collections.singleton(new Service("gitlab-ssh", "10.0.0.1", 8080)));
+        loadBalancer.refresh();
+
+        assertThat(loadBalancer.getEndpoints()).hasSize(1).doesNotContain(endpoint);
+        assertThat(loadBalancer.getEndpoints()[0].getOutstanding()).isZero();
+    }
+
+    @Test
+    public void empty_answer_drop_endpoints_only_when_configured() {
+        ServiceLocator serviceLocator = mock(ServiceLocator.class);
+        when(serviceLocator.getServiceByName("gitlab")).thenReturn(services(2));
+        LoadBalancer keeping = new LoadBalancer(serviceLocator, QUERY, LoadBalancingStrategies.roundRobin(), Long.MAX_VALUE);
+        LoadBalancer dropping = new LoadBalancer(serviceLocator, QUERY, LoadBalancingStrategies.roundRobin(), Long.MAX_VALUE, false);
+        assertThat(keeping.getEndpoints()).hasSize(2);
+        assertThat(dropping.getEndpoints()).hasSize(2);
+
+        when(serviceLocator.getServiceByName("gitlab")).thenReturn(Collections.emptySet());
+        keeping.refresh();
+        dropping.refresh();
+
+        assertThat(keeping.choose()).isNotNull();
+        assertThat(dropping.choose()).isNull();
+    }
+
+    @Test
+    public void choose_does_not_allocate() {
+        LoadBalancer loadBalancer = new LoadBalancer(locatorOf(services(5)), QUERY, LoadBalancingStrategies.leastOutstanding(), Long.MAX_VALUE);
+        for (int i = 0; i < 20000; i++) {
+            loadBalancer.choose().release();
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; i++) {
+            loadBalancer.choose().release();
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertThat(allocated).isLessThan(4096);
+    }
+
+    private static ServiceLocator locatorOf(Set<Service> services) {
+        ServiceLocator serviceLocator = mock(ServiceLocator.class);
+        when(serviceLocator.getServiceByName("gitlab")).thenReturn(services);
+        return serviceLocator;
+    }
+
+    private static Set<Service> services(int count) {
+        Set<Service> res = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            res.add(new Service("gitlab", "10.0.0." + (i + 1), 8080));
+        }
+        return res;
+    }
+
+}
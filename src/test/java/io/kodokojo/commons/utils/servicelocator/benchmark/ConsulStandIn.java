@@ -0,0 +1,117 @@
+package io.kodokojo.commons.utils.servicelocator.benchmark;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Answer the Consul <code>/v1/catalog/services</code> and <code>/v1/health/service/{name}</code> endpoints for the
+ * components of a {@link Topology}, all tagged with the stack of project <code>acme</code>.
+ */
+class ConsulStandIn extends HttpStandIn {
+
+    static final String PROJECT = "acme";
+
+    static final String STACK_NAME = "build";
+
+    static final String STACK_TYPE = "ci";
+
+    private static final Pattern FILTER_TAG = Pattern.compile("\"([^\"]*)\" in ServiceTags");
+
+    private static final String HEALTH_PATH = "/v1/health/service/";
+
+    private final Map<String, Set<String>> tags = new HashMap<>();
+
+    private final Map<String, String> health = new HashMap<>();
+
+    private final Map<String, String> catalogs = new ConcurrentHashMap<>();
+
+    ConsulStandIn(Topology topology, int threads) throws IOException {
+        super(threads);
+        for (int component = 0; component < topology.size(); component++) {
+            String name = topology.name(component);
+            tags.put(name, new LinkedHashSet<>(Arrays.asList(
+                    "kodokojo-projectName=" + PROJECT,
+                    "kodokojo-stackName=" + STACK_NAME,
+                    "kodokojo-stackType=" + STACK_TYPE,
+                    "kodokojo-componentName=" + name,
+                    "kodokojo-componentType=" + topology.type(component))));
+            StringBuilder sb = new StringBuilder("[");
+            for (int instance = 0; instance < Topology.INSTANCES; instance++) {
+                if (instance > 0) {
+                    sb.append(',');
+                }
+                sb.append("{\"Node\":{\"Address\":\"").append(topology.host(component, instance)).append("\"},")
+                        .append("\"Service\":{\"Address\":\"\",\"Port\":").append(topology.port(component, instance))
+                        .append(",\"Tags\":").append(json(tags.get(name))).append("},\"Checks\":[]}");
+            }
+            health.put(name, sb.append(']').toString());
+        }
+        route("/v1/catalog/services", exchange -> {
+            String filter = queryParameters(exchange, "filter").stream().findFirst().orElse("");
+            return catalogs.computeIfAbsent(filter, this::catalog);
+        });
+        route(HEALTH_PATH, exchange -> {
+            String name = exchange.getRequestURI().getPath().substring(HEALTH_PATH.length());
+            Set<String> serviceTags = tags.get(name);
+            if (serviceTags == null || !serviceTags.containsAll(queryParameters(exchange, "tag"))) {
+                return "[]";
+            }
+            return health.get(name);
+        });
+        start();
+    }
+
+    private String catalog(String filter) {
+        List<String> required = new ArrayList<>();
+        Matcher matcher = FILTER_TAG.matcher(filter);
+        while (matcher.find()) {
+            required.add(matcher.group(1));
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<String, Set<String>> entry : tags.entrySet()) {
+            if (entry.getValue().containsAll(required)) {
+                if (sb.length() > 1) {
+                    sb.append(',');
+                }
+                sb.append('"').append(entry.getKey()).append("\":").append(json(entry.getValue()));
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String json(Collection<String> values) {
+        StringBuilder sb = new StringBuilder("[");
+        for (String value : values) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append('"').append(value).append('"');
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,148 @@
+package io.kodokojo.commons.utils.servicelocator.benchmark;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.EventsCmd;
+import com.github.dockerjava.api.command.ListContainersCmd;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Filters;
+import com.github.dockerjava.core.command.EventsResultCallback;
+import io.kodokojo.commons.utils.docker.DockerSupport;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * {@link DockerSupport} whose client lists the containers of a {@link Topology}, filtered on labels like the Docker
+ * daemon does. Each listing gets its own command so concurrent lookups don't share filters.
+ */
+class DockerStandIn {
+
+    static final String DOCKER_HOST = "localhost";
+
+    private final List<Container> containers = new ArrayList<>();
+
+    private final List<Set<String>> labels = new ArrayList<>();
+
+    private final DockerSupport dockerSupport;
+
+    private volatile long latency;
+
+    private volatile double failureRate;
+
+    DockerStandIn(Topology topology) {
+        for (int component = 0; component < topology.size(); component++) {
+            for (int instance = 0; instance < Topology.INSTANCES; instance++) {
+                Map<String, String> containerLabels = new HashMap<>();
+                containerLabels.put("kodokojo-projectName", ConsulStandIn.PROJECT);
+                containerLabels.put("kodokojo-stackName", ConsulStandIn.STACK_NAME);
+                containerLabels.put("kodokojo-stackType", ConsulStandIn.STACK_TYPE);
+                containerLabels.put("kodokojo-componentName", topology.name(component));
+                containerLabels.put("kodokojo-componentType", topology.type(component));
+                Container.Port port = mock(Container.Port.class, withSettings().stubOnly());
+                when(port.getPublicPort()).thenReturn(topology.port(component, instance));
+                Container container = mock(Container.class, withSettings().stubOnly());
+                when(container.getId()).thenReturn(topology.name(component) + "." + instance);
+                when(container.getLabels()).thenReturn(containerLabels);
+                when(container.getPorts()).thenReturn(new Container.Port[]{port});
+                containers.add(container);
+                Set<String> keyValues = new HashSet<>();
+                containerLabels.forEach((key, value) -> keyValues.add(key + "=" + value));
+                labels.add(keyValues);
+            }
+        }
+        EventsCmd eventsCmd = mock(EventsCmd.class, withSettings().stubOnly());
+        when(eventsCmd.withFilters(any(Filters.class))).thenReturn(eventsCmd);
+        when(eventsCmd.exec(any(EventsResultCallback.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
+        DockerClient dockerClient = mock(DockerClient.class, withSettings().stubOnly());
+        when(dockerClient.listContainersCmd()).thenAnswer(invocation -> listContainersCmd());
+        when(dockerClient.eventsCmd()).thenReturn(eventsCmd);
+        dockerSupport = mock(DockerSupport.class, withSettings().stubOnly());
+        when(dockerSupport.getDockerClient()).thenReturn(dockerClient);
+        when(dockerSupport.getDockerHost()).thenReturn(DOCKER_HOST);
+    }
+
+    DockerSupport getDockerSupport() {
+        return dockerSupport;
+    }
+
+    /**
+     * @param latency Time in milliseconds added to each listing.
+     */
+    void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @param failureRate Ratio of listings failing, between 0 and 1.
+     */
+    void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    private ListContainersCmd listContainersCmd() {
+        List<String> required = new ArrayList<>();
+        return (ListContainersCmd) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ListContainersCmd.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "withFilters":
+                    List<String> filter = ((Filters) args[0]).getFilter("label");
+                    if (filter != null) {
+                        required.addAll(filter);
+                    }
+                    return proxy;
+                case "exec":
+                    return list(required);
+                case "close":
+                    return null;
+                case "toString":
+                    return "ListContainersCmd" + required;
+                default:
+                    if (method.getReturnType().isInstance(proxy)) {
+                        return proxy;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private List<Container> list(List<String> required) throws InterruptedException {
+        if (latency > 0) {
+            Thread.sleep(latency);
+        }
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            throw new IllegalStateException("Docker daemon unavailable.");
+        }
+        List<Container> res = new ArrayList<>();
+        for (int i = 0; i < containers.size(); i++) {
+            if (labels.get(i).containsAll(required)) {
+                res.add(containers.get(i));
+            }
+        }
+        return res;
+    }
+}
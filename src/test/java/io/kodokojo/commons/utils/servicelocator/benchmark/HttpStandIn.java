@@ -0,0 +1,144 @@
+package io.kodokojo.commons.utils.servicelocator.benchmark;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * In-process HTTP server standing for a discovery backend, with configurable latency and failure rate.
+ */
+abstract class HttpStandIn implements Closeable {
+
+    static {
+        //  Headers and body are written separately, Nagle would delay each response until the client ack.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private volatile long latency;
+
+    private volatile double failureRate;
+
+    HttpStandIn(int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+    }
+
+    interface Handler {
+        /**
+         * @return The json body.
+         */
+        String respond(HttpExchange exchange) throws IOException;
+    }
+
+    protected void route(String path, Handler handler) {
+        server.createContext(path, exchange -> {
+            try {
+                if (latency > 0) {
+                    Thread.sleep(latency);
+                }
+                if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                    exchange.sendResponseHeaders(500, -1);
+                    return;
+                }
+                byte[] bytes = handler.respond(exchange).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    void start() {
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @param latency Time in milliseconds added to each response.
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @param failureRate Ratio of requests answered with a 500, between 0 and 1.
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * @return Decoded values of the <code>name</code> query parameter.
+     */
+    static List<String> queryParameters(HttpExchange exchange, String name) throws UnsupportedEncodingException {
+        List<String> res = new ArrayList<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equal = parameter.indexOf('=');
+                if (equal > 0 && parameter.substring(0, equal).equals(name)) {
+                    res.add(URLDecoder.decode(parameter.substring(equal + 1), "UTF-8"));
+                }
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
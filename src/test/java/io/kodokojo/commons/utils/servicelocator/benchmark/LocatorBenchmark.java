@@ -0,0 +1,302 @@
+package io.kodokojo.commons.utils.servicelocator.benchmark;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Closed loop load on a {@link ServiceLocator}: each thread runs the queries round robin, without think time, during a
+ * warmup then a measured period. Latencies are kept in full and sorted at the end, allocation is read from the JVM
+ * per thread allocation counter when available.
+ */
+class LocatorBenchmark {
+
+    private final int threads;
+
+    private final long warmup;
+
+    private final long duration;
+
+    /**
+     * @param warmup   Time in milliseconds before measuring.
+     * @param duration Time in milliseconds measured.
+     */
+    LocatorBenchmark(int threads, long warmup, long duration) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be upper than 0.");
+        }
+        if (warmup < 0) {
+            throw new IllegalArgumentException("warmup must be positive.");
+        }
+        if (duration <= 0) {
+            throw new IllegalArgumentException("duration must be upper than 0.");
+        }
+        this.threads = threads;
+        this.warmup = warmup;
+        this.duration = duration;
+    }
+
+    Result run(String name, ServiceLocator serviceLocator, List<ServiceQuery> queries) throws InterruptedException {
+        if (serviceLocator == null) {
+            throw new IllegalArgumentException("serviceLocator must be defined.");
+        }
+        if (queries == null || queries.isEmpty()) {
+            throw new IllegalArgumentException("queries must be defined.");
+        }
+        ServiceQuery[] loop = queries.toArray(new ServiceQuery[queries.size()]);
+        Window window = new Window();
+        //  Warmup start once each thread did a first lookup, which may be slow while classes are loaded.
+        CyclicBarrier started = new CyclicBarrier(threads, () -> {
+            window.from = System.nanoTime() + warmup * 1_000_000L;
+            window.until = window.from + duration * 1_000_000L;
+        });
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(serviceLocator, loop, i, started, window);
+            workers[i].setName("benchmark-" + name + "-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        return Result.of(name, workers);
+    }
+
+    private static class Window {
+
+        private volatile long from;
+
+        private volatile long until;
+    }
+
+    private static class Worker extends Thread {
+
+        private static final int ERROR = -1;
+
+        private static final int MISS = 0;
+
+        private static final int FOUND = 1;
+
+        private final ServiceLocator serviceLocator;
+
+        private final ServiceQuery[] queries;
+
+        private final CyclicBarrier started;
+
+        private final Window window;
+
+        private int next;
+
+        private long[] latencies = new long[1 << 14];
+
+        private int ops;
+
+        private long errors;
+
+        private long misses;
+
+        private long allocated = -1;
+
+        private long elapsed;
+
+        private Worker(ServiceLocator serviceLocator, ServiceQuery[] queries, int offset, CyclicBarrier started, Window window) {
+            this.serviceLocator = serviceLocator;
+            this.queries = queries;
+            this.next = offset % queries.length;
+            this.started = started;
+            this.window = window;
+        }
+
+        @Override
+        public void run() {
+            lookup();
+            try {
+                started.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (BrokenBarrierException e) {
+                return;
+            }
+            long measureFrom = window.from;
+            long measureUntil = window.until;
+            while (System.nanoTime() < measureFrom) {
+                lookup();
+            }
+            long allocatedBefore = allocatedBytes();
+            //  Each thread measure at least one lookup, even slower than the measured period.
+            long measuredFrom = System.nanoTime();
+            long now = measuredFrom;
+            do {
+                int status = lookup();
+                long latency = System.nanoTime() - now;
+                if (ops == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, ops * 2);
+                }
+                latencies[ops++] = latency;
+                if (status == ERROR) {
+                    errors++;
+                } else if (status == MISS) {
+                    misses++;
+                }
+                now += latency;
+            } while (now < measureUntil);
+            elapsed = now - measuredFrom;
+            long allocatedAfter = allocatedBytes();
+            if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+                allocated = allocatedAfter - allocatedBefore;
+            }
+        }
+
+        private int lookup() {
+            ServiceQuery query = queries[next];
+            next = next + 1 == queries.length ? 0 : next + 1;
+            try {
+                Set<Service> services = query.execute(serviceLocator);
+                return services == null || services.isEmpty() ? MISS : FOUND;
+            } catch (RuntimeException e) {
+                return ERROR;
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (sunThreadMXBean.isThreadAllocatedMemorySupported() && sunThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+                return sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    static class Result {
+
+        static final String HEADER = String.format("%-24s %10s %12s %8s %8s %10s %10s %10s %10s %12s",
+                "locator", "ops", "ops/s", "errors", "misses", "p50 us", "p99 us", "p999 us", "max us", "bytes/op");
+
+        private final String name;
+
+        private final long ops;
+
+        private final long errors;
+
+        private final long misses;
+
+        private final double throughput;
+
+        private final long[] sorted;
+
+        private final long allocatedPerOp;
+
+        private Result(String name, long ops, long errors, long misses, double throughput, long[] sorted, long allocatedPerOp) {
+            this.name = name;
+            this.ops = ops;
+            this.errors = errors;
+            this.misses = misses;
+            this.throughput = throughput;
+            this.sorted = sorted;
+            this.allocatedPerOp = allocatedPerOp;
+        }
+
+        private static Result of(String name, Worker[] workers) {
+            long ops = 0;
+            long errors = 0;
+            long misses = 0;
+            long allocated = 0;
+            long elapsed = 0;
+            for (Worker worker : workers) {
+                ops += worker.ops;
+                errors += worker.errors;
+                misses += worker.misses;
+                elapsed = Math.max(elapsed, worker.elapsed);
+                allocated = allocated < 0 || worker.allocated < 0 ? -1 : allocated + worker.allocated;
+            }
+            long[] sorted = new long[(int) ops];
+            int offset = 0;
+            for (Worker worker : workers) {
+                System.arraycopy(worker.latencies, 0, sorted, offset, worker.ops);
+                offset += worker.ops;
+            }
+            Arrays.sort(sorted);
+            long allocatedPerOp = ops == 0 || allocated < 0 ? -1 : allocated / ops;
+            return new Result(name, ops, errors, misses, elapsed == 0 ? 0 : ops * 1e9D / elapsed, sorted, allocatedPerOp);
+        }
+
+        long getOps() {
+            return ops;
+        }
+
+        long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return Lookups which found no service, whether the backend answered or not.
+         */
+        long getMisses() {
+            return misses;
+        }
+
+        double getThroughput() {
+            return throughput;
+        }
+
+        /**
+         * @param quantile Between 0 and 1.
+         * @return Latency in microseconds, 0 if no lookup was measured.
+         */
+        long getLatency(double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1000;
+        }
+
+        /**
+         * @return Bytes allocated by the calling threads per lookup, -1 if the JVM does not count them.
+         */
+        long getAllocatedPerOp() {
+            return allocatedPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s %10d %12.0f %8d %8d %10d %10d %10d %10d %12d",
+                    name, ops, throughput, errors, misses, getLatency(0.5), getLatency(0.99), getLatency(0.999), getLatency(1), allocatedPerOp);
+        }
+    }
+}
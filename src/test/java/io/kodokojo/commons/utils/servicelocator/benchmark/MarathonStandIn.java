@@ -0,0 +1,105 @@
+package io.kodokojo.commons.utils.servicelocator.benchmark;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Answer the Marathon <code>/v2/apps?embed=apps.tasks&amp;label=...</code> endpoint with one application per component
+ * of a {@link Topology}, labelled with the component name as project and its type as component type.
+ */
+class MarathonStandIn extends HttpStandIn {
+
+    private final List<Map<String, String>> labels;
+
+    private final String[] apps;
+
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+
+    MarathonStandIn(Topology topology, int threads) throws IOException {
+        super(threads);
+        labels = new ArrayList<>(topology.size());
+        apps = new String[topology.size()];
+        for (int component = 0; component < topology.size(); component++) {
+            String name = topology.name(component);
+            Map<String, String> componentLabels = new HashMap<>();
+            componentLabels.put("project", name);
+            componentLabels.put("componentType", topology.type(component));
+            labels.add(componentLabels);
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"id\":\"/").append(name).append("\",\"labels\":{\"project\":\"").append(name)
+                    .append("\",\"componentType\":\"").append(topology.type(component)).append("\"},")
+                    .append("\"container\":{\"type\":\"DOCKER\",\"docker\":{\"portMappings\":[{\"containerPort\":80}]}},")
+                    .append("\"tasks\":[");
+            for (int instance = 0; instance < Topology.INSTANCES; instance++) {
+                if (instance > 0) {
+                    sb.append(',');
+                }
+                sb.append("{\"id\":\"").append(name).append('.').append(instance).append("\",\"host\":\"")
+                        .append(topology.host(component, instance)).append("\",\"ports\":[")
+                        .append(topology.port(component, instance)).append("],\"healthCheckResults\":[{\"alive\":true}]}");
+            }
+            apps[component] = sb.append("]}").toString();
+        }
+        route("/v2/apps", exchange -> {
+            String selector = queryParameters(exchange, "label").stream().findFirst().orElse("");
+            return responses.computeIfAbsent(selector, this::apps);
+        });
+        start();
+    }
+
+    /**
+     * Applications matching a selector like <code>project==svc-1,componentType==scm</code> or
+     * <code>project,componentType==scm</code>.
+     */
+    private String apps(String selector) {
+        String[] terms = selector.isEmpty() ? new String[0] : selector.split(",");
+        StringBuilder sb = new StringBuilder("{\"apps\":[");
+        boolean first = true;
+        for (int component = 0; component < apps.length; component++) {
+            if (matches(labels.get(component), terms)) {
+                if (!first) {
+                    sb.append(',');
+                }
+                sb.append(apps[component]);
+                first = false;
+            }
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static boolean matches(Map<String, String> labels, String[] terms) {
+        for (String term : terms) {
+            int equal = term.indexOf("==");
+            if (equal < 0 ? !labels.containsKey(term) : !term.substring(equal + 2).equals(labels.get(term.substring(0, equal)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
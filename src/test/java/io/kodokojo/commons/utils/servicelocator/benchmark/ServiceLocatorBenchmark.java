@@ -0,0 +1,153 @@
+package io.kodokojo.commons.utils.servicelocator.benchmark;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.gson.Gson;
+import io.kodokojo.commons.config.KodokojoConfig;
+import io.kodokojo.commons.utils.properties.PropertyResolver;
+import io.kodokojo.commons.utils.properties.provider.JavaArgumentPropertyValueProvider;
+import io.kodokojo.commons.utils.servicelocator.CachingServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.MergedServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+import io.kodokojo.commons.utils.servicelocator.consul.ConsulRestFactory;
+import io.kodokojo.commons.utils.servicelocator.consul.ConsulServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.docker.DockerServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.marathon.MarathonServiceLocator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Load each {@link ServiceLocator} against in-process stand-ins of Consul, Marathon and Docker serving the same
+ * {@link Topology}, then the {@link MergedServiceLocator} of all of them, with and without a cache in front.
+ * <p>
+ * Run from the test classpath, all arguments being optional:
+ * <pre>
+ * ServiceLocatorBenchmark --components 5000 --threads 16 --warmup 5000 --duration 20000 --latency 2 --failure-rate 0.01
+ * </pre>
+ * Each locator is measured with type and name queries, then with type only queries which match a quarter of the
+ * components.
+ */
+public class ServiceLocatorBenchmark {
+
+    private static final int QUERIES = 256;
+
+    private static final long MERGED_DEADLINE = 2000;
+
+    private static final long DOCKER_RESYNC_INTERVAL = 60000;
+
+    private final Topology topology;
+
+    private final LocatorBenchmark benchmark;
+
+    private final long latency;
+
+    private final double failureRate;
+
+    /**
+     * @param latency     Time in milliseconds added by stand-ins to each backend call.
+     * @param failureRate Ratio of backend calls failing, between 0 and 1.
+     */
+    public ServiceLocatorBenchmark(int components, int threads, long warmup, long duration, long latency, double failureRate) {
+        if (latency < 0) {
+            throw new IllegalArgumentException("latency must be positive.");
+        }
+        if (failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("failureRate must be between 0 and 1.");
+        }
+        this.topology = new Topology(components);
+        this.benchmark = new LocatorBenchmark(threads, warmup, duration);
+        this.latency = latency;
+        this.failureRate = failureRate;
+    }
+
+    List<LocatorBenchmark.Result> run() throws IOException, InterruptedException {
+        KodokojoConfig kodokojoConfig = new PropertyResolver(new JavaArgumentPropertyValueProvider(new String[]{
+                "--project.name", ConsulStandIn.PROJECT,
+                "--stack.name", ConsulStandIn.STACK_NAME,
+                "--stack.type", ConsulStandIn.STACK_TYPE
+        })).createProxy(KodokojoConfig.class);
+        List<ServiceQuery> byName = topology.queries(QUERIES);
+        List<ServiceQuery> byType = topology.typeQueries();
+        List<LocatorBenchmark.Result> res = new ArrayList<>();
+        int serverThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        try (ConsulStandIn consul = new ConsulStandIn(topology, serverThreads);
+             MarathonStandIn marathon = new MarathonStandIn(topology, serverThreads)) {
+            DockerStandIn docker = new DockerStandIn(topology);
+            consul.setLatency(latency);
+            consul.setFailureRate(failureRate);
+            marathon.setLatency(latency);
+            marathon.setFailureRate(failureRate);
+
+            Map<String, ServiceLocator> serviceLocators = new LinkedHashMap<>();
+            ConsulServiceLocator consulServiceLocator = new ConsulServiceLocator(ConsulRestFactory.build(consul.getUrl(), new Gson()), kodokojoConfig);
+            MarathonServiceLocator marathonServiceLocator = new MarathonServiceLocator(marathon.getUrl());
+            DockerServiceLocator dockerServiceLocator = new DockerServiceLocator(docker.getDockerSupport(), kodokojoConfig);
+            //  Indexed locator only lists containers at start, stand-in failures are set once it is loaded.
+            DockerServiceLocator indexedDockerServiceLocator = new DockerServiceLocator(docker.getDockerSupport(), kodokojoConfig, DOCKER_RESYNC_INTERVAL);
+            docker.setLatency(latency);
+            docker.setFailureRate(failureRate);
+            MergedServiceLocator merged = new MergedServiceLocator(Arrays.asList(consulServiceLocator, marathonServiceLocator, indexedDockerServiceLocator), MERGED_DEADLINE);
+            serviceLocators.put("consul", consulServiceLocator);
+            serviceLocators.put("marathon", marathonServiceLocator);
+            serviceLocators.put("docker", dockerServiceLocator);
+            serviceLocators.put("docker-indexed", indexedDockerServiceLocator);
+            serviceLocators.put("merged", merged);
+            serviceLocators.put("caching-merged", new CachingServiceLocator(merged));
+            try {
+                for (Map.Entry<String, ServiceLocator> entry : serviceLocators.entrySet()) {
+                    res.add(benchmark.run(entry.getKey() + " by name", entry.getValue(), byName));
+                    res.add(benchmark.run(entry.getKey() + " by type", entry.getValue(), byType));
+                }
+            } finally {
+                for (ServiceLocator serviceLocator : serviceLocators.values()) {
+                    if (serviceLocator instanceof Closeable) {
+                        ((Closeable) serviceLocator).close();
+                    }
+                }
+            }
+        }
+        return res;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        ServiceLocatorBenchmark serviceLocatorBenchmark = new ServiceLocatorBenchmark(
+                Integer.parseInt(options.getOrDefault("--components", "5000")),
+                Integer.parseInt(options.getOrDefault("--threads", "8")),
+                Long.parseLong(options.getOrDefault("--warmup", "5000")),
+                Long.parseLong(options.getOrDefault("--duration", "10000")),
+                Long.parseLong(options.getOrDefault("--latency", "0")),
+                Double.parseDouble(options.getOrDefault("--failure-rate", "0")));
+        List<LocatorBenchmark.Result> results = serviceLocatorBenchmark.run();
+        System.out.println(LocatorBenchmark.Result.HEADER);
+        for (LocatorBenchmark.Result result : results) {
+            System.out.println(result);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package io.kodokojo.commons.utils.servicelocator.benchmark;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.utils.servicelocator.marathon.MarathonServiceLocator;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServiceLocatorBenchmarkTest {
+
+    @Test
+    public void all_locators_find_every_queried_component() throws Exception {
+        ServiceLocatorBenchmark serviceLocatorBenchmark = new ServiceLocatorBenchmark(100, 2, 50, 200, 0, 0);
+
+        List<LocatorBenchmark.Result> results = serviceLocatorBenchmark.run();
+
+        assertThat(results).hasSize(12);
+        for (LocatorBenchmark.Result result : results) {
+            assertThat(result.getOps()).as(result.toString()).isGreaterThan(0);
+            assertThat(result.getErrors()).as(result.toString()).isEqualTo(0);
+            assertThat(result.getMisses()).as(result.toString()).isEqualTo(0);
+            assertThat(result.getLatency(0.99)).isLessThanOrEqualTo(result.getLatency(1));
+        }
+    }
+
+    @Test
+    public void backend_failures_are_counted_as_errors() throws Exception {
+        Topology topology = new Topology(10);
+        try (MarathonStandIn marathon = new MarathonStandIn(topology, 2)) {
+            marathon.setFailureRate(1);
+
+            LocatorBenchmark.Result result = new LocatorBenchmark(1, 0, 100).run("failing", new MarathonServiceLocator(marathon.getUrl()), topology.queries(4));
+
+            assertThat(result.getOps()).isGreaterThan(0);
+            assertThat(result.getErrors()).isEqualTo(result.getOps());
+        }
+    }
+}
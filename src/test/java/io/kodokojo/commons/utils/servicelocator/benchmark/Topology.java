@@ -0,0 +1,92 @@
+package io.kodokojo.commons.utils.servicelocator.benchmark;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Components served by all stand-ins, so the same queries hit every backend. Component <code>i</code> is named
+ * <code>svc-i</code>, has one of {@link #TYPES} and {@link #INSTANCES} instances.
+ */
+class Topology {
+
+    static final String[] TYPES = {"scm", "ci", "repository", "monitoring"};
+
+    static final int INSTANCES = 2;
+
+    private final int components;
+
+    Topology(int components) {
+        if (components <= 0) {
+            throw new IllegalArgumentException("components must be upper than 0.");
+        }
+        this.components = components;
+    }
+
+    int size() {
+        return components;
+    }
+
+    String name(int component) {
+        return "svc-" + component;
+    }
+
+    String type(int component) {
+        return TYPES[component % TYPES.length];
+    }
+
+    String host(int component, int instance) {
+        return "10." + (instance + 1) + "." + (component / 250) % 250 + "." + (component % 250 + 1);
+    }
+
+    int port(int component, int instance) {
+        return 31000 + (component * INSTANCES + instance) % 30000;
+    }
+
+    /**
+     * @return <code>count</code> type and name queries spread over the components.
+     */
+    List<ServiceQuery> queries(int count) {
+        List<ServiceQuery> res = new ArrayList<>(count);
+        int step = Math.max(1, components / count);
+        for (int i = 0; i < count && i * step < components; i++) {
+            int component = i * step;
+            res.add(ServiceQuery.byTypeAndName(type(component), name(component)));
+        }
+        return res;
+    }
+
+    /**
+     * @return One query by type for each of {@link #TYPES}, each one match a quarter of the components.
+     */
+    List<ServiceQuery> typeQueries() {
+        List<ServiceQuery> res = new ArrayList<>(TYPES.length);
+        for (String type : TYPES) {
+            res.add(ServiceQuery.byType(type));
+        }
+        return res;
+    }
+}
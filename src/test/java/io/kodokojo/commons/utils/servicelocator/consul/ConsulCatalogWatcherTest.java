@@ -0,0 +1,159 @@
+package io.kodokojo.commons.utils.servicelocator.consul;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+import io.kodokojo.commons.utils.servicelocator.metrics.InstrumentedServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.metrics.LookupStats;
+import io.kodokojo.commons.utils.servicelocator.metrics.ServiceLocatorMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConsulCatalogWatcherTest {
+
+    private HttpServer server;
+
+    private final Object lock = new Object();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private long index = 10;
+
+    private String body;
+
+    @Before
+    public void setup() throws IOException {
+        body = "[" + entry("10.0.0.1", 8080) + "]";
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v1/health/service/gitlab", this::handle);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void registry_updated_within_long_poll() throws Exception {
+        ConsulRest consulRest = ConsulRestFactory.buildForWatch("http://localhost:" + server.getAddress().getPort(), new Gson(), 10000);
+        try (ConsulCatalogWatcher watcher = new ConsulCatalogWatcher(consulRest, Collections.singleton("gitlab"), null, 10000)) {
+            assertThat(watcher.awaitInitialSync(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(watcher.getService("scm", "gitlab")).extracting("host").containsExactly("10.0.0.1");
+            assertThat(watcher.getServiceByType("scm")).hasSize(1);
+            assertThat(watcher.getServiceByName("unknown")).isEmpty();
+            int requestsBeforeChange = requests.get();
+
+            synchronized (lock) {
+                index++;
+                body = "[" + entry("10.0.0.1", 8080) + "," + entry("10.0.0.2", 8080) + "]";
+                lock.notifyAll();
+            }
+
+            long deadline = System.currentTimeMillis() + 5000;
+            Set<Service> services = watcher.getServiceByName("gitlab");
+            while (services.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                services = watcher.getServiceByName("gitlab");
+            }
+            assertThat(services).extracting("host").containsOnly("10.0.0.1", "10.0.0.2");
+            //  Updates are pushed by the pending blocking query, not by polling.
+            assertThat(requests.get() - requestsBeforeChange).isLessThanOrEqualTo(2);
+        }
+    }
+
+    @Test
+    public void data_age_recorded_through_the_watcher() throws Exception {
+        ConsulRest consulRest = ConsulRestFactory.buildForWatch("http://localhost:" + server.getAddress().getPort(), new Gson(), 10000);
+        try (ConsulCatalogWatcher watcher = new ConsulCatalogWatcher(consulRest, Collections.singleton("gitlab"), null, 10000)) {
+            assertThat(watcher.awaitInitialSync(5, TimeUnit.SECONDS)).isTrue();
+            ServiceLocatorMetrics metrics = new ServiceLocatorMetrics(null);
+            ServiceLocator serviceLocator = new InstrumentedServiceLocator(watcher, "consul-watch", metrics);
+
+            Thread.sleep(20);
+            serviceLocator.getService("scm", "gitlab");
+
+            LookupStats stats = metrics.snapshot("consul-watch").get(ServiceQuery.Kind.TYPE_AND_NAME);
+            assertThat(stats.getLastDataAge()).isGreaterThanOrEqualTo(20);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String query = exchange.getRequestURI().getQuery();
+        long requestedIndex = 0;
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith("index=")) {
+                    requestedIndex = Long.parseLong(param.substring("index=".length()));
+                }
+            }
+        }
+        long currentIndex;
+        String currentBody;
+        synchronized (lock) {
+            long end = System.currentTimeMillis() + 10000;
+            while (index == requestedIndex && System.currentTimeMillis() < end) {
+                try {
+                    lock.wait(end - System.currentTimeMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            currentIndex = index;
+            currentBody = body;
+        }
+        byte[] bytes = currentBody.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add(ConsulCatalogWatcher.CONSUL_INDEX_HEADER, Long.toString(currentIndex));
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String entry(String address, int port) {
+        return "{\"Node\":{\"Address\":\"" + address + "\"},\"Service\":{\"Address\":\"\",\"Port\":" + port + ",\"Tags\":[\"kodokojo-componentType=scm\"]},\"Checks\":[]}";
+    }
+
+}
@@ -0,0 +1,127 @@
+package io.kodokojo.commons.utils.servicelocator.consul;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.kodokojo.commons.config.KodokojoConfig;
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.properties.PropertyResolver;
+import io.kodokojo.commons.utils.properties.provider.JavaArgumentPropertyValueProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConsulServiceLocatorTest {
+
+    private HttpServer server;
+
+    private final List<String> queries = new CopyOnWriteArrayList<>();
+
+    private ConsulServiceLocator serviceLocator;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v1/health/service/gitlab", exchange -> reply(exchange, "[" +
+                "{\"Node\":{\"Address\":\"10.0.0.1\"},\"Service\":{\"Address\":\"\",\"Port\":80,\"Tags\":[]},\"Checks\":[]}," +
+                "{\"Node\":{\"Address\":\"10.0.0.1\"},\"Service\":{\"Address\":\"172.17.0.2\",\"Port\":8080,\"Tags\":[]},\"Checks\":[]}" +
+                "]"));
+        server.createContext("/v1/health/service/jenkins", exchange -> reply(exchange, "[]"));
+        server.createContext("/v1/catalog/services", exchange -> reply(exchange, "{" +
+                "\"gitlab\":[\"kodokojo-projectName=acme\",\"kodokojo-stackName=build\",\"kodokojo-stackType=ci\",\"kodokojo-componentType=scm\"]," +
+                "\"jenkins\":[\"kodokojo-projectName=acme\",\"kodokojo-stackName=build\",\"kodokojo-stackType=ci\",\"kodokojo-componentType=ci\"]" +
+                "}"));
+        server.start();
+
+        PropertyResolver resolver = new PropertyResolver(new JavaArgumentPropertyValueProvider(new String[]{"--project.name", "acme", "--stack.name", "build", "--stack.type", "ci"}));
+        ConsulRest consulRest = ConsulRestFactory.build("http://localhost:" + server.getAddress().getPort(), new Gson());
+        serviceLocator = new ConsulServiceLocator(consulRest, resolver.createProxy(KodokojoConfig.class));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void lookup_only_passing_instances_with_tags_filtered_by_consul() {
+        Set<Service> services = serviceLocator.getService("scm", "gitlab");
+
+        assertThat(services).extracting("host").containsOnly("10.0.0.1", "172.17.0.2");
+        assertThat(queries).hasSize(1);
+        assertThat(queries.get(0)).startsWith("passing")
+                .contains("tag=kodokojo-projectName=acme")
+                .contains("tag=kodokojo-stackName=build")
+                .contains("tag=kodokojo-componentName=gitlab")
+                .contains("tag=kodokojo-componentType=scm");
+    }
+
+    @Test
+    public void lookup_by_type() {
+        Set<Service> services = serviceLocator.getServiceByType("scm");
+
+        assertThat(services).hasSize(2);
+        assertThat(queries.get(0)).startsWith("filter=\"kodokojo-projectName=acme\" in ServiceTags and").endsWith(" and \"kodokojo-componentType=scm\" in ServiceTags");
+        assertThat(queries).hasSize(2);
+    }
+
+    @Test
+    public void lookup_by_name_never_return_null() {
+        assertThat(serviceLocator.getServiceByName("jenkins")).isEmpty();
+        assertThat(serviceLocator.getService("ci", "jenkins")).isNull();
+    }
+
+    @Test
+    public void async_lookup_return_same_services() throws Exception {
+        assertThat(serviceLocator.getServiceAsync("scm", "gitlab").get(5, TimeUnit.SECONDS)).extracting("host").containsOnly("10.0.0.1", "172.17.0.2");
+        assertThat(serviceLocator.getServiceByTypeAsync("scm").get(5, TimeUnit.SECONDS)).hasSize(2);
+        assertThat(serviceLocator.getServiceByNameAsync("jenkins").get(5, TimeUnit.SECONDS)).isEmpty();
+        assertThat(serviceLocator.getServiceAsync("ci", "jenkins").get(5, TimeUnit.SECONDS)).isNull();
+    }
+
+    private void reply(HttpExchange exchange, String body) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        queries.add(query == null ? "" : URLDecoder.decode(query, "UTF-8"));
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
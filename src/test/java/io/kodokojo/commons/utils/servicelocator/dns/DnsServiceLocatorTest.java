@@ -0,0 +1,355 @@
+package io.kodokojo.commons.utils.servicelocator.dns;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class DnsServiceLocatorTest {
+
+    private StubDnsServer dnsServer;
+
+    private DnsSrvResolver resolver;
+
+    private DnsServiceLocator serviceLocator;
+
+    @Before
+    public void setup() throws IOException {
+        dnsServer = new StubDnsServer();
+        resolver = new DnsSrvResolver(dnsServer.getAddress(), 100);
+        serviceLocator = new DnsServiceLocator(resolver, SrvNames.consul("consul"));
+    }
+
+    @After
+    public void tearDown() {
+        serviceLocator.close();
+        resolver.close();
+        dnsServer.close();
+    }
+
+    @Test
+    public void type_and_name_resolve_to_srv_targets_addresses() {
+        dnsServer.answer("_gitlab._scm.service.consul", 60,
+                new StubRecord("node1.node.dc1.consul", "10.0.0.1", 31000, 1),
+                new StubRecord("node2.node.dc1.consul", "10.0.0.2", 31001, 1));
+
+        Set<Service> services = serviceLocator.getService("scm", "gitlab");
+
+        assertThat(services).containsOnly(Service.of("10.0.0.1", "10.0.0.1", 31000), Service.of("10.0.0.2", "10.0.0.2", 31001));
+    }
+
+    @Test
+    public void answers_are_cached_until_their_ttl_expire() {
+        dnsServer.answer("gitlab.service.consul", 60, new StubRecord("node1.node.dc1.consul", "10.0.0.1", 31000, 1));
+        dnsServer.answer("jenkins.service.consul", 0, new StubRecord("node1.node.dc1.consul", "10.0.0.1", 32000, 1));
+
+        serviceLocator.getServiceByName("gitlab");
+        serviceLocator.getServiceByName("gitlab");
+        serviceLocator.getServiceByName("jenkins");
+        Set<Service> services = serviceLocator.getServiceByName("jenkins");
+
+        assertThat(services).containsOnly(Service.of("10.0.0.1", "10.0.0.1", 32000));
+        assertThat(dnsServer.queries("gitlab.service.consul")).isEqualTo(1);
+        assertThat(dnsServer.queries("jenkins.service.consul")).isEqualTo(2);
+    }
+
+    @Test
+    public void truncated_answers_are_not_cached() {
+        dnsServer.answer("gitlab.service.consul", 60, new StubRecord("node1.node.dc1.consul", "10.0.0.1", 31000, 1));
+        dnsServer.setTruncated(true);
+
+        assertThat(serviceLocator.getServiceByName("gitlab")).containsOnly(Service.of("10.0.0.1", "10.0.0.1", 31000));
+        serviceLocator.getServiceByName("gitlab");
+
+        assertThat(dnsServer.queries("gitlab.service.consul")).isEqualTo(2);
+    }
+
+    @Test
+    public void unknown_name_is_cached_for_soa_negative_ttl() {
+        Set<Service> services = serviceLocator.getServiceByName("nexus");
+        serviceLocator.getServiceByName("nexus");
+
+        assertThat(services).isEmpty();
+        assertThat(serviceLocator.getService("repository", "nexus")).isNull();
+        assertThat(dnsServer.queries("nexus.service.consul")).isEqualTo(1);
+    }
+
+    @Test
+    public void only_lowest_priority_targets_are_returned() {
+        dnsServer.answer("gitlab.service.consul", 60,
+                new StubRecord("backup.node.dc1.consul", "10.0.1.1", 31000, 20),
+                new StubRecord("node1.node.dc1.consul", "10.0.0.1", 31000, 10));
+
+        assertThat(serviceLocator.getServiceByName("gitlab")).containsOnly(Service.of("10.0.0.1", "10.0.0.1", 31000));
+    }
+
+    @Test
+    public void concurrent_lookups_share_one_query() throws Exception {
+        dnsServer.answer("gitlab.service.consul", 60, new StubRecord("node1.node.dc1.consul", "10.0.0.1", 31000, 1));
+        dnsServer.setDelay(50);
+
+        CompletableFuture<Set<Service>> first = serviceLocator.getServiceByNameAsync("gitlab");
+        CompletableFuture<Set<Service>> second = serviceLocator.getServiceByNameAsync("gitlab");
+
+        assertThat(first.get(1, TimeUnit.SECONDS)).containsOnly(Service.of("10.0.0.1", "10.0.0.1", 31000));
+        assertThat(second.get(1, TimeUnit.SECONDS)).isEqualTo(first.get());
+        assertThat(dnsServer.queries("gitlab.service.consul")).isEqualTo(1);
+    }
+
+    @Test
+    public void unanswered_query_fail_after_a_retry() {
+        dnsServer.setDrop(true);
+
+        try {
+            serviceLocator.getServiceByName("gitlab");
+            fail("Lookup must fail without answer.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getCause()).isInstanceOf(TimeoutException.class);
+        }
+        assertThat(dnsServer.queries("gitlab.service.consul")).isEqualTo(2);
+    }
+
+    @Test
+    public void queries_beyond_pending_limit_fail_right_away() throws Exception {
+        dnsServer.setDrop(true);
+
+        try (DnsSrvResolver slowResolver = new DnsSrvResolver(dnsServer.getAddress(), TimeUnit.SECONDS.toMillis(10))) {
+            List<CompletableFuture<List<SrvRecord>>> lookups = new ArrayList<>();
+            for (int i = 0; i < DnsSrvResolver.MAX_PENDING; i++) {
+                lookups.add(slowResolver.resolve("service-" + i + ".service.consul"));
+            }
+            CompletableFuture<List<SrvRecord>> rejected = slowResolver.resolve("gitlab.service.consul");
+
+            assertThat(rejected.isCompletedExceptionally()).isTrue();
+            assertThat(lookups.get(0).isDone()).isFalse();
+        }
+    }
+
+    @Test
+    public void lookup_by_type_is_not_supported_by_consul_convention() {
+        assertThat(serviceLocator.getServiceByType("scm")).isEmpty();
+        assertThat(dnsServer.queries.values()).isEmpty();
+    }
+
+    private static class StubRecord {
+
+        private final String target;
+
+        private final String address;
+
+        private final int port;
+
+        private final int priority;
+
+        private StubRecord(String target, String address, int port, int priority) {
+            this.target = target;
+            this.address = address;
+            this.port = port;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Answer SRV queries from a static zone, with target addresses in the additional section and a SOA for unknown
+     * names. Answer names point to the question to exercise name compression.
+     */
+    private static class StubDnsServer implements AutoCloseable {
+
+        private static final int NEGATIVE_TTL = 30;
+
+        private final DatagramSocket socket;
+
+        private final Map<String, List<StubRecord>> zone = new ConcurrentHashMap<>();
+
+        private final Map<String, Integer> ttls = new ConcurrentHashMap<>();
+
+        private final Map<String, AtomicInteger> queries = new ConcurrentHashMap<>();
+
+        private volatile long delay;
+
+        private volatile boolean drop;
+
+        private volatile boolean truncated;
+
+        private StubDnsServer() throws IOException {
+            socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            Thread thread = new Thread(this::serve, "stub-dns-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        InetSocketAddress getAddress() {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+
+        void answer(String name, int ttl, StubRecord... records) {
+            zone.put(name, Arrays.asList(records));
+            ttls.put(name, ttl);
+        }
+
+        int queries(String name) {
+            AtomicInteger res = queries.get(name);
+            return res == null ? 0 : res.get();
+        }
+
+        void setDelay(long delay) {
+            this.delay = delay;
+        }
+
+        void setDrop(boolean drop) {
+            this.drop = drop;
+        }
+
+        void setTruncated(boolean truncated) {
+            this.truncated = truncated;
+        }
+
+        private void serve() {
+            byte[] buffer = new byte[512];
+            while (!socket.isClosed()) {
+                try {
+                    DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(request);
+                    ByteBuffer query = ByteBuffer.wrap(request.getData(), 0, request.getLength());
+                    int id = query.getShort() & 0xffff;
+                    query.position(12);
+                    String name = readName(query);
+                    queries.computeIfAbsent(name, key -> new AtomicInteger()).incrementAndGet();
+                    if (drop) {
+                        continue;
+                    }
+                    byte[] response = respond(id, name);
+                    if (delay > 0) {
+                        Thread.sleep(delay);
+                    }
+                    socket.send(new DatagramPacket(response, response.length, request.getSocketAddress()));
+                } catch (IOException | InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private byte[] respond(int id, String name) throws IOException {
+            List<StubRecord> records = zone.get(name);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(id);
+            out.writeShort(0x8400 | (truncated ? 0x0200 : 0) | (records == null ? DnsMessage.RCODE_NXDOMAIN : 0));
+            out.writeShort(1);
+            out.writeShort(records == null ? 0 : records.size());
+            out.writeShort(records == null ? 1 : 0);
+            out.writeShort(records == null ? 0 : records.size());
+            writeName(out, name);
+            out.writeShort(DnsMessage.TYPE_SRV);
+            out.writeShort(DnsMessage.CLASS_IN);
+            if (records == null) {
+                writeName(out, "consul");
+                out.writeShort(DnsMessage.TYPE_SOA);
+                out.writeShort(DnsMessage.CLASS_IN);
+                out.writeInt(3600);
+                ByteArrayOutputStream soa = new ByteArrayOutputStream();
+                DataOutputStream soaOut = new DataOutputStream(soa);
+                writeName(soaOut, "ns.consul");
+                writeName(soaOut, "hostmaster.consul");
+                soaOut.writeInt(1);
+                soaOut.writeInt(3600);
+                soaOut.writeInt(600);
+                soaOut.writeInt(86400);
+                soaOut.writeInt(NEGATIVE_TTL);
+                out.writeShort(soa.size());
+                out.write(soa.toByteArray());
+                return bytes.toByteArray();
+            }
+            int ttl = ttls.get(name);
+            for (StubRecord record : records) {
+                //  Pointer to the question name at offset 12.
+                out.writeShort(0xc00c);
+                out.writeShort(DnsMessage.TYPE_SRV);
+                out.writeShort(DnsMessage.CLASS_IN);
+                out.writeInt(ttl);
+                out.writeShort(6 + record.target.length() + 2);
+                out.writeShort(record.priority);
+                out.writeShort(1);
+                out.writeShort(record.port);
+                writeName(out, record.target);
+            }
+            for (StubRecord record : records) {
+                writeName(out, record.target);
+                out.writeShort(DnsMessage.TYPE_A);
+                out.writeShort(DnsMessage.CLASS_IN);
+                out.writeInt(ttl);
+                out.writeShort(4);
+                out.write(InetAddress.getByName(record.address).getAddress());
+            }
+            return bytes.toByteArray();
+        }
+
+        private static void writeName(DataOutputStream out, String name) throws IOException {
+            for (String label : name.split("\\.")) {
+                out.writeByte(label.length());
+                out.write(label.getBytes(StandardCharsets.US_ASCII));
+            }
+            out.writeByte(0);
+        }
+
+        private static String readName(ByteBuffer buffer) {
+            StringBuilder sb = new StringBuilder();
+            int length;
+            while ((length = buffer.get() & 0xff) != 0) {
+                if (sb.length() > 0) {
+                    sb.append('.');
+                }
+                byte[] label = new byte[length];
+                buffer.get(label);
+                sb.append(new String(label, StandardCharsets.US_ASCII));
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+        }
+    }
+}
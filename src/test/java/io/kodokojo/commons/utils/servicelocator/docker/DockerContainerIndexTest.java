@@ -0,0 +1,172 @@
+package io.kodokojo.commons.utils.servicelocator.docker;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.EventsCmd;
+import com.github.dockerjava.api.command.ListContainersCmd;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.Filters;
+import com.github.dockerjava.core.command.EventsResultCallback;
+import io.kodokojo.commons.model.Service;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.Closeable;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class DockerContainerIndexTest {
+
+    private static final List<String> STACK_LABELS = Collections.singletonList("kodokojo-projectName=acme");
+
+    private DockerClient dockerClient;
+
+    private ListContainersCmd listContainersCmd;
+
+    private EventsCmd eventsCmd;
+
+    private final List<Container> running = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        dockerClient = mock(DockerClient.class);
+        listContainersCmd = mock(ListContainersCmd.class);
+        eventsCmd = mock(EventsCmd.class);
+        when(dockerClient.listContainersCmd()).thenReturn(listContainersCmd);
+        when(listContainersCmd.withFilters(any(Filters.class))).thenReturn(listContainersCmd);
+        when(listContainersCmd.exec()).thenAnswer(invocation -> new ArrayList<>(running));
+        when(dockerClient.eventsCmd()).thenReturn(eventsCmd);
+        when(eventsCmd.withFilters(any(Filters.class))).thenReturn(eventsCmd);
+        when(eventsCmd.exec(any(EventsResultCallback.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
+    }
+
+    @Test
+    public void lookups_answered_from_events() {
+        running.add(container("c1", "gitlab", "scm", 32768));
+
+        try (DockerContainerIndex index = new DockerContainerIndex(dockerClient, "localhost", STACK_LABELS, 60000)) {
+            ArgumentCaptor<EventsResultCallback> callback = ArgumentCaptor.forClass(EventsResultCallback.class);
+            verify(eventsCmd).exec(callback.capture());
+            verify(listContainersCmd, times(1)).exec();
+
+            assertThat(index.find(Collections.singletonList("kodokojo-componentType=scm"))).extracting("port").containsExactly(32768);
+            assertThat(index.find(Arrays.asList("kodokojo-componentType=scm", "kodokojo-componentName=gitlab"))).hasSize(1);
+            assertThat(index.find(Collections.singletonList("kodokojo-componentType=ci"))).isNull();
+
+            Container jenkins = container("c2", "jenkins", "ci", 32769);
+            running.clear();
+            running.add(jenkins);
+            callback.getValue().onNext(new Event("start", "c2", "jenkins:latest", System.currentTimeMillis()));
+            callback.getValue().onNext(new Event("die", "c1", "gitlab:latest", System.currentTimeMillis()));
+
+            Set<Service> ci = index.find(Collections.singletonList("kodokojo-componentType=ci"));
+            assertThat(ci).extracting("name").containsExactly("jenkins");
+            assertThat(index.find(Collections.singletonList("kodokojo-componentType=scm"))).isNull();
+            assertThat(index.size()).isEqualTo(1);
+
+            index.find(Collections.singletonList("kodokojo-componentType=ci"));
+            verify(listContainersCmd, times(2)).exec();
+        }
+    }
+
+    @Test
+    public void events_received_during_a_resync_are_kept() {
+        running.add(container("c1", "gitlab", "scm", 32768));
+
+        try (DockerContainerIndex index = new DockerContainerIndex(dockerClient, "localhost", STACK_LABELS, 60000)) {
+            ArgumentCaptor<EventsResultCallback> callback = ArgumentCaptor.forClass(EventsResultCallback.class);
+            verify(eventsCmd).exec(callback.capture());
+            when(listContainersCmd.exec()).thenAnswer(invocation -> {
+                List<Container> listed = new ArrayList<>(running);
+                callback.getValue().onNext(new Event("die", "c1", "gitlab:latest", System.currentTimeMillis()));
+                return listed;
+            });
+
+            index.resync();
+
+            assertThat(index.find(Collections.singletonList("kodokojo-componentType=scm"))).isNull();
+            assertThat(index.size()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void failed_initial_listing_close_the_events_stream() throws Exception {
+        Closeable stream = mock(Closeable.class);
+        when(eventsCmd.exec(any(EventsResultCallback.class))).thenAnswer(invocation -> {
+            EventsResultCallback callback = (EventsResultCallback) invocation.getArguments()[0];
+            callback.onStart(stream);
+            return callback;
+        });
+        when(listContainersCmd.exec()).thenThrow(new IllegalStateException("Docker unavailable"));
+
+        try {
+            new DockerContainerIndex(dockerClient, "localhost", STACK_LABELS, 60000).close();
+            fail("Index creation should fail.");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("Docker unavailable");
+        }
+        verify(stream).close();
+    }
+
+    @Test
+    public void reconnect_close_the_previous_events_stream() throws Exception {
+        try (DockerContainerIndex index = new DockerContainerIndex(dockerClient, "localhost", STACK_LABELS, 60000)) {
+            ArgumentCaptor<EventsResultCallback> callback = ArgumentCaptor.forClass(EventsResultCallback.class);
+            verify(eventsCmd).exec(callback.capture());
+            EventsResultCallback first = callback.getValue();
+            Closeable stream = mock(Closeable.class);
+            first.onStart(stream);
+
+            first.onError(new IllegalStateException("Connection reset"));
+
+            verify(eventsCmd, timeout(5000).times(2)).exec(any(EventsResultCallback.class));
+            verify(stream).close();
+            first.onComplete();
+            Thread.sleep(1500);
+            verify(eventsCmd, times(2)).exec(any(EventsResultCallback.class));
+            assertThat(index.size()).isEqualTo(0);
+        }
+    }
+
+    private static Container container(String id, String name, String type, int publicPort) {
+        Map<String, String> labels = new HashMap<>();
+        labels.put("kodokojo-projectName", "acme");
+        labels.put("kodokojo-componentName", name);
+        labels.put("kodokojo-componentType", type);
+        Container.Port port = mock(Container.Port.class);
+        when(port.getPublicPort()).thenReturn(publicPort);
+        Container container = mock(Container.class);
+        when(container.getId()).thenReturn(id);
+        when(container.getLabels()).thenReturn(labels);
+        when(container.getPorts()).thenReturn(new Container.Port[]{port});
+        return container;
+    }
+
+}
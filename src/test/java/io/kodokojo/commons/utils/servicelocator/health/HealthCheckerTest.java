@@ -0,0 +1,181 @@
+package io.kodokojo.commons.utils.servicelocator.health;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.sun.net.httpserver.HttpServer;
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HealthCheckerTest {
+
+    private ServerSocket listening;
+
+    private HttpServer httpServer;
+
+    private HealthChecker healthChecker;
+
+    @Before
+    public void setup() throws IOException {
+        listening = new ServerSocket(0);
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        httpServer.createContext("/health", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        httpServer.createContext("/down/health", exchange -> {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        httpServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (healthChecker != null) {
+            healthChecker.close();
+        }
+        httpServer.stop(0);
+        listening.close();
+    }
+
+    @Test
+    public void tcp_probe() throws Exception {
+        Service up = new Service("gitlab", "127.0.0.1", listening.getLocalPort());
+        Service down = new Service("gitlab", "127.0.0.1", closedPort());
+        healthChecker = new HealthChecker(mock(ServiceLocator.class), HealthCheck.tcp(), TimeUnit.HOURS.toMillis(1), 1000);
+
+        assertThat(healthChecker.check(up).get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(healthChecker.check(down).get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(healthChecker.isHealthy(up)).isTrue();
+        assertThat(healthChecker.isHealthy(down)).isFalse();
+    }
+
+    @Test
+    public void tcp_probe_of_unresolvable_host_fails() throws Exception {
+        healthChecker = new HealthChecker(mock(ServiceLocator.class), HealthCheck.tcp(), TimeUnit.HOURS.toMillis(1), 1000, 1);
+
+        assertThat(healthChecker.check(new Service("gitlab", "gitlab.invalid", 80)).get(5, TimeUnit.SECONDS)).isFalse();
+    }
+
+    @Test
+    public void http_probe_and_filtering() throws Exception {
+        int port = httpServer.getAddress().getPort();
+        Service up = new Service("gitlab", "127.0.0.1", port);
+        Service down = new Service("gitlab", "127.0.0.1", closedPort());
+        ServiceLocator serviceLocator = mock(ServiceLocator.class);
+        when(serviceLocator.getServiceByName("gitlab")).thenReturn(new HashSet<>(Arrays.asList(up, down)));
+        healthChecker = new HealthChecker(serviceLocator, HealthCheck.http("/health"), TimeUnit.HOURS.toMillis(1), 1000);
+        HealthFilteringServiceLocator filtering = new HealthFilteringServiceLocator(serviceLocator, healthChecker);
+
+        assertThat(filtering.getServiceByName("gitlab")).hasSize(2);
+
+        healthChecker.checkWatched().get(5, TimeUnit.SECONDS);
+
+        assertThat(filtering.getServiceByName("gitlab")).containsExactly(up);
+    }
+
+    @Test
+    public void health_kept_per_service_value() throws Exception {
+        int port = closedPort();
+        healthChecker = new HealthChecker(mock(ServiceLocator.class), HealthCheck.http("/health"), TimeUnit.HOURS.toMillis(1), 1000);
+
+        assertThat(healthChecker.check(new Service("gitlab", "127.0.0.1", port)).get(5, TimeUnit.SECONDS)).isFalse();
+
+        assertThat(healthChecker.isHealthy(new Service("gitlab", "127.0.0.1", port))).isFalse();
+        assertThat(healthChecker.isHealthy(new Service("gitlab-ssh", "127.0.0.1", port))).isTrue();
+    }
+
+    @Test
+    public void http_probe_use_service_is_up() throws Exception {
+        Service service = new Service("gitlab", "127.0.0.1", httpServer.getAddress().getPort());
+        healthChecker = new HealthChecker(mock(ServiceLocator.class), HealthCheck.http("/down/health"), TimeUnit.HOURS.toMillis(1), 1000);
+        assertThat(healthChecker.check(service).get(5, TimeUnit.SECONDS)).isFalse();
+        healthChecker.close();
+
+        healthChecker = new HealthChecker(mock(ServiceLocator.class), HealthCheck.http("/down/health", response -> response.code() == 503), TimeUnit.HOURS.toMillis(1), 1000);
+        assertThat(healthChecker.check(service).get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void http_probe_fail_when_service_is_up_throws() throws Exception {
+        Service service = new Service("gitlab", "127.0.0.1", httpServer.getAddress().getPort());
+        healthChecker = new HealthChecker(mock(ServiceLocator.class), HealthCheck.http("/health", response -> {
+            throw new IllegalStateException("Unexpected body");
+        }), TimeUnit.HOURS.toMillis(1), 1000);
+
+        assertThat(healthChecker.check(service).get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(healthChecker.isHealthy(service)).isFalse();
+    }
+
+    @Test
+    public void endpoint_probed_once_at_a_time() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger requests = new AtomicInteger();
+        httpServer.createContext("/slow/health", exchange -> {
+            requests.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        Service service = new Service("gitlab", "127.0.0.1", httpServer.getAddress().getPort());
+        healthChecker = new HealthChecker(mock(ServiceLocator.class), HealthCheck.http("/slow/health"), TimeUnit.HOURS.toMillis(1), 5000);
+
+        CompletableFuture<Boolean> first = healthChecker.check(service);
+        CompletableFuture<Boolean> second = healthChecker.check(service);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(second.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(requests.get()).isEqualTo(1);
+        assertThat(healthChecker.check(service).get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(requests.get()).isEqualTo(2);
+    }
+
+    private static int closedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+}
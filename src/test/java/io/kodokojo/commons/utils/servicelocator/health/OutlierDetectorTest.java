@@ -0,0 +1,181 @@
+package io.kodokojo.commons.utils.servicelocator.health;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OutlierDetectorTest {
+
+    private static final Service FIRST = new Service("gitlab", "10.0.0.1", 8080);
+
+    private static final Service SECOND = new Service("gitlab", "10.0.0.2", 8080);
+
+    private static final Service THIRD = new Service("gitlab", "10.0.0.3", 8080);
+
+    private static final long BASE_EJECTION = 1000;
+
+    private OutlierDetector outlierDetector;
+
+    @Before
+    public void setup() {
+        outlierDetector = new OutlierDetector(TimeUnit.HOURS.toMillis(1), BASE_EJECTION, 4 * BASE_EJECTION, 0.2, 3.0, 10);
+    }
+
+    @After
+    public void tearDown() {
+        outlierDetector.close();
+    }
+
+    @Test
+    public void eject_endpoint_with_high_error_rate() {
+        long now = System.currentTimeMillis();
+        report(FIRST, 100, 5, 0);
+        report(SECOND, 100, 5, 0);
+        report(THIRD, 100, 5, 60);
+
+        outlierDetector.evaluate(now);
+
+        assertThat(outlierDetector.isEjected(FIRST)).isFalse();
+        assertThat(outlierDetector.isEjected(SECOND)).isFalse();
+        assertThat(outlierDetector.isEjected(THIRD)).isTrue();
+
+        ServiceLocator serviceLocator = mock(ServiceLocator.class);
+        when(serviceLocator.getServiceByName("gitlab")).thenReturn(new HashSet<>(Arrays.asList(FIRST, SECOND, THIRD)));
+        assertThat(new HealthFilteringServiceLocator(serviceLocator, null, outlierDetector).getServiceByName("gitlab")).containsOnly(FIRST, SECOND);
+    }
+
+    @Test
+    public void eject_endpoint_with_high_p99_latency() {
+        long now = System.currentTimeMillis();
+        report(FIRST, 100, 5, 0);
+        report(SECOND, 100, 5, 0);
+        report(THIRD, 100, 200, 0);
+
+        outlierDetector.evaluate(now);
+
+        assertThat(outlierDetector.isEjected(THIRD)).isTrue();
+        assertThat(outlierDetector.isEjected(FIRST)).isFalse();
+    }
+
+    @Test
+    public void ejection_grow_exponentially_up_to_max() {
+        long now = System.currentTimeMillis();
+        long[] expected = {BASE_EJECTION, 2 * BASE_EJECTION, 4 * BASE_EJECTION, 4 * BASE_EJECTION};
+        for (long duration : expected) {
+            report(FIRST, 100, 5, 0);
+            report(SECOND, 100, 5, 0);
+            report(THIRD, 100, 5, 90);
+            outlierDetector.evaluate(now);
+            assertThat(outlierDetector.ejectedUntil(THIRD)).isEqualTo(now + duration);
+            assertThat(outlierDetector.ejectedUntil(FIRST)).isZero();
+            now += 10 * BASE_EJECTION;
+        }
+    }
+
+    @Test
+    public void no_ejection_without_enough_calls_or_peers() {
+        long now = System.currentTimeMillis();
+        report(FIRST, 5, 5, 0);
+        report(SECOND, 5, 5, 5);
+        report(new Service("jenkins", "10.0.0.4", 8080), 100, 5, 100);
+
+        outlierDetector.evaluate(now);
+
+        assertThat(outlierDetector.isEjected(SECOND)).isFalse();
+        assertThat(outlierDetector.isEjected(new Service("jenkins", "10.0.0.4", 8080))).isFalse();
+    }
+
+    @Test
+    public void endpoints_named_after_their_host_are_compared_by_query() {
+        long now = System.currentTimeMillis();
+        ServiceQuery query = ServiceQuery.byTypeAndName("scm", "gitlab");
+        Service first = new Service("10.0.0.1", "10.0.0.1", 8080);
+        Service second = new Service("10.0.0.2", "10.0.0.2", 8080);
+        Service third = new Service("10.0.0.3", "10.0.0.3", 8080);
+        for (int i = 0; i < 100; i++) {
+            outlierDetector.report(query, first, 5, TimeUnit.MILLISECONDS, true);
+            outlierDetector.report(query, second, 5, TimeUnit.MILLISECONDS, true);
+            outlierDetector.report(query, third, 5, TimeUnit.MILLISECONDS, i >= 60);
+        }
+
+        outlierDetector.evaluate(now);
+
+        assertThat(outlierDetector.isEjected(third)).isTrue();
+        assertThat(outlierDetector.isEjected(first)).isFalse();
+    }
+
+    @Test
+    public void equal_services_share_their_stats() {
+        long now = System.currentTimeMillis();
+        report(FIRST, 100, 5, 0);
+        report(SECOND, 100, 5, 0);
+        for (int i = 0; i < 100; i++) {
+            outlierDetector.report(new Service("gitlab", "10.0.0.3", 8080), 5, TimeUnit.MILLISECONDS, i >= 60);
+        }
+
+        outlierDetector.evaluate(now);
+
+        assertThat(outlierDetector.size()).isEqualTo(3);
+        assertThat(outlierDetector.isEjected(new Service("gitlab", "10.0.0.3", 8080))).isTrue();
+        assertThat(outlierDetector.isEjected(new Service("gitlab-ssh", "10.0.0.3", 8080))).isFalse();
+    }
+
+    @Test
+    public void idle_endpoints_are_forgotten() {
+        long now = System.currentTimeMillis();
+        report(FIRST, 100, 5, 0);
+        report(SECOND, 100, 5, 0);
+        report(THIRD, 100, 5, 60);
+        outlierDetector.evaluate(now);
+        assertThat(outlierDetector.size()).isEqualTo(3);
+
+        for (int i = 0; i < OutlierDetector.MAX_IDLE_INTERVALS; i++) {
+            now += 10 * BASE_EJECTION;
+            report(FIRST, 1, 5, 0);
+            outlierDetector.evaluate(now);
+        }
+
+        assertThat(outlierDetector.size()).isEqualTo(1);
+        assertThat(outlierDetector.isEjected(THIRD)).isFalse();
+    }
+
+    private void report(Service service, int calls, long latencyMillis, int errors) {
+        for (int i = 0; i < calls; i++) {
+            outlierDetector.report(service, latencyMillis, TimeUnit.MILLISECONDS, i >= errors);
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package io.kodokojo.commons.utils.servicelocator.marathon;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.kodokojo.commons.model.Service;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Compare allocation and time of a lookup decoded through a Gson tree and through {@link MarathonAppsDecoder},
+ * over a generated <code>/v2/apps?embed=apps.tasks</code> payload shaped like a recorded Marathon answer.
+ * <p>
+ * Run with <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.kodokojo.commons.utils.servicelocator.marathon.MarathonAppsDecoderBenchmark [-Dexec.args=apps]</code>.
+ */
+public class MarathonAppsDecoderBenchmark {
+
+    private static final int WARMUP = 20;
+
+    private static final int ITERATIONS = 50;
+
+    public static void main(String[] args) throws IOException {
+        int apps = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+        String payload = generatePayload(apps);
+        System.out.println(String.format(Locale.ENGLISH, "Payload of %d apps, %.1f MB.", apps, payload.length() / (1024.0 * 1024.0)));
+
+        Lookup tree = () -> decodeWithTree(payload, "project-7", "type-3");
+        Lookup streaming = () -> MarathonAppsDecoder.decode(new StringReader(payload), "project-7", "type-3");
+
+        run("tree", tree);
+        run("streaming", streaming);
+    }
+
+    private static void run(String name, Lookup lookup) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            lookup.execute();
+        }
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            found = lookup.execute().size();
+        }
+        long duration = System.nanoTime() - start;
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.println(String.format(Locale.ENGLISH, "%-10s %8.2f ms/lookup %10.2f MB allocated/lookup, %d services",
+                name, duration / 1e6 / ITERATIONS, allocated / (1024.0 * 1024.0) / ITERATIONS, found));
+    }
+
+    private static Set<Service> decodeWithTree(String payload, String project, String componentType) {
+        Set<Service> res = new HashSet<>();
+        JsonObject json = new JsonParser().parse(payload).getAsJsonObject();
+        for (JsonElement app : json.getAsJsonArray("apps")) {
+            MarathonApp marathonApp = MarathonApp.fromJson(app.getAsJsonObject());
+            if (project.equals(marathonApp.getProject()) && componentType.equals(marathonApp.getComponentType())) {
+                res.addAll(marathonApp.toServices());
+            }
+        }
+        return res;
+    }
+
+    static String generatePayload(int apps) {
+        StringBuilder sb = new StringBuilder(apps * 2048).append("{\"apps\":[");
+        for (int i = 0; i < apps; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String project = "project-" + (i % 40);
+            String type = "type-" + (i % 7);
+            sb.append("{\"id\":\"/").append(project).append("/app-").append(i).append("\",")
+                    .append("\"cmd\":null,\"args\":null,\"user\":null,\"env\":{\"JAVA_OPTS\":\"-Xmx512m\",\"LOG_LEVEL\":\"info\"},")
+                    .append("\"instances\":3,\"cpus\":0.5,\"mem\":512,\"disk\":0,\"executor\":\"\",\"constraints\":[],")
+                    .append("\"uris\":[],\"fetch\":[],\"storeUrls\":[],\"ports\":[10000,10001],\"requirePorts\":false,")
+                    .append("\"backoffSeconds\":1,\"backoffFactor\":1.15,\"maxLaunchDelaySeconds\":3600,")
+                    .append("\"container\":{\"type\":\"DOCKER\",\"volumes\":[],\"docker\":{\"image\":\"kodokojo/app:").append(i)
+                    .append("\",\"network\":\"BRIDGE\",\"portMappings\":[{\"containerPort\":8080,\"hostPort\":0,\"servicePort\":10000,\"protocol\":\"tcp\"},")
+                    .append("{\"containerPort\":22,\"hostPort\":0,\"servicePort\":10001,\"protocol\":\"tcp\"}],\"privileged\":false,\"parameters\":[],\"forcePullImage\":false}},")
+                    .append("\"healthChecks\":[{\"path\":\"/health\",\"protocol\":\"HTTP\",\"portIndex\":0,\"gracePeriodSeconds\":300,\"intervalSeconds\":60,\"timeoutSeconds\":20,\"maxConsecutiveFailures\":3}],")
+                    .append("\"dependencies\":[],\"upgradeStrategy\":{\"minimumHealthCapacity\":1,\"maximumOverCapacity\":1},")
+                    .append("\"labels\":{\"project\":\"").append(project).append("\",\"componentType\":\"").append(type).append("\",\"owner\":\"team-").append(i % 5).append("\"},")
+                    .append("\"version\":\"2016-03-01T10:00:00.000Z\",\"tasksStaged\":0,\"tasksRunning\":3,\"tasksHealthy\":3,\"tasksUnhealthy\":0,")
+                    .append("\"deployments\":[],\"tasks\":[");
+            for (int t = 0; t < 3; t++) {
+                if (t > 0) {
+                    sb.append(',');
+                }
+                int port = 31000 + (i * 3 + t) % 1000;
+                sb.append("{\"id\":\"app-").append(i).append(".task-").append(t).append("\",\"host\":\"10.0.").append(t).append('.').append(i % 250)
+                        .append("\",\"ports\":[").append(port).append(',').append(port + 1000).append("],")
+                        .append("\"startedAt\":\"2016-03-01T10:00:05.000Z\",\"stagedAt\":\"2016-03-01T10:00:01.000Z\",\"version\":\"2016-03-01T10:00:00.000Z\",")
+                        .append("\"slaveId\":\"20160301-100000-0001-S").append(t).append("\",\"appId\":\"/").append(project).append("/app-").append(i).append("\",")
+                        .append("\"healthCheckResults\":[{\"alive\":").append(t != 2).append(",\"consecutiveFailures\":0,\"firstSuccess\":\"2016-03-01T10:01:00.000Z\",\"lastFailure\":null,\"lastSuccess\":\"2016-03-01T10:05:00.000Z\",\"taskId\":\"app-").append(i).append(".task-").append(t).append("\"}]}");
+            }
+            sb.append("]}");
+        }
+        return sb.append("]}").toString();
+    }
+
+    private interface Lookup {
+        Set<Service> execute() throws IOException;
+    }
+
+}
@@ -0,0 +1,75 @@
+package io.kodokojo.commons.utils.servicelocator.marathon;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import io.kodokojo.commons.model.Service;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MarathonAppsDecoderTest {
+
+    @Test
+    public void decode_same_services_than_json_tree() throws IOException {
+        String payload = MarathonAppsDecoderBenchmark.generatePayload(50);
+
+        Set<Service> expected = new HashSet<>();
+        for (JsonElement app : new JsonParser().parse(payload).getAsJsonObject().getAsJsonArray("apps")) {
+            MarathonApp marathonApp = MarathonApp.fromJson(app.getAsJsonObject());
+            if ("project-7".equals(marathonApp.getProject())) {
+                expected.addAll(marathonApp.toServices());
+            }
+        }
+
+        Set<Service> services = MarathonAppsDecoder.decode(new StringReader(payload), "project-7", null);
+
+        assertThat(services).isNotEmpty();
+        assertThat(services).usingElementComparatorOnFields("name", "host", "port").containsOnlyElementsOf(expected);
+        assertThat(services).hasSameSizeAs(expected);
+    }
+
+    @Test
+    public void labels_after_tasks_and_non_docker_container() throws IOException {
+        String payload = "{\"apps\":[" +
+                "{\"id\":\"/a\",\"tasks\":[{\"host\":\"10.0.0.1\",\"ports\":[31000],\"healthCheckResults\":[{\"alive\":true}]}]," +
+                "\"container\":{\"docker\":{\"portMappings\":[{\"containerPort\":80}]},\"type\":\"DOCKER\"}," +
+                "\"labels\":{\"project\":\"acme\",\"componentType\":\"scm\"}}," +
+                "{\"id\":\"/b\",\"labels\":{\"project\":\"acme\",\"componentType\":\"ci\"},\"container\":{\"type\":\"MESOS\"}," +
+                "\"tasks\":[{\"host\":\"10.0.0.2\",\"ports\":[31001],\"healthCheckResults\":[{\"alive\":true}]}]}," +
+                "{\"id\":\"/c\",\"labels\":{\"project\":\"other\",\"componentType\":\"scm\"},\"container\":null,\"tasks\":[]}" +
+                "]}";
+
+        Set<Service> services = MarathonAppsDecoder.decode(new StringReader(payload), "acme", null);
+
+        assertThat(services).extracting("name").containsExactly("acme-scm-80");
+        assertThat(services).extracting("host").containsExactly("10.0.0.1");
+    }
+
+}
@@ -0,0 +1,160 @@
+package io.kodokojo.commons.utils.servicelocator.marathon;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MarathonEventSubscriberTest {
+
+    private static final String END_OF_STREAM = "";
+
+    private HttpServer server;
+
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+    private final AtomicInteger resyncs = new AtomicInteger();
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/v2/apps", exchange -> {
+            resyncs.incrementAndGet();
+            byte[] bytes = MarathonServiceLocatorTest.APPS.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.createContext("/v2/events", this::stream);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void index_updated_from_events_and_resynced_on_reconnect() throws Exception {
+        try (MarathonEventSubscriber subscriber = new MarathonEventSubscriber("http://localhost:" + server.getAddress().getPort())) {
+            assertThat(subscriber.awaitInitialSync(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(subscriber.getService("scm", "acme")).extracting("host").containsOnly("10.0.0.1");
+            assertThat(subscriber.getDataAge(ServiceQuery.byTypeAndName("scm", "acme"))).isGreaterThanOrEqualTo(0);
+
+            events.add(event(MarathonEventSubscriber.STATUS_UPDATE_EVENT, "{\"appId\":\"/acme/gitlab\",\"taskId\":\"gitlab.3\",\"taskStatus\":\"TASK_RUNNING\",\"host\":\"10.0.0.3\",\"ports\":[31004,31005]}"));
+            events.add(event(MarathonEventSubscriber.HEALTH_STATUS_CHANGED_EVENT, "{\"appId\":\"/acme/gitlab\",\"taskId\":\"gitlab.3\",\"alive\":true}"));
+            events.add(event(MarathonEventSubscriber.STATUS_UPDATE_EVENT, "{\"appId\":\"/acme/gitlab\",\"taskId\":\"gitlab.1\",\"taskStatus\":\"TASK_KILLED\",\"host\":\"10.0.0.1\",\"ports\":[]}"));
+
+            awaitServices(subscriber, services -> services.size() == 2 && services.iterator().next().getHost().equals("10.0.0.3"));
+            assertThat(subscriber.getServiceByName("acme")).extracting("port").containsOnly(31004, 31005);
+            assertThat(resyncs.get()).isEqualTo(1);
+
+            events.add(END_OF_STREAM);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (resyncs.get() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(resyncs.get()).isEqualTo(2);
+            awaitServices(subscriber, services -> services.size() == 2 && services.iterator().next().getHost().equals("10.0.0.1"));
+        }
+    }
+
+    @Test
+    public void deployment_of_nested_groups_updates_index() throws Exception {
+        try (MarathonEventSubscriber subscriber = new MarathonEventSubscriber("http://localhost:" + server.getAddress().getPort())) {
+            assertThat(subscriber.awaitInitialSync(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(subscriber.getServiceByType("scm")).hasSize(2);
+
+            String gitlab = "{\"id\":\"/acme/gitlab\",\"labels\":{\"project\":\"acme\",\"componentType\":\"scm\"}}";
+            String jenkins = "{\"id\":\"/acme/ci/jenkins\",\"labels\":{\"project\":\"acme\",\"componentType\":\"ci\"}," +
+                    "\"container\":{\"type\":\"DOCKER\",\"docker\":{\"portMappings\":[{\"containerPort\":8080}]}}}";
+            events.add(event(MarathonEventSubscriber.DEPLOYMENT_SUCCESS_EVENT, "{\"plan\":{" +
+                    "\"original\":{\"id\":\"/\",\"apps\":[],\"groups\":[{\"id\":\"/acme\",\"groups\":[" +
+                    "{\"id\":\"/acme/scm\",\"apps\":[" + gitlab + "]}]}]}," +
+                    "\"target\":{\"id\":\"/\",\"apps\":[],\"groups\":[{\"id\":\"/acme\",\"groups\":[" +
+                    "{\"id\":\"/acme/ci\",\"apps\":[" + jenkins + "]}]}]}}}"));
+            events.add(event(MarathonEventSubscriber.STATUS_UPDATE_EVENT, "{\"appId\":\"/acme/ci/jenkins\",\"taskId\":\"jenkins.1\",\"taskStatus\":\"TASK_RUNNING\",\"host\":\"10.0.0.4\",\"ports\":[31010]}"));
+            events.add(event(MarathonEventSubscriber.HEALTH_STATUS_CHANGED_EVENT, "{\"appId\":\"/acme/ci/jenkins\",\"taskId\":\"jenkins.1\",\"alive\":true}"));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (subscriber.getServiceByType("ci").isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(subscriber.getServiceByType("ci")).extracting("port").containsOnly(31010);
+            assertThat(subscriber.getServiceByType("scm")).isEmpty();
+        }
+    }
+
+    private static void awaitServices(MarathonEventSubscriber subscriber, Predicate<Set<Service>> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        Set<Service> services = subscriber.getServiceByType("scm");
+        while (!condition.test(services) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            services = subscriber.getServiceByType("scm");
+        }
+        assertThat(condition.test(services)).as("services " + services).isTrue();
+    }
+
+    private static String event(String type, String data) {
+        return "event: " + type + "\ndata: " + data + "\n\n";
+    }
+
+    private void stream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(": connected\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            String event;
+            while ((event = events.poll(10, TimeUnit.SECONDS)) != null && !END_OF_STREAM.equals(event)) {
+                out.write(event.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package io.kodokojo.commons.utils.servicelocator.marathon;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.sun.net.httpserver.HttpServer;
+import io.kodokojo.commons.model.Service;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MarathonServiceLocatorTest {
+
+    static final String APPS = "{\"apps\":[" +
+            "{\"id\":\"/acme/gitlab\",\"labels\":{\"project\":\"acme\",\"componentType\":\"scm\"}," +
+            "\"container\":{\"type\":\"DOCKER\",\"docker\":{\"portMappings\":[{\"containerPort\":80},{\"containerPort\":22}]}}," +
+            "\"tasks\":[" +
+            "{\"id\":\"gitlab.1\",\"host\":\"10.0.0.1\",\"ports\":[31000,31001],\"healthCheckResults\":[{\"alive\":true}]}," +
+            "{\"id\":\"gitlab.2\",\"host\":\"10.0.0.2\",\"ports\":[31002,31003],\"healthCheckResults\":[{\"alive\":false}]}" +
+            "]}" +
+            "]}";
+
+    private HttpServer server;
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v2/apps", exchange -> {
+            requests.add(exchange.getRequestURI().getPath() + "?" + URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8"));
+            byte[] bytes = APPS.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void single_call_with_label_selector() {
+        MarathonServiceLocator serviceLocator = new MarathonServiceLocator("http://localhost:" + server.getAddress().getPort());
+
+        Set<Service> services = serviceLocator.getService("scm", "acme");
+
+        assertThat(services).extracting("name").containsOnly("acme-scm-80", "acme-scm-22");
+        assertThat(services).extracting("host").containsOnly("10.0.0.1");
+        assertThat(requests).containsExactly("/v2/apps?embed=apps.tasks&label=project==acme,componentType==scm");
+    }
+
+    @Test
+    public void lookup_by_type_require_project_label() {
+        MarathonServiceLocator serviceLocator = new MarathonServiceLocator("http://localhost:" + server.getAddress().getPort());
+
+        assertThat(serviceLocator.getServiceByType("scm")).hasSize(2);
+        assertThat(requests).containsExactly("/v2/apps?embed=apps.tasks&label=project,componentType==scm");
+    }
+
+    @Test
+    public void async_lookup_decode_same_services() throws Exception {
+        MarathonServiceLocator serviceLocator = new MarathonServiceLocator("http://localhost:" + server.getAddress().getPort());
+
+        Set<Service> services = serviceLocator.getServiceAsync("scm", "acme").get(5, TimeUnit.SECONDS);
+
+        assertThat(services).extracting("name").containsOnly("acme-scm-80", "acme-scm-22");
+        assertThat(requests).hasSize(1);
+    }
+
+    @Test
+    public void label_values_are_escaped() {
+        assertThat(MarathonServiceLocator.labelSelector("project", "a,b c")).isEqualTo("project==a\\,b\\ c");
+    }
+
+}
@@ -0,0 +1,160 @@
+package io.kodokojo.commons.utils.servicelocator.metrics;
+
+/*
+ * #%L
+ * kodokojo-commons
+ * %%
+ * Copyright (C) 2016 Kodo-kojo
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import io.kodokojo.commons.model.Service;
+import io.kodokojo.commons.utils.servicelocator.AsyncServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.BlockingServiceLocatorAdapter;
+import io.kodokojo.commons.utils.servicelocator.ServiceLocator;
+import io.kodokojo.commons.utils.servicelocator.ServiceQuery;
+import io.kodokojo.commons.utils.servicelocator.ServiceRegistry;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class InstrumentedServiceLocatorTest {
+
+    @Test
+    public void record_lookups_by_backend_and_query_shape() {
+        ServiceLocatorMetrics metrics = new ServiceLocatorMetrics(null);
+        ServiceLocator serviceLocator = new InstrumentedServiceLocator(new FixedServiceLocator(), "consul", metrics);
+
+        serviceLocator.getServiceByName("gitlab");
+        serviceLocator.getServiceByName("gitlab");
+        serviceLocator.getServiceByName("unknown");
+        try {
+            serviceLocator.getServiceByType("scm");
+            fail("Lookup should fail.");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("Backend unavailable");
+        }
+
+        Map<ServiceQuery.Kind, LookupStats> stats = metrics.snapshot("consul");
+        LookupStats byName = stats.get(ServiceQuery.Kind.NAME);
+        assertThat(byName.getLookups()).isEqualTo(3);
+        assertThat(byName.getEmptyResults()).isEqualTo(1);
+        assertThat(byName.getErrors()).isZero();
+        assertThat(byName.getMaxResultSize()).isEqualTo(2);
+        assertThat(byName.getMeanResultSize()).isEqualTo(4.0 / 3);
+        assertThat(byName.getP99Latency()).isGreaterThan(0);
+        assertThat(byName.getLastDataAge()).isEqualTo(-1);
+        assertThat(stats.get(ServiceQuery.Kind.TYPE).getErrors()).isEqualTo(1);
+        assertThat(stats.get(ServiceQuery.Kind.TYPE_AND_NAME).getLookups()).isZero();
+        assertThat(metrics.snapshot()).containsOnlyKeys("consul");
+    }
+
+    @Test
+    public void record_data_age_of_watched_registry() throws InterruptedException {
+        ServiceLocatorMetrics metrics = new ServiceLocatorMetrics(null);
+        ServiceRegistry registry = new ServiceRegistry();
+        registry.register("consul:gitlab", new ServiceRegistry.Registration("acme", "build", "scm", "gitlab",
+                Collections.singletonList(new Service("gitlab", "10.0.0.1", 80))));
+        ServiceLocator serviceLocator = new InstrumentedServiceLocator(registry, "consul-watch", metrics);
+
+        Thread.sleep(20);
+        serviceLocator.getService("scm", "gitlab");
+
+        LookupStats stats = metrics.snapshot("consul-watch").get(ServiceQuery.Kind.TYPE_AND_NAME);
+        assertThat(stats.getLastDataAge()).isGreaterThanOrEqualTo(20);
+        assertThat(stats.getMaxDataAge()).isEqualTo(stats.getLastDataAge());
+    }
+
+    @Test
+    public void async_api_exposed_only_for_async_delegates() throws Exception {
+        ServiceLocatorMetrics metrics = new ServiceLocatorMetrics(null);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ServiceLocator blocking = InstrumentedServiceLocator.instrument(new FixedServiceLocator(), "consul", metrics);
+            ServiceLocator async = InstrumentedServiceLocator.instrument(new BlockingServiceLocatorAdapter(new FixedServiceLocator(), executor), "marathon", metrics);
+
+            assertThat(blocking).isNotInstanceOf(AsyncServiceLocator.class);
+            assertThat(async).isInstanceOf(AsyncServiceLocator.class);
+            assertThat(((AsyncServiceLocator) async).getServiceByNameAsync("gitlab").get(2, TimeUnit.SECONDS)).hasSize(2);
+            try {
+                ((AsyncServiceLocator) async).getServiceByTypeAsync("scm").get(2, TimeUnit.SECONDS);
+                fail("Lookup should fail.");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).hasMessage("Backend unavailable");
+            }
+            Map<ServiceQuery.Kind, LookupStats> stats = metrics.snapshot("marathon");
+            assertThat(stats.get(ServiceQuery.Kind.NAME).getLookups()).isEqualTo(1);
+            assertThat(stats.get(ServiceQuery.Kind.TYPE).getErrors()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void expose_backend_through_jmx() throws Exception {
+        MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        ServiceLocatorMetrics metrics = new ServiceLocatorMetrics(mBeanServer);
+        ServiceLocator serviceLocator = new InstrumentedServiceLocator(new FixedServiceLocator(), "marathon", metrics);
+        serviceLocator.getServiceByName("gitlab");
+
+        ObjectName objectName = new ObjectName("io.kodokojo.commons:type=ServiceLocator,backend=\"marathon\"");
+        assertThat(mBeanServer.getAttribute(objectName, "Lookups")).isEqualTo(1L);
+        TabularData lookupStats = (TabularData) mBeanServer.getAttribute(objectName, "LookupStats");
+        CompositeData byName = (CompositeData) lookupStats.get(new Object[]{"NAME"}).get("value");
+        assertThat(byName.get("maxResultSize")).isEqualTo(2L);
+
+        metrics.close();
+        assertThat(mBeanServer.isRegistered(objectName)).isFalse();
+    }
+
+    private static class FixedServiceLocator implements ServiceLocator {
+
+        @Override
+        public Set<Service> getService(String type, String name) {
+            return getServiceByName(name);
+        }
+
+        @Override
+        public Set<Service> getServiceByType(String type) {
+            throw new IllegalStateException("Backend unavailable");
+        }
+
+        @Override
+        public Set<Service> getServiceByName(String name) {
+            if ("unknown".equals(name)) {
+                return Collections.emptySet();
+            }
+            return new HashSet<>(Arrays.asList(new Service(name, "10.0.0.1", 80), new Service(name, "10.0.0.2", 80)));
+        }
+    }
+}